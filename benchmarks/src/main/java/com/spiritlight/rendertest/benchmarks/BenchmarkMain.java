@@ -0,0 +1,25 @@
+package com.spiritlight.rendertest.benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * Runs JMH with the GC profiler attached, so every result comes
+ * with its allocation rate next to the throughput.
+ * <p>
+ *     Takes the regular JMH command line, e.g.
+ *     {@code java -jar benchmarks.jar Matrix -p size=256}. The GC profiler
+ *     is only added if no profiler was asked for explicitly.
+ * </p>
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        if(!Arrays.asList(args).contains("-prof")) {
+            String[] withProfiler = Arrays.copyOf(args, args.length + 2);
+            withProfiler[args.length] = "-prof";
+            withProfiler[args.length + 1] = "gc";
+            args = withProfiler;
+        }
+        org.openjdk.jmh.Main.main(args);
+    }
+}
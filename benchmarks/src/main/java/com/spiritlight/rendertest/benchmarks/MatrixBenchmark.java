@@ -0,0 +1,52 @@
+package com.spiritlight.rendertest.benchmarks;
+
+import com.spiritlight.rendertest.math.Matrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatrixBenchmark {
+
+    @Param({"3", "16", "64", "256", "512"})
+    public int size;
+
+    private Matrix left;
+    private Matrix right;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        left = random(random, size);
+        right = random(random, size);
+    }
+
+    private static Matrix random(Random random, int size) {
+        double[] data = new double[size * size];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = random.nextDouble() * 2 - 1;
+        }
+        return Matrix.ofRowMajor(size, size, data);
+    }
+
+    @Benchmark
+    public Matrix multiply() {
+        return left.multiply(right);
+    }
+
+    @Benchmark
+    public Matrix transpose() {
+        return left.transpose();
+    }
+
+    @Benchmark
+    public Matrix scale() {
+        return left.scale(1.5);
+    }
+}
@@ -0,0 +1,76 @@
+package com.spiritlight.rendertest.benchmarks;
+
+import com.spiritlight.rendertest.objects.Mesh;
+import com.spiritlight.rendertest.objects.Triangle;
+import com.spiritlight.rendertest.render.Camera;
+import com.spiritlight.rendertest.render.RenderTarget;
+import com.spiritlight.rendertest.render.Renderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full frame rendering. Each invocation renders one frame, and the
+ * camera moves a bit between frames so no two frames are the same.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RenderBenchmark {
+
+    @Param({"400x400", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"tetrahedron", "sphere-2000", "sphere-100000"})
+    public String scene;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    @Param({"false", "true"})
+    public boolean simd;
+
+    private List<Triangle> triangles;
+    private Mesh mesh;
+    private Renderer renderer;
+    private RenderTarget target;
+    private final Camera camera = new Camera();
+    private int frame;
+
+    @Setup
+    public void setup() {
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+
+        triangles = Scenes.create(scene, width, height);
+        mesh = Mesh.fromTriangles(triangles);
+        renderer = new Renderer().setParallel(parallel).setSimd(simd);
+        target = new RenderTarget(width, height);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(simd && !Renderer.isSimdAvailable()) {
+            System.err.println("vector API unavailable, simd=true measured the scalar path");
+        }
+    }
+
+    @Benchmark
+    public RenderTarget renderTriangles() {
+        frame++;
+        renderer.render(triangles, camera.setYaw(frame % 360).setPitch(frame % 180 - 90), target);
+        return target;
+    }
+
+    @Benchmark
+    public RenderTarget renderMesh() {
+        frame++;
+        renderer.render(mesh, camera.setYaw(frame % 360).setPitch(frame % 180 - 90), target);
+        return target;
+    }
+}
@@ -0,0 +1,63 @@
+package com.spiritlight.rendertest.benchmarks;
+
+import com.spiritlight.rendertest.Main;
+import com.spiritlight.rendertest.math.Vertex;
+import com.spiritlight.rendertest.objects.Triangle;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scenes of a known size to render in benchmarks.
+ */
+final class Scenes {
+
+    private Scenes() {}
+
+    private static final Color[] PALETTE = {Color.WHITE, Color.RED, Color.GREEN, Color.BLUE, Color.ORANGE, Color.CYAN};
+
+    /**
+     * Creates a scene by name, sized to fill a good part of the given resolution.
+     * <p>
+     *     {@code tetrahedron} is the scene of {@link Main#list}, and
+     *     {@code sphere-N} is a UV sphere of at least N triangles.
+     * </p>
+     */
+    static List<Triangle> create(String name, int width, int height) {
+        if(name.equals("tetrahedron")) return Main.list;
+        if(name.startsWith("sphere-")) {
+            int triangles = Integer.parseInt(name.substring("sphere-".length()));
+            // a UV sphere of n stacks and 2n slices has about 4n^2 triangles
+            int stacks = Math.max(2, (int) Math.ceil(Math.sqrt(triangles / 4.0)));
+            return sphere(stacks, stacks * 2, Math.min(width, height) * 0.4);
+        }
+        throw new IllegalArgumentException("unknown scene " + name);
+    }
+
+    static List<Triangle> sphere(int stacks, int slices, double radius) {
+        List<Triangle> ret = new ArrayList<>(stacks * slices * 2);
+        for(int i = 0; i < stacks; i++) {
+            double theta1 = Math.PI * i / stacks;
+            double theta2 = Math.PI * (i + 1) / stacks;
+            for(int j = 0; j < slices; j++) {
+                double phi1 = 2 * Math.PI * j / slices;
+                double phi2 = 2 * Math.PI * (j + 1) / slices;
+                Vertex a = point(theta1, phi1, radius);
+                Vertex b = point(theta1, phi2, radius);
+                Vertex c = point(theta2, phi1, radius);
+                Vertex d = point(theta2, phi2, radius);
+                Color color = PALETTE[(i + j) % PALETTE.length];
+                if(i != 0) ret.add(new Triangle(a, c, b, color));
+                if(i != stacks - 1) ret.add(new Triangle(b, c, d, color));
+            }
+        }
+        return ret;
+    }
+
+    private static Vertex point(double theta, double phi, double radius) {
+        return Vertex.of(radius * Math.sin(theta) * Math.cos(phi),
+                radius * Math.cos(theta),
+                radius * Math.sin(theta) * Math.sin(phi));
+    }
+}
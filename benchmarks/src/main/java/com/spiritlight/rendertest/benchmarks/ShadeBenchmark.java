@@ -0,0 +1,40 @@
+package com.spiritlight.rendertest.benchmarks;
+
+import com.spiritlight.rendertest.math.Vertex;
+import com.spiritlight.rendertest.objects.Triangle;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShadeBenchmark {
+
+    private final Triangle triangle = new Triangle(Vertex.of(0, 0, 0), Vertex.of(1, 0, 0), Vertex.of(0, 1, 0), new Color(200, 120, 40));
+
+    // cycles through a range of shades, like the faces of a rotating model would
+    private final double[] shades = new double[256];
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        for(int i = 0; i < shades.length; i++) {
+            shades[i] = Math.cos(i / (double) shades.length);
+        }
+    }
+
+    @Benchmark
+    public Color getShade() {
+        return triangle.getShade(shades[cursor++ & 255]);
+    }
+
+    @Benchmark
+    public int getShadePacked() {
+        return Triangle.getShade(0xC87828, shades[cursor++ & 255]);
+    }
+}
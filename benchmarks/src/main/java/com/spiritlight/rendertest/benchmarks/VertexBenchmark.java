@@ -0,0 +1,58 @@
+package com.spiritlight.rendertest.benchmarks;
+
+import com.spiritlight.rendertest.math.Mat3;
+import com.spiritlight.rendertest.math.Matrix;
+import com.spiritlight.rendertest.math.Vec3;
+import com.spiritlight.rendertest.math.Vertex;
+import com.spiritlight.rendertest.render.Camera;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexBenchmark {
+
+    private final Vertex vertex = Vertex.of(100, -42.5, 17.25);
+    private final Vertex other = Vertex.of(-3, 8, 12.5);
+
+    private Matrix matrix;
+    private final Mat3 mat3 = new Mat3();
+    private final Vec3 out = new Vec3();
+
+    @Setup
+    public void setup() {
+        Camera camera = new Camera(37, -12);
+        matrix = camera.getTransform();
+        camera.getTransform(mat3);
+    }
+
+    @Benchmark
+    public Vertex transformMatrix() {
+        return vertex.transform(matrix);
+    }
+
+    @Benchmark
+    public Vertex transformMat3() {
+        return vertex.transform(mat3);
+    }
+
+    @Benchmark
+    public Vec3 transformInto() {
+        return vertex.transform(mat3, out);
+    }
+
+    @Benchmark
+    public Vertex cross() {
+        return vertex.cross(other);
+    }
+
+    @Benchmark
+    public Vertex normalize() {
+        return vertex.normalize();
+    }
+}
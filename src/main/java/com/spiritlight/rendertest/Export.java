@@ -0,0 +1,58 @@
+package com.spiritlight.rendertest;
+
+import com.spiritlight.rendertest.io.FrameSink;
+import com.spiritlight.rendertest.io.PngSequenceSink;
+import com.spiritlight.rendertest.io.Y4mSink;
+import com.spiritlight.rendertest.render.BatchRenderer;
+import com.spiritlight.rendertest.render.CameraPath;
+import com.spiritlight.rendertest.scene.LodChain;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Renders the sweep of {@link com.spiritlight.rendertest.objects.ExampleFrame}
+ * to files, without a window.
+ */
+public class Export {
+
+    /**
+     * Usage: {@code Export <output> [model]}, writing a Y4M stream if the output
+     * ends in {@code .y4m} and a directory of PNG files otherwise. The built-in
+     * triangles are rendered unless a model is given, loaded as {@link Main} does.
+     * <p>
+     *     {@code rendertest.export.frames} sets the number of frames (360),
+     *     {@code rendertest.export.size} their size (400x400),
+     *     {@code rendertest.export.fps} the frame rate of the sweep (60)
+     *     and {@code rendertest.export.threads} the number of frames rendered
+     *     at once (one per core).
+     * </p>
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: Export <output.y4m | directory> [model]");
+            System.exit(1);
+        }
+        System.setProperty("java.awt.headless", "true");
+        int frames = Integer.getInteger("rendertest.export.frames", 360);
+        String[] size = System.getProperty("rendertest.export.size", "400x400").split("x");
+        double fps = Double.parseDouble(System.getProperty("rendertest.export.fps", "60"));
+        BatchRenderer batch = new BatchRenderer(Integer.parseInt(size[0]), Integer.parseInt(size[1])).setFps(fps);
+        Integer threads = Integer.getInteger("rendertest.export.threads");
+        if (threads != null) batch.setThreads(threads);
+
+        BatchRenderer.Scene scene;
+        if (args.length > 1) {
+            LodChain model = Main.load(Path.of(args[1]));
+            scene = model::render;
+        } else {
+            scene = (renderer, camera, target) -> renderer.render(Main.list, camera, target);
+        }
+
+        Path output = Path.of(args[0]);
+        try (FrameSink sink = output.toString().endsWith(".y4m") ? new Y4mSink(output) : new PngSequenceSink(output)) {
+            BatchRenderer.Result result = batch.render(frames, CameraPath.sweep(fps), scene, sink);
+            System.out.printf("Rendered %s on %d threads to %s%n", result, batch.getThreads(), output);
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package com.spiritlight.rendertest;
 
+import com.spiritlight.rendertest.io.MeshCache;
+import com.spiritlight.rendertest.io.MeshLoader;
 import com.spiritlight.rendertest.math.Vertex;
 import com.spiritlight.rendertest.objects.ExampleFrame;
+import com.spiritlight.rendertest.objects.Mesh;
 import com.spiritlight.rendertest.objects.Triangle;
+import com.spiritlight.rendertest.scene.LodChain;
 
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class Main {
+    private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
 
     public static final List<Triangle> list = List.of(
             new Triangle(Vertex.of(100, 100, 100),
@@ -28,11 +37,65 @@ public class Main {
                     Color.BLUE)
     );
 
-    public static void main(String[] args) {
-        ExampleFrame frame = new ExampleFrame();
+    // half the extent loaded models are scaled to, about that of the list above
+    private static final double MODEL_SIZE = 120;
+
+    /**
+     * Shows the built-in triangles, or the OBJ or STL model given as the first argument.
+     * Models are cached next to the model file, unless {@code rendertest.meshcache} is false,
+     * and drawn with coarser levels of detail when small on screen, unless {@code rendertest.lod} is false.
+     */
+    public static void main(String[] args) throws IOException {
+        LodChain model = args.length > 0 ? load(Path.of(args[0])) : null;
+        ExampleFrame frame = new ExampleFrame(model);
 
         frame.setVisible(true);
 
     }
-}
 
+    /**
+     * Loads an OBJ or STL model, fitted to the view, as {@link #main(String[])} describes.
+     */
+    static LodChain load(Path path) throws IOException {
+        long start = System.nanoTime();
+        MeshLoader loader = new MeshLoader().setParallel(true);
+        Mesh mesh;
+        if (Boolean.parseBoolean(System.getProperty("rendertest.meshcache", "true"))) {
+            mesh = new MeshCache(loader).load(path).getMesh();
+        } else {
+            mesh = loader.load(path);
+        }
+        LOGGER.log(Level.INFO, "Loaded {0} triangles in {1} ms", new Object[] {mesh.getTriangleCount(), (System.nanoTime() - start) / 1_000_000});
+        fit(mesh, MODEL_SIZE);
+        if (!Boolean.parseBoolean(System.getProperty("rendertest.lod", "true"))) return new LodChain(mesh);
+        start = System.nanoTime();
+        LodChain model = LodChain.build(mesh);
+        LOGGER.log(Level.FINE, "Built {0} levels of detail in {1} ms", new Object[] {model.getLevelCount(), (System.nanoTime() - start) / 1_000_000});
+        return model;
+    }
+
+    /**
+     * Centers a mesh on the origin and scales it so its largest half extent is the given size.
+     */
+    private static void fit(Mesh mesh, double size) {
+        double[][] axes = {mesh.getPositionsX(), mesh.getPositionsY(), mesh.getPositionsZ()};
+        int count = mesh.getVertexCount();
+        double[] center = new double[3];
+        double extent = 0;
+        for (int a = 0; a < 3; a++) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                min = Math.min(min, axes[a][i]);
+                max = Math.max(max, axes[a][i]);
+            }
+            center[a] = (min + max) / 2;
+            extent = Math.max(extent, (max - min) / 2);
+        }
+        double scale = extent > 0 ? size / extent : 1;
+        for (int a = 0; a < 3; a++) {
+            for (int i = 0; i < count; i++) {
+                axes[a][i] = (axes[a][i] - center[a]) * scale;
+            }
+        }
+    }
+}
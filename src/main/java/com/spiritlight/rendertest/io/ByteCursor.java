@@ -0,0 +1,227 @@
+package com.spiritlight.rendertest.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads text tokens straight off a byte buffer, without decoding it into
+ * strings. Only ASCII is understood, which is all OBJ and STL numbers and
+ * keywords are made of.
+ */
+final class ByteCursor {
+    // exact powers of ten, a double holds them all without rounding
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // below this, every long is exactly representable as a double
+    private static final long EXACT_MANTISSA = 1L << 53;
+
+    private final ByteBuffer buffer;
+    private int position;
+    private final int limit;
+    // where the buffer starts in the file, for error messages
+    private final long offset;
+
+    ByteCursor(ByteBuffer buffer, int position, int limit, long offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.position = position;
+        this.limit = limit;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    int position() {
+        return position;
+    }
+
+    /**
+     * Skips spaces and tabs, but not line breaks.
+     */
+    void skipBlanks() {
+        while(position < limit) {
+            byte b = buffer.get(position);
+            if(b != ' ' && b != '\t') return;
+            position++;
+        }
+    }
+
+    /**
+     * Skips spaces, tabs and line breaks.
+     */
+    void skipWhitespace() {
+        while(position < limit && isWhitespace(buffer.get(position))) position++;
+    }
+
+    /**
+     * Moves past the next line break, or to the end.
+     */
+    void nextLine() {
+        while(position < limit) {
+            if(buffer.get(position++) == '\n') return;
+        }
+    }
+
+    /**
+     * Checks whether the current line has another token, skipping blanks before it.
+     */
+    boolean hasToken() {
+        skipBlanks();
+        if(position >= limit) return false;
+        byte b = buffer.get(position);
+        return b != '\n' && b != '\r' && b != '#';
+    }
+
+    /**
+     * Skips the current token, up to the next whitespace.
+     */
+    void skipToken() {
+        while(position < limit && !isWhitespace(buffer.get(position))) position++;
+    }
+
+    /**
+     * Checks whether the next token is exactly the given keyword, and moves past it if so.
+     */
+    boolean keyword(String keyword) {
+        int length = keyword.length();
+        if(position + length > limit) return false;
+        for(int i = 0; i < length; i++) {
+            if(buffer.get(position + i) != keyword.charAt(i)) return false;
+        }
+        if(position + length < limit && !isWhitespace(buffer.get(position + length))) return false;
+        position += length;
+        return true;
+    }
+
+    /**
+     * Parses a decimal number in plain or scientific notation. The result
+     * is the same as {@link Double#parseDouble(String)}: numbers of up to
+     * 15 digits with small exponents are converted exactly on the spot,
+     * anything longer goes through the JDK.
+     */
+    double parseDouble() {
+        skipBlanks();
+        int start = position;
+        boolean negative = false;
+        if(position < limit) {
+            byte b = buffer.get(position);
+            if(b == '-' || b == '+') {
+                negative = b == '-';
+                position++;
+            }
+        }
+        long mantissa = 0;
+        int scale = 0;
+        boolean exact = true, any = false;
+        while(position < limit) {
+            byte b = buffer.get(position);
+            if(b < '0' || b > '9') break;
+            any = true;
+            if(mantissa < EXACT_MANTISSA / 10) {
+                mantissa = mantissa * 10 + (b - '0');
+            } else {
+                exact = false;
+            }
+            position++;
+        }
+        if(position < limit && buffer.get(position) == '.') {
+            position++;
+            while(position < limit) {
+                byte b = buffer.get(position);
+                if(b < '0' || b > '9') break;
+                any = true;
+                if(mantissa < EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    scale--;
+                } else {
+                    exact = false;
+                }
+                position++;
+            }
+        }
+        if(!any) throw syntax(start, "number");
+        if(position < limit && (buffer.get(position) == 'e' || buffer.get(position) == 'E')) {
+            position++;
+            boolean negativeExponent = false;
+            if(position < limit && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                negativeExponent = buffer.get(position) == '-';
+                position++;
+            }
+            int exponent = 0;
+            boolean anyExponent = false;
+            while(position < limit) {
+                byte b = buffer.get(position);
+                if(b < '0' || b > '9') break;
+                anyExponent = true;
+                if(exponent < 10000) exponent = exponent * 10 + (b - '0');
+                position++;
+            }
+            if(!anyExponent) throw syntax(start, "exponent");
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        if(exact && Math.abs(scale) < POWERS_OF_TEN.length) {
+            // a single correctly rounded operation on exact operands
+            double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(text(start, position));
+    }
+
+    /**
+     * Parses a possibly signed decimal integer.
+     */
+    int parseInt() {
+        skipBlanks();
+        int start = position;
+        boolean negative = false;
+        if(position < limit && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+            negative = buffer.get(position) == '-';
+            position++;
+        }
+        long value = 0;
+        boolean any = false;
+        while(position < limit) {
+            byte b = buffer.get(position);
+            if(b < '0' || b > '9') break;
+            any = true;
+            value = value * 10 + (b - '0');
+            if(value > Integer.MAX_VALUE) throw syntax(start, "integer in range");
+            position++;
+        }
+        if(!any) throw syntax(start, "integer");
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Skips the given byte if it is next.
+     * @return true if it was skipped
+     */
+    boolean skip(char c) {
+        if(position < limit && buffer.get(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    IllegalArgumentException syntax(int at, String expected) {
+        int end = at;
+        while(end < limit && end - at < 32 && buffer.get(end) != '\n') end++;
+        return new IllegalArgumentException("expected " + expected + " at byte " + (offset + at) + ": \"" + text(at, end).strip() + "\"");
+    }
+
+    // only for the rare number the fast path can't take, and error messages
+    private String text(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
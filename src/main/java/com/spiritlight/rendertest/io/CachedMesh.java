@@ -0,0 +1,42 @@
+package com.spiritlight.rendertest.io;
+
+import com.spiritlight.rendertest.math.Vec3;
+import com.spiritlight.rendertest.objects.Mesh;
+
+/**
+ * A mesh read from a {@link MeshCache} file, along with what was
+ * precomputed for it when the file was written.
+ */
+public final class CachedMesh {
+    private final Mesh mesh;
+    private final float[] normals;
+    private final double[] bounds;
+
+    CachedMesh(Mesh mesh, float[] normals, double[] bounds) {
+        this.mesh = mesh;
+        this.normals = normals;
+        this.bounds = bounds;
+    }
+
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Returns the unit normal of every triangle, as x, y and z per triangle.
+     * The normal of a triangle {@code a, b, c} is {@code (b - a) x (c - a)}
+     * normalized, or zero if the triangle is degenerate. This is the backing
+     * array, it isn't updated if the mesh is modified.
+     */
+    public float[] getNormals() {
+        return normals;
+    }
+
+    public Vec3 getMin(Vec3 out) {
+        return out.set(bounds[0], bounds[1], bounds[2]);
+    }
+
+    public Vec3 getMax(Vec3 out) {
+        return out.set(bounds[3], bounds[4], bounds[5]);
+    }
+}
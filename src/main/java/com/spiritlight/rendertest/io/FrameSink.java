@@ -0,0 +1,41 @@
+package com.spiritlight.rendertest.io;
+
+import com.spiritlight.rendertest.render.RenderTarget;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the frames of a rendered sequence, typically to encode them.
+ * <p>
+ *     Frames are written in order and one at a time, unless the sink
+ *     {@linkplain #isConcurrent() says otherwise}. A target passed to
+ *     {@link #write(int, RenderTarget)} is only valid during the call,
+ *     it is reused for another frame right after.
+ * </p>
+ */
+public interface FrameSink extends Closeable {
+    /**
+     * Called once, before the first frame.
+     * @param width The width of every frame
+     * @param height The height of every frame
+     * @param fps The frames per second the sequence is played at
+     */
+    default void begin(int width, int height, double fps) throws IOException {
+    }
+
+    /**
+     * Writes one frame.
+     * @param frame The index of the frame, from 0
+     * @param target The finished frame
+     */
+    void write(int frame, RenderTarget target) throws IOException;
+
+    /**
+     * @return true if frames may be written from several threads at
+     * once and in any order, false by default
+     */
+    default boolean isConcurrent() {
+        return false;
+    }
+}
@@ -0,0 +1,389 @@
+package com.spiritlight.rendertest.io;
+
+import com.spiritlight.rendertest.objects.Mesh;
+import com.spiritlight.rendertest.objects.Triangle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes meshes in a compact binary format, so models only go
+ * through {@link MeshLoader} once.
+ * <p>
+ *     A cache file is a fixed header followed by the mesh arrays exactly as
+ *     they are held in memory: positions, indices, colors, two-sided flags,
+ *     then precomputed triangle normals. Reading and writing copy each array
+ *     in bulk through one buffer, there is nothing to parse and no object is
+ *     created per element. The file is never mapped: the arrays end up on the
+ *     heap either way, and a file still mapped can't be moved, replaced or
+ *     deleted on every platform, which a rebuild does. The header records the format version, the
+ *     counts, the bounds of the mesh and the size and modification time of
+ *     the model it was made from, and ends with a CRC32C of the header and
+ *     the arrays.
+ * </p>
+ * <p>
+ *     {@link #load(Path)} reuses a cache file next to the model as long as
+ *     it is intact and the model hasn't changed since, and rebuilds it
+ *     otherwise.
+ * </p>
+ */
+public class MeshCache {
+    private static final Logger LOGGER = Logger.getLogger(MeshCache.class.getName());
+
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".rtmesh";
+
+    // "RTMC", read as a little endian int
+    private static final int MAGIC = 0x434D5452;
+    // magic, version, vertex and triangle counts, 6 bounds,
+    // source size and time, then the checksum
+    private static final int BOUNDS_OFFSET = 4 * 4;
+    private static final int SOURCE_OFFSET = BOUNDS_OFFSET + 6 * 8;
+    private static final int CHECKSUM_OFFSET = SOURCE_OFFSET + 2 * 8;
+    private static final int HEADER = CHECKSUM_OFFSET + 8;
+    // size of the buffer a file is read and written through
+    private static final int CHUNK = 1 << 20;
+
+    private final MeshLoader loader;
+
+    public MeshCache() {
+        this(new MeshLoader());
+    }
+
+    /**
+     * Creates a cache loading models that aren't cached yet with the given loader.
+     */
+    public MeshCache(MeshLoader loader) {
+        this.loader = loader;
+    }
+
+    public MeshLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * @return the cache file used for a model by {@link #load(Path)}
+     */
+    public static Path cacheFile(Path source) {
+        return source.resolveSibling(source.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Loads a model through its cache file, next to it.
+     * @see #load(Path, Path)
+     */
+    public CachedMesh load(Path source) throws IOException {
+        return load(source, cacheFile(source));
+    }
+
+    /**
+     * Loads a model through a cache file. The cache is read if it is intact,
+     * of the current version and was made from the model as it is now.
+     * Otherwise the model is loaded and the cache written anew.
+     * @param source The model, in any format the loader knows
+     * @param cache The cache file
+     * @return the mesh
+     * @throws IOException if the model can't be read or the cache can't be written
+     */
+    public CachedMesh load(Path source, Path cache) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        long size = attributes.size(), time = attributes.lastModifiedTime().toMillis();
+        if(Files.exists(cache)) {
+            try {
+                CachedMesh cached = read(cache, size, time);
+                if(cached != null) return cached;
+                LOGGER.log(Level.FINE, "Rebuilding {0}, {1} changed", new Object[] {cache, source});
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Rebuilding unreadable mesh cache " + cache, e);
+            }
+        }
+        Mesh mesh = loader.load(source);
+        return write(mesh, cache, size, time);
+    }
+
+    /**
+     * Reads a cache file, regardless of what it was made from.
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file isn't a cache file of the
+     * current version, or is corrupt
+     */
+    public static CachedMesh read(Path path) throws IOException {
+        return read(path, -1, -1);
+    }
+
+    /**
+     * Writes a mesh to a cache file not tied to any model, so {@link #load(Path, Path)} won't reuse it.
+     * @return the mesh as it would be read back
+     */
+    public static CachedMesh write(Mesh mesh, Path path) throws IOException {
+        return write(mesh, path, -1, -1);
+    }
+
+    /**
+     * Packs a list of triangles into a mesh and writes it to a cache file.
+     * @see #write(Mesh, Path)
+     */
+    public static CachedMesh write(List<Triangle> triangles, Path path) throws IOException {
+        return write(Mesh.fromTriangles(triangles), path);
+    }
+
+    /**
+     * Reads a cache file, or returns null if it was made from another version of the model.
+     * A negative size skips that check.
+     */
+    private static CachedMesh read(Path path, long sourceSize, long sourceTime) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < HEADER) throw new IllegalArgumentException(path + " is too short for a mesh cache");
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while(header.hasRemaining()) {
+                if(channel.read(header, header.position()) < 0) throw new IllegalArgumentException(path + " is too short for a mesh cache");
+            }
+            if(header.getInt(0) != MAGIC) throw new IllegalArgumentException(path + " is not a mesh cache");
+            int version = header.getInt(4);
+            if(version != VERSION) throw new IllegalArgumentException(path + " is of version " + version + ", expected " + VERSION);
+            int vertices = header.getInt(8), triangles = header.getInt(12);
+            if(vertices < 0 || triangles < 0 || size != HEADER + payload(vertices, triangles)) {
+                throw new IllegalArgumentException(path + " has the wrong size for its counts");
+            }
+            if(sourceSize >= 0 && (header.getLong(SOURCE_OFFSET) != sourceSize || header.getLong(SOURCE_OFFSET + 8) != sourceTime)) return null;
+
+            long expected = header.getLong(CHECKSUM_OFFSET);
+            double[] bounds = new double[6];
+            header.position(BOUNDS_OFFSET);
+            header.asDoubleBuffer().get(bounds);
+
+            Section section = Section.reading(channel, HEADER);
+            section.checksum.update(header.position(0).limit(CHECKSUM_OFFSET));
+            double[] x = new double[vertices], y = new double[vertices], z = new double[vertices];
+            int[] indices = new int[triangles * 3];
+            int[] colors = new int[triangles];
+            long[] twoSided = new long[words(triangles)];
+            float[] normals = new float[triangles * 3];
+            section.doubles(x);
+            section.doubles(y);
+            section.doubles(z);
+            section.ints(indices);
+            section.ints(colors);
+            section.longs(twoSided);
+            section.floats(normals);
+            if(section.checksum.getValue() != expected) {
+                throw new IllegalArgumentException(path + " is corrupt, checksum mismatch");
+            }
+
+            Mesh mesh = new Mesh(x, y, z, indices, colors);
+            for(int i = 0; i < indices.length; i++) {
+                if(indices[i] < 0 || indices[i] >= vertices) throw new IllegalArgumentException(path + " refers to vertex " + indices[i] + " of " + vertices);
+            }
+            for(int w = 0; w < twoSided.length; w++) {
+                for(long bits = twoSided[w]; bits != 0; bits &= bits - 1) {
+                    mesh.setTwoSided(w * 64 + Long.numberOfTrailingZeros(bits), true);
+                }
+            }
+            return new CachedMesh(mesh, normals, bounds);
+        }
+    }
+
+    private static CachedMesh write(Mesh mesh, Path path, long sourceSize, long sourceTime) throws IOException {
+        int vertices = mesh.getVertexCount(), triangles = mesh.getTriangleCount();
+        double[] bounds = bounds(mesh);
+        float[] normals = normals(mesh);
+        long[] twoSided = new long[words(triangles)];
+        for(int t = 0; t < triangles; t++) {
+            if(mesh.isTwoSided(t)) twoSided[t >> 6] |= 1L << t;
+        }
+
+        // written aside and moved over, so a reader never sees half a file
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(vertices).putInt(triangles);
+                for(double bound : bounds) header.putDouble(bound);
+                header.putLong(sourceSize).putLong(sourceTime);
+
+                Section section = Section.writing(channel, HEADER);
+                section.checksum.update(header.flip());
+                section.doubles(mesh.getPositionsX());
+                section.doubles(mesh.getPositionsY());
+                section.doubles(mesh.getPositionsZ());
+                section.ints(mesh.getIndices());
+                section.ints(mesh.getColors());
+                section.longs(twoSided);
+                section.floats(normals);
+
+                header.limit(HEADER).putLong(CHECKSUM_OFFSET, section.checksum.getValue());
+                Section.write(channel, header.position(0), 0);
+                channel.force(false);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return new CachedMesh(mesh, normals, bounds);
+    }
+
+    private static long payload(int vertices, int triangles) {
+        return vertices * 3L * Double.BYTES + triangles * 4L * Integer.BYTES
+                + words(triangles) * (long) Long.BYTES + triangles * 3L * Float.BYTES;
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    private static double[] bounds(Mesh mesh) {
+        double[] bounds = {
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY
+        };
+        double[][] axes = {mesh.getPositionsX(), mesh.getPositionsY(), mesh.getPositionsZ()};
+        for(int a = 0; a < 3; a++) {
+            double[] axis = axes[a];
+            for(int i = 0; i < mesh.getVertexCount(); i++) {
+                if(axis[i] < bounds[a]) bounds[a] = axis[i];
+                if(axis[i] > bounds[a + 3]) bounds[a + 3] = axis[i];
+            }
+        }
+        return bounds;
+    }
+
+    private static float[] normals(Mesh mesh) {
+        double[] x = mesh.getPositionsX(), y = mesh.getPositionsY(), z = mesh.getPositionsZ();
+        int[] indices = mesh.getIndices();
+        float[] normals = new float[mesh.getTriangleCount() * 3];
+        for(int t = 0; t < mesh.getTriangleCount(); t++) {
+            int a = indices[t * 3], b = indices[t * 3 + 1], c = indices[t * 3 + 2];
+            double abX = x[b] - x[a], abY = y[b] - y[a], abZ = z[b] - z[a];
+            double acX = x[c] - x[a], acY = y[c] - y[a], acZ = z[c] - z[a];
+            double nx = abY * acZ - abZ * acY;
+            double ny = abZ * acX - abX * acZ;
+            double nz = abX * acY - abY * acX;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if(length == 0) continue;
+            normals[t * 3] = (float) (nx / length);
+            normals[t * 3 + 1] = (float) (ny / length);
+            normals[t * 3 + 2] = (float) (nz / length);
+        }
+        return normals;
+    }
+
+    /**
+     * Copies arrays to or from consecutive parts of a file through one
+     * reused buffer, and checksums the bytes on the way.
+     */
+    private static final class Section {
+        private final FileChannel channel;
+        private final boolean writing;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C checksum = new CRC32C();
+        private long position;
+
+        private Section(FileChannel channel, boolean writing, long position) {
+            this.channel = channel;
+            this.writing = writing;
+            this.position = position;
+        }
+
+        static Section reading(FileChannel channel, long position) {
+            return new Section(channel, false, position);
+        }
+
+        static Section writing(FileChannel channel, long position) {
+            return new Section(channel, true, position);
+        }
+
+        void doubles(double[] array) throws IOException {
+            int step = CHUNK / Double.BYTES;
+            for(int from = 0; from < array.length; from += step) {
+                int length = Math.min(step, array.length - from);
+                ByteBuffer buffer = next(length * Double.BYTES);
+                if(writing) {
+                    buffer.asDoubleBuffer().put(array, from, length);
+                } else {
+                    buffer.asDoubleBuffer().get(array, from, length);
+                }
+                done(buffer);
+            }
+        }
+
+        void ints(int[] array) throws IOException {
+            int step = CHUNK / Integer.BYTES;
+            for(int from = 0; from < array.length; from += step) {
+                int length = Math.min(step, array.length - from);
+                ByteBuffer buffer = next(length * Integer.BYTES);
+                if(writing) {
+                    buffer.asIntBuffer().put(array, from, length);
+                } else {
+                    buffer.asIntBuffer().get(array, from, length);
+                }
+                done(buffer);
+            }
+        }
+
+        void longs(long[] array) throws IOException {
+            int step = CHUNK / Long.BYTES;
+            for(int from = 0; from < array.length; from += step) {
+                int length = Math.min(step, array.length - from);
+                ByteBuffer buffer = next(length * Long.BYTES);
+                if(writing) {
+                    buffer.asLongBuffer().put(array, from, length);
+                } else {
+                    buffer.asLongBuffer().get(array, from, length);
+                }
+                done(buffer);
+            }
+        }
+
+        void floats(float[] array) throws IOException {
+            int step = CHUNK / Float.BYTES;
+            for(int from = 0; from < array.length; from += step) {
+                int length = Math.min(step, array.length - from);
+                ByteBuffer buffer = next(length * Float.BYTES);
+                if(writing) {
+                    buffer.asFloatBuffer().put(array, from, length);
+                } else {
+                    buffer.asFloatBuffer().get(array, from, length);
+                }
+                done(buffer);
+            }
+        }
+
+        private ByteBuffer next(int bytes) throws IOException {
+            buffer.clear().limit(bytes);
+            if(!writing) {
+                while(buffer.hasRemaining()) {
+                    // the size was checked against the counts, so only a file shrinking meanwhile ends early
+                    if(channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Unexpected end of mesh cache");
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+
+        private void done(ByteBuffer buffer) throws IOException {
+            int bytes = buffer.remaining();
+            checksum.update(buffer);
+            if(writing) write(channel, buffer.flip(), position);
+            position += bytes;
+        }
+
+        static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while(buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+}
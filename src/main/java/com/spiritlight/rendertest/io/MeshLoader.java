@@ -0,0 +1,250 @@
+package com.spiritlight.rendertest.io;
+
+import com.spiritlight.rendertest.objects.Mesh;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads Wavefront OBJ and STL (binary and ASCII) files into a {@link Mesh}.
+ * <p>
+ *     Files are memory mapped and parsed straight from the mapped bytes, without
+ *     decoding lines into strings or creating an object per vertex; positions and
+ *     indices go into growable primitive arrays that become the mesh. Large files
+ *     are split into chunks at line boundaries (or record boundaries for binary
+ *     STL), which are parsed in parallel once a pool is set.
+ * </p>
+ * <p>
+ *     Only geometry is read. OBJ faces with more than three vertices are split
+ *     into a fan of triangles, texture coordinates, normals, groups and materials
+ *     are skipped, and every triangle gets the loader's color. STL triangles
+ *     don't share vertices, so an STL mesh has three vertices per triangle.
+ * </p>
+ */
+public class MeshLoader {
+    // a mapping can't exceed 2 GiB, chunks stay well below
+    private static final long MAX_CHUNK = 256L << 20;
+    private static final long MIN_PARALLEL_CHUNK = 4L << 20;
+    private static final int STL_HEADER = 84;
+    private static final int STL_RECORD = 50;
+
+    private ForkJoinPool pool;
+    private int color = 0xFFFFFF;
+
+    /**
+     * Enables or disables parsing in parallel on the common pool.
+     * @see #setPool(ForkJoinPool)
+     */
+    public MeshLoader setParallel(boolean parallel) {
+        return setPool(parallel ? ForkJoinPool.commonPool() : null);
+    }
+
+    /**
+     * Sets the pool to parse chunks of large files on.
+     * @param pool The pool to use, or null to parse on the calling thread
+     * @return the loader itself
+     */
+    public MeshLoader setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * Sets the color given to every loaded triangle.
+     * @param rgb The packed RGB color
+     * @return the loader itself
+     */
+    public MeshLoader setColor(int rgb) {
+        this.color = rgb;
+        return this;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    /**
+     * Loads a mesh, telling the format from the file extension.
+     * @param path The file to load, ending in {@code .obj} or {@code .stl}
+     * @return the loaded mesh
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the format is unknown or the file is malformed
+     */
+    public Mesh load(Path path) throws IOException {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if(name.endsWith(".obj")) return loadObj(path);
+        if(name.endsWith(".stl")) return loadStl(path);
+        throw new IllegalArgumentException("Unknown mesh format: " + path);
+    }
+
+    public Mesh loadObj(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<long[]> chunks = lineChunks(channel, 0, channel.size());
+            List<ObjChunk> parsed = run(chunks, range -> {
+                ObjChunk chunk = new ObjChunk();
+                chunk.parse(map(channel, range[0], range[1] - range[0]), range[0]);
+                return chunk;
+            });
+            return ObjChunk.merge(parsed, color);
+        }
+    }
+
+    public Mesh loadStl(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size >= STL_HEADER) {
+                MappedByteBuffer header = map(channel, 0, STL_HEADER);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                long triangles = Integer.toUnsignedLong(header.getInt(80));
+                // ASCII files start with "solid", but so do some binary ones,
+                // only the size tells them apart for sure
+                if(STL_HEADER + triangles * STL_RECORD == size) return loadBinaryStl(channel, triangles);
+            }
+            return loadAsciiStl(channel);
+        }
+    }
+
+    private Mesh loadBinaryStl(FileChannel channel, long count) throws IOException {
+        if(count * 3 > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("STL with " + count + " triangles is too large for a mesh");
+        int triangles = (int) count;
+        double[] x = new double[triangles * 3], y = new double[triangles * 3], z = new double[triangles * 3];
+        int[] indices = new int[triangles * 3];
+        int[] colors = new int[triangles];
+
+        long perChunk = chunkSize(count * STL_RECORD) / STL_RECORD;
+        List<long[]> chunks = new ArrayList<>();
+        for(long first = 0; first < count; first += perChunk) {
+            chunks.add(new long[] {first, Math.min(count, first + perChunk)});
+        }
+        run(chunks, range -> {
+            int first = (int) range[0], end = (int) range[1];
+            MappedByteBuffer buffer = map(channel, STL_HEADER + range[0] * STL_RECORD, (range[1] - range[0]) * STL_RECORD);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            for(int t = first; t < end; t++) {
+                // skip the facet normal, it is recomputed from the vertices anyway
+                int record = (t - first) * STL_RECORD + 12;
+                for(int k = 0; k < 3; k++) {
+                    int v = t * 3 + k;
+                    x[v] = buffer.getFloat(record + k * 12);
+                    y[v] = buffer.getFloat(record + k * 12 + 4);
+                    z[v] = buffer.getFloat(record + k * 12 + 8);
+                    indices[v] = v;
+                }
+                colors[t] = color;
+            }
+            return null;
+        });
+        return new Mesh(x, y, z, indices, colors);
+    }
+
+    private Mesh loadAsciiStl(FileChannel channel) throws IOException {
+        List<long[]> chunks = lineChunks(channel, 0, channel.size());
+        List<StlChunk> parsed = run(chunks, range -> {
+            StlChunk chunk = new StlChunk();
+            chunk.parse(map(channel, range[0], range[1] - range[0]), range[0]);
+            return chunk;
+        });
+        return StlChunk.merge(parsed, color);
+    }
+
+    /**
+     * Splits a part of a file into chunks ending right after a line break,
+     * sized for the pool if there is one.
+     */
+    private List<long[]> lineChunks(FileChannel channel, long from, long to) throws IOException {
+        long size = chunkSize(to - from);
+        List<long[]> chunks = new ArrayList<>();
+        long start = from;
+        while(start < to) {
+            long end = start + size >= to ? to : nextLine(channel, start + size, to);
+            chunks.add(new long[] {start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private long chunkSize(long bytes) {
+        if(pool == null) return MAX_CHUNK;
+        // a few chunks per thread evens out chunks that parse slower
+        long size = bytes / (pool.getParallelism() * 4L);
+        return Math.max(MIN_PARALLEL_CHUNK, Math.min(MAX_CHUNK, size));
+    }
+
+    /**
+     * Finds the position right after the first line break at or past the given one.
+     */
+    private static long nextLine(FileChannel channel, long position, long limit) throws IOException {
+        int window = 64 << 10;
+        while(position < limit) {
+            int length = (int) Math.min(window, limit - position);
+            MappedByteBuffer buffer = map(channel, position, length);
+            for(int i = 0; i < length; i++) {
+                if(buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += length;
+        }
+        return limit;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    /**
+     * Parses every chunk, on the pool if there is one, and returns the results in order.
+     */
+    private <T> List<T> run(List<long[]> chunks, ChunkParser<T> parser) throws IOException {
+        List<T> results = new ArrayList<>(chunks.size());
+        if(pool == null || chunks.size() == 1) {
+            for(long[] chunk : chunks) {
+                results.add(parser.parse(chunk));
+            }
+            return results;
+        }
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(chunks.size());
+        for(long[] chunk : chunks) {
+            Callable<T> task = () -> {
+                try {
+                    return parser.parse(chunk);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            tasks.add(pool.submit(task));
+        }
+        try {
+            for(ForkJoinTask<T> task : tasks) {
+                results.add(task.join());
+            }
+        } catch (UncheckedIOException e) {
+            // the pool may hand back a copy wrapping the original
+            Throwable cause = e.getCause();
+            throw cause instanceof UncheckedIOException original ? original.getCause() : (IOException) cause;
+        } finally {
+            for(ForkJoinTask<T> task : tasks) {
+                task.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    @FunctionalInterface
+    private interface ChunkParser<T> {
+        T parse(long[] range) throws IOException;
+    }
+}
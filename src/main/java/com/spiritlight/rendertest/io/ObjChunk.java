@@ -0,0 +1,119 @@
+package com.spiritlight.rendertest.io;
+
+import com.spiritlight.rendertest.objects.Mesh;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The vertices and faces found in one chunk of an OBJ file.
+ * <p>
+ *     Face indices may be relative to the vertices defined so far, which
+ *     for a chunk parsed in parallel isn't known until every chunk before it
+ *     is done. Those are kept relative to the start of the chunk, which may
+ *     make them negative, flagged, and resolved when the chunks are merged.
+ * </p>
+ */
+final class ObjChunk {
+    private double[] x = new double[1024], y = new double[1024], z = new double[1024];
+    private int vertices;
+    private int[] indices = new int[3072];
+    private int indexCount;
+    // indices relative to the first vertex of this chunk
+    private final BitSet relative = new BitSet();
+
+    void parse(ByteBuffer buffer, long offset) {
+        ByteCursor cursor = new ByteCursor(buffer, 0, buffer.limit(), offset);
+        while(cursor.hasRemaining()) {
+            cursor.skipWhitespace();
+            if(cursor.keyword("v")) {
+                vertex(cursor.parseDouble(), cursor.parseDouble(), cursor.parseDouble());
+            } else if(cursor.keyword("f")) {
+                face(cursor);
+            }
+            // anything else is either a comment or not geometry
+            cursor.nextLine();
+        }
+    }
+
+    private void vertex(double vx, double vy, double vz) {
+        if(vertices == x.length) {
+            x = Arrays.copyOf(x, vertices * 2);
+            y = Arrays.copyOf(y, vertices * 2);
+            z = Arrays.copyOf(z, vertices * 2);
+        }
+        x[vertices] = vx;
+        y[vertices] = vy;
+        z[vertices] = vz;
+        vertices++;
+    }
+
+    private void face(ByteCursor cursor) {
+        // an index shifted left once, with the low bit set when it is relative
+        long first = 0, previous = 0;
+        int count = 0;
+        while(cursor.hasToken()) {
+            int at = cursor.position();
+            long index = reference(cursor.parseInt(), at, cursor);
+            // texture and normal indices aren't needed
+            cursor.skipToken();
+            if(count >= 2) {
+                triangle(first, previous, index);
+            }
+            if(count == 0) first = index;
+            previous = index;
+            count++;
+        }
+        if(count < 3) throw cursor.syntax(cursor.position(), "at least 3 face vertices");
+    }
+
+    private long reference(int index, int at, ByteCursor cursor) {
+        if(index > 0) return (long) (index - 1) << 1;
+        if(index == 0) throw cursor.syntax(at, "nonzero vertex index");
+        // -1 is the last vertex defined before this face, which
+        // may well have been in an earlier chunk
+        return (long) (vertices + index) << 1 | 1;
+    }
+
+    private void triangle(long a, long b, long c) {
+        if(indexCount + 3 > indices.length) indices = Arrays.copyOf(indices, indices.length * 2);
+        add(a);
+        add(b);
+        add(c);
+    }
+
+    private void add(long reference) {
+        if((reference & 1) != 0) relative.set(indexCount);
+        indices[indexCount++] = (int) (reference >> 1);
+    }
+
+    static Mesh merge(List<ObjChunk> chunks, int color) {
+        int vertices = 0, indexCount = 0;
+        for(ObjChunk chunk : chunks) {
+            vertices = Math.addExact(vertices, chunk.vertices);
+            indexCount = Math.addExact(indexCount, chunk.indexCount);
+        }
+        double[] x = new double[vertices], y = new double[vertices], z = new double[vertices];
+        int[] indices = new int[indexCount];
+
+        int vertexOffset = 0, indexOffset = 0;
+        for(ObjChunk chunk : chunks) {
+            System.arraycopy(chunk.x, 0, x, vertexOffset, chunk.vertices);
+            System.arraycopy(chunk.y, 0, y, vertexOffset, chunk.vertices);
+            System.arraycopy(chunk.z, 0, z, vertexOffset, chunk.vertices);
+            for(int i = 0; i < chunk.indexCount; i++) {
+                int index = chunk.indices[i];
+                if(chunk.relative.get(i)) index += vertexOffset;
+                if(index < 0 || index >= vertices) throw new IllegalArgumentException("face refers to vertex " + (index + 1) + " of " + vertices);
+                indices[indexOffset + i] = index;
+            }
+            vertexOffset += chunk.vertices;
+            indexOffset += chunk.indexCount;
+        }
+        int[] colors = new int[indexCount / 3];
+        Arrays.fill(colors, color);
+        return new Mesh(x, y, z, indices, colors);
+    }
+}
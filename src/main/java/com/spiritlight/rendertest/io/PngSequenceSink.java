@@ -0,0 +1,56 @@
+package com.spiritlight.rendertest.io;
+
+import com.spiritlight.rendertest.render.RenderTarget;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes every frame to its own PNG file in a directory. Files are
+ * independent of each other, so frames are encoded concurrently, each
+ * on the thread that rendered it.
+ */
+public class PngSequenceSink implements FrameSink {
+    public static final String DEFAULT_PATTERN = "frame_%05d.png";
+
+    private final Path directory;
+    private final String pattern;
+
+    public PngSequenceSink(Path directory) {
+        this(directory, DEFAULT_PATTERN);
+    }
+
+    /**
+     * @param directory The directory to write to, created if missing
+     * @param pattern The file name of a frame, formatted with the frame index
+     */
+    public PngSequenceSink(Path directory, String pattern) {
+        this.directory = directory;
+        this.pattern = pattern;
+    }
+
+    @Override
+    public void begin(int width, int height, double fps) throws IOException {
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public void write(int frame, RenderTarget target) throws IOException {
+        Path file = directory.resolve(String.format(pattern, frame));
+        try(OutputStream out = Files.newOutputStream(file)) {
+            if(!ImageIO.write(target.getImage(), "png", out)) throw new IOException("No PNG writer available");
+        }
+    }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,58 @@
+package com.spiritlight.rendertest.io;
+
+import com.spiritlight.rendertest.objects.Mesh;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The vertices found in one chunk of an ASCII STL file. Every three
+ * consecutive vertices of the file make a triangle, regardless of how
+ * they end up split between chunks.
+ */
+final class StlChunk {
+    private double[] x = new double[1024], y = new double[1024], z = new double[1024];
+    private int vertices;
+
+    void parse(ByteBuffer buffer, long offset) {
+        ByteCursor cursor = new ByteCursor(buffer, 0, buffer.limit(), offset);
+        while(cursor.hasRemaining()) {
+            cursor.skipWhitespace();
+            if(cursor.keyword("vertex")) {
+                if(vertices == x.length) {
+                    x = Arrays.copyOf(x, vertices * 2);
+                    y = Arrays.copyOf(y, vertices * 2);
+                    z = Arrays.copyOf(z, vertices * 2);
+                }
+                x[vertices] = cursor.parseDouble();
+                y[vertices] = cursor.parseDouble();
+                z[vertices] = cursor.parseDouble();
+                vertices++;
+            }
+            // solid, facet normal, outer loop and their ends carry nothing needed
+            cursor.nextLine();
+        }
+    }
+
+    static Mesh merge(List<StlChunk> chunks, int color) {
+        int vertices = 0;
+        for(StlChunk chunk : chunks) {
+            vertices = Math.addExact(vertices, chunk.vertices);
+        }
+        if(vertices % 3 != 0) throw new IllegalArgumentException("vertex count " + vertices + " is not a multiple of 3");
+        double[] x = new double[vertices], y = new double[vertices], z = new double[vertices];
+        int offset = 0;
+        for(StlChunk chunk : chunks) {
+            System.arraycopy(chunk.x, 0, x, offset, chunk.vertices);
+            System.arraycopy(chunk.y, 0, y, offset, chunk.vertices);
+            System.arraycopy(chunk.z, 0, z, offset, chunk.vertices);
+            offset += chunk.vertices;
+        }
+        int[] indices = new int[vertices];
+        for(int i = 0; i < vertices; i++) indices[i] = i;
+        int[] colors = new int[vertices / 3];
+        Arrays.fill(colors, color);
+        return new Mesh(x, y, z, indices, colors);
+    }
+}
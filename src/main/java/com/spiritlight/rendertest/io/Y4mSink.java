@@ -0,0 +1,112 @@
+package com.spiritlight.rendertest.io;
+
+import com.spiritlight.rendertest.render.RenderTarget;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes frames as one uncompressed YUV4MPEG2 stream, which most video
+ * tools read as is, for example {@code ffmpeg -i frames.y4m out.mp4}.
+ * <p>
+ *     Frames are converted to full range YCbCr as in JPEG, with the chroma
+ *     averaged over blocks of 2x2 pixels (4:2:0). The stream is sequential,
+ *     so frames are written in order, one at a time.
+ * </p>
+ */
+public class Y4mSink implements FrameSink {
+    private final OutputStream out;
+    private int width, height;
+    private int chromaWidth, chromaHeight;
+    // one frame, Y then Cb then Cr
+    private byte[] frame;
+    private int written;
+
+    /**
+     * @param file The file to write the stream to, replaced if it exists
+     */
+    public Y4mSink(Path file) throws IOException {
+        this(Files.newOutputStream(file));
+    }
+
+    /**
+     * @param out The stream to write to, closed with the sink
+     */
+    public Y4mSink(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+    }
+
+    @Override
+    public void begin(int width, int height, double fps) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.chromaWidth = (width + 1) / 2;
+        this.chromaHeight = (height + 1) / 2;
+        this.frame = new byte[width * height + 2 * chromaWidth * chromaHeight];
+        // the frame rate is a ratio, thousandths are exact enough
+        String rate = fps == Math.rint(fps) ? (long) fps + ":1" : Math.round(fps * 1000) + ":1000";
+        String header = "YUV4MPEG2 W" + width + " H" + height + " F" + rate + " Ip A1:1 C420jpeg\n";
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void write(int index, RenderTarget target) throws IOException {
+        if(frame == null) throw new IllegalStateException("Sink not begun");
+        if(target.getWidth() != width || target.getHeight() != height) {
+            throw new IllegalArgumentException("Frame " + index + " is " + target.getWidth() + "x" + target.getHeight()
+                    + ", expected " + width + "x" + height);
+        }
+        if(index != written) throw new IllegalArgumentException("Frame " + index + " out of order, expected " + written);
+        convert(target.getColor());
+        out.write("FRAME\n".getBytes(StandardCharsets.US_ASCII));
+        out.write(frame);
+        written++;
+    }
+
+    private void convert(int[] color) {
+        // BT.601 weights in 16.16 fixed point
+        for(int i = 0, n = width * height; i < n; i++) {
+            int rgb = color[i];
+            int r = rgb >> 16 & 0xFF, g = rgb >> 8 & 0xFF, b = rgb & 0xFF;
+            frame[i] = (byte) ((19595 * r + 38470 * g + 7471 * b + 32768) >> 16);
+        }
+        int cb = width * height, cr = cb + chromaWidth * chromaHeight;
+        for(int cy = 0; cy < chromaHeight; cy++) {
+            int y0 = cy * 2, y1 = Math.min(height - 1, y0 + 1);
+            for(int cx = 0; cx < chromaWidth; cx++) {
+                int x0 = cx * 2, x1 = Math.min(width - 1, x0 + 1);
+                int p0 = color[y0 * width + x0], p1 = color[y0 * width + x1];
+                int p2 = color[y1 * width + x0], p3 = color[y1 * width + x1];
+                // the conversion is linear, so averaging the colors averages the chroma
+                int r = (p0 >> 16 & 0xFF) + (p1 >> 16 & 0xFF) + (p2 >> 16 & 0xFF) + (p3 >> 16 & 0xFF);
+                int g = (p0 >> 8 & 0xFF) + (p1 >> 8 & 0xFF) + (p2 >> 8 & 0xFF) + (p3 >> 8 & 0xFF);
+                int b = (p0 & 0xFF) + (p1 & 0xFF) + (p2 & 0xFF) + (p3 & 0xFF);
+                int o = cy * chromaWidth + cx;
+                // sums of four pixels, hence the two extra bits of shift, and
+                // pure blue or red round up to 256, which a byte would wrap to 0
+                frame[cb + o] = (byte) clamp((-11059 * r - 21709 * g + 32768 * b + (128 << 18) + (1 << 17)) >> 18);
+                frame[cr + o] = (byte) clamp((32768 * r - 27439 * g - 5329 * b + (128 << 18) + (1 << 17)) >> 18);
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+
+    /**
+     * @return the number of frames written so far
+     */
+    public int getFrameCount() {
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,251 @@
+package com.spiritlight.rendertest.math;
+
+import com.spiritlight.rendertest.math.exceptions.MatrixException;
+
+/**
+ * The LU decomposition of a square matrix with partial pivoting, that is,
+ * {@code P * A = L * U} with {@code L} lower triangular with ones on the
+ * diagonal, {@code U} upper triangular and {@code P} a row permutation.
+ * <p>
+ *     A decomposition is a reusable workspace: decomposing another matrix
+ *     of the same size, and the determinant, inverse and solves that follow,
+ *     don't allocate. Once decomposed, every solve against the same matrix
+ *     costs {@code n^2} rather than the {@code n^3} of the decomposition.
+ * </p>
+ * <p>
+ *     A matrix is singular when a pivot is exactly zero. Matrices that are
+ *     only nearly singular decompose fine, with results as inaccurate as
+ *     their condition makes them.
+ * </p>
+ */
+public final class LUDecomposition {
+    // L below the diagonal and U from it up, row-major
+    private double[] lu = new double[0];
+    // the row swapped with row k at step k
+    private int[] pivots = new int[0];
+    private int size;
+    private int swaps;
+    private boolean singular;
+    private boolean decomposed;
+
+    /**
+     * Decomposes a square matrix, replacing any earlier decomposition.
+     * @return the decomposition itself
+     */
+    public LUDecomposition decompose(MutableMatrix matrix) {
+        if(!matrix.isSquare()) throw new IllegalArgumentException("only a square matrix can be decomposed, got " + matrix.rows + "x" + matrix.columns);
+        allocate(matrix.rows);
+        System.arraycopy(matrix.data, 0, lu, 0, size * size);
+        return factor();
+    }
+
+    /**
+     * Decomposes a square matrix, replacing any earlier decomposition.
+     * @return the decomposition itself
+     */
+    public LUDecomposition decompose(Matrix matrix) {
+        if(!matrix.isSquare()) throw new IllegalArgumentException("only a square matrix can be decomposed, got " + matrix.rows + "x" + matrix.columns);
+        allocate(matrix.rows);
+        for(int i = 0; i < size; i++) {
+            System.arraycopy(matrix.data, i * matrix.stride, lu, i * size, size);
+        }
+        return factor();
+    }
+
+    private void allocate(int size) {
+        // only grows, so decomposing matrices of one size over and over doesn't allocate
+        if(lu.length < size * size) lu = new double[size * size];
+        if(pivots.length < size) pivots = new int[size];
+        this.size = size;
+    }
+
+    private LUDecomposition factor() {
+        int n = size;
+        double[] a = lu;
+        swaps = 0;
+        singular = false;
+        for(int k = 0; k < n; k++) {
+            // the largest candidate keeps the multipliers at most 1 in magnitude
+            int pivot = k;
+            double max = Math.abs(a[k * n + k]);
+            for(int i = k + 1; i < n; i++) {
+                double value = Math.abs(a[i * n + k]);
+                if(value > max) {
+                    max = value;
+                    pivot = i;
+                }
+            }
+            pivots[k] = pivot;
+            if(pivot != k) {
+                swapRows(a, n, k, pivot);
+                swaps++;
+            }
+            double diagonal = a[k * n + k];
+            if(diagonal == 0) {
+                singular = true;
+                continue;
+            }
+            int rowK = k * n;
+            for(int i = k + 1; i < n; i++) {
+                int rowI = i * n;
+                double factor = a[rowI + k] /= diagonal;
+                if(factor == 0) continue;
+                for(int j = k + 1; j < n; j++) {
+                    a[rowI + j] -= factor * a[rowK + j];
+                }
+            }
+        }
+        decomposed = true;
+        return this;
+    }
+
+    private static void swapRows(double[] a, int columns, int r1, int r2) {
+        int o1 = r1 * columns, o2 = r2 * columns;
+        for(int j = 0; j < columns; j++) {
+            double value = a[o1 + j];
+            a[o1 + j] = a[o2 + j];
+            a[o2 + j] = value;
+        }
+    }
+
+    /**
+     * @return the size of the matrix last decomposed
+     */
+    public int getSize() {
+        checkDecomposed();
+        return size;
+    }
+
+    public boolean isSingular() {
+        checkDecomposed();
+        return singular;
+    }
+
+    /**
+     * @return the determinant of the matrix last decomposed, 0 if it is singular
+     */
+    public double determinant() {
+        checkDecomposed();
+        if(singular) return 0;
+        double determinant = (swaps & 1) == 0 ? 1 : -1;
+        for(int i = 0; i < size; i++) {
+            determinant *= lu[i * size + i];
+        }
+        return determinant;
+    }
+
+    /**
+     * Writes the inverse of the matrix last decomposed into a destination.
+     * @param out A square matrix of the same size
+     * @return the destination
+     * @throws MatrixException if the matrix is singular
+     */
+    public MutableMatrix inverse(MutableMatrix out) {
+        checkSolvable();
+        MutableMatrix.checkSize(out.rows, out.columns, size, size);
+        return solveInPlace(out.identity());
+    }
+
+    /**
+     * Solves {@code A * x = b} for a vector.
+     * @param b The right hand side
+     * @param x The solution, may be the same array as the right hand side
+     * @return the solution
+     * @throws MatrixException if the matrix is singular
+     */
+    public double[] solve(double[] b, double[] x) {
+        checkSolvable();
+        if(b.length != size || x.length != size) {
+            throw new IllegalArgumentException("expected vectors of " + size + " elements, got " + b.length + " and " + x.length);
+        }
+        if(x != b) System.arraycopy(b, 0, x, 0, size);
+        int n = size;
+        for(int k = 0; k < n; k++) {
+            int p = pivots[k];
+            if(p != k) {
+                double value = x[k];
+                x[k] = x[p];
+                x[p] = value;
+            }
+        }
+        // L * y = P * b, then U * x = y
+        for(int i = 1; i < n; i++) {
+            double sum = x[i];
+            for(int k = 0, row = i * n; k < i; k++) {
+                sum -= lu[row + k] * x[k];
+            }
+            x[i] = sum;
+        }
+        for(int i = n - 1; i >= 0; i--) {
+            int row = i * n;
+            double sum = x[i];
+            for(int k = i + 1; k < n; k++) {
+                sum -= lu[row + k] * x[k];
+            }
+            x[i] = sum / lu[row + i];
+        }
+        return x;
+    }
+
+    /**
+     * Solves {@code A * X = B} for every column of a matrix at once.
+     * @param b The right hand side, with as many rows as the matrix
+     * @param x The solution, sized as the right hand side, may be the same matrix
+     * @return the solution
+     * @throws MatrixException if the matrix is singular
+     */
+    public MutableMatrix solve(MutableMatrix b, MutableMatrix x) {
+        checkSolvable();
+        if(b.rows != size) throw new IllegalArgumentException("expected " + size + " rows, got " + b.rows);
+        MutableMatrix.checkSize(x.rows, x.columns, b.rows, b.columns);
+        return solveInPlace(x.set(b));
+    }
+
+    /**
+     * Runs the substitutions on whole rows of the right hand side, so every
+     * inner loop walks contiguous memory whatever the number of columns.
+     */
+    private MutableMatrix solveInPlace(MutableMatrix x) {
+        int n = size, m = x.columns;
+        double[] d = x.data;
+        for(int k = 0; k < n; k++) {
+            if(pivots[k] != k) swapRows(d, m, k, pivots[k]);
+        }
+        for(int i = 1; i < n; i++) {
+            int rowI = i * m;
+            for(int k = 0; k < i; k++) {
+                double factor = lu[i * n + k];
+                if(factor == 0) continue;
+                int rowK = k * m;
+                for(int j = 0; j < m; j++) {
+                    d[rowI + j] -= factor * d[rowK + j];
+                }
+            }
+        }
+        for(int i = n - 1; i >= 0; i--) {
+            int rowI = i * m;
+            for(int k = i + 1; k < n; k++) {
+                double factor = lu[i * n + k];
+                if(factor == 0) continue;
+                int rowK = k * m;
+                for(int j = 0; j < m; j++) {
+                    d[rowI + j] -= factor * d[rowK + j];
+                }
+            }
+            double diagonal = lu[i * n + i];
+            for(int j = 0; j < m; j++) {
+                d[rowI + j] /= diagonal;
+            }
+        }
+        return x;
+    }
+
+    private void checkDecomposed() {
+        if(!decomposed) throw new IllegalStateException("Nothing decomposed yet");
+    }
+
+    private void checkSolvable() {
+        checkDecomposed();
+        if(singular) throw new MatrixException("Matrix is singular");
+    }
+}
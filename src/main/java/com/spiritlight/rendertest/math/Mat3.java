@@ -0,0 +1,196 @@
+package com.spiritlight.rendertest.math;
+
+import com.spiritlight.rendertest.math.exceptions.MatrixException;
+
+/**
+ * A mutable 3x3 matrix with hand-unrolled operations.
+ * <p>
+ *     This is the fixed-size counterpart of {@link Matrix} for the per-vertex
+ *     path: nothing in here allocates, results are written into a supplied
+ *     output instead. The output may be the same instance as any of the inputs.
+ * </p>
+ * The element {@code mRC} is located at row {@code R} and column {@code C}.
+ */
+public final class Mat3 {
+    public double m00, m01, m02;
+    public double m10, m11, m12;
+    public double m20, m21, m22;
+
+    /**
+     * Creates an identity matrix.
+     */
+    public Mat3() {
+        identity();
+    }
+
+    public Mat3 identity() {
+        return set(1, 0, 0,
+                0, 1, 0,
+                0, 0, 1);
+    }
+
+    public Mat3 set(double m00, double m01, double m02,
+                    double m10, double m11, double m12,
+                    double m20, double m21, double m22) {
+        this.m00 = m00; this.m01 = m01; this.m02 = m02;
+        this.m10 = m10; this.m11 = m11; this.m12 = m12;
+        this.m20 = m20; this.m21 = m21; this.m22 = m22;
+        return this;
+    }
+
+    public Mat3 set(Mat3 other) {
+        return set(other.m00, other.m01, other.m02,
+                other.m10, other.m11, other.m12,
+                other.m20, other.m21, other.m22);
+    }
+
+    /**
+     * Copies the elements of a 3x3 {@link Matrix} into this matrix.
+     * @throws IllegalArgumentException if the matrix is not 3x3
+     */
+    public Mat3 set(Matrix matrix) {
+        if(matrix.columns != 3 || matrix.rows != 3) throw new IllegalArgumentException("matrix has to be 3x3");
+        double[] d = matrix.data;
+        int r0 = 0, r1 = matrix.stride, r2 = 2 * matrix.stride;
+        return set(d[r0], d[r0 + 1], d[r0 + 2],
+                d[r1], d[r1 + 1], d[r1 + 2],
+                d[r2], d[r2 + 1], d[r2 + 2]);
+    }
+
+    /**
+     * Sets this matrix to a rotation around the y axis, laid out
+     * the same way as the heading transform of the renderer.
+     * @param radians The angle to rotate by
+     */
+    public Mat3 setHeading(double radians) {
+        double sin = Math.sin(radians), cos = Math.cos(radians);
+        return set(cos, 0, -sin,
+                0, 1, 0,
+                sin, 0, cos);
+    }
+
+    /**
+     * Sets this matrix to a rotation around the x axis, laid out
+     * the same way as the pitch transform of the renderer.
+     * @param radians The angle to rotate by
+     */
+    public Mat3 setPitch(double radians) {
+        double sin = Math.sin(radians), cos = Math.cos(radians);
+        return set(1, 0, 0,
+                0, cos, sin,
+                0, -sin, cos);
+    }
+
+    /**
+     * Computes {@code a * b} into the output.
+     */
+    public static Mat3 multiply(Mat3 a, Mat3 b, Mat3 out) {
+        return out.set(
+                a.m00 * b.m00 + a.m01 * b.m10 + a.m02 * b.m20,
+                a.m00 * b.m01 + a.m01 * b.m11 + a.m02 * b.m21,
+                a.m00 * b.m02 + a.m01 * b.m12 + a.m02 * b.m22,
+
+                a.m10 * b.m00 + a.m11 * b.m10 + a.m12 * b.m20,
+                a.m10 * b.m01 + a.m11 * b.m11 + a.m12 * b.m21,
+                a.m10 * b.m02 + a.m11 * b.m12 + a.m12 * b.m22,
+
+                a.m20 * b.m00 + a.m21 * b.m10 + a.m22 * b.m20,
+                a.m20 * b.m01 + a.m21 * b.m11 + a.m22 * b.m21,
+                a.m20 * b.m02 + a.m21 * b.m12 + a.m22 * b.m22
+        );
+    }
+
+    /**
+     * Transposes this matrix in place.
+     * @return the matrix itself
+     */
+    public Mat3 transpose() {
+        return set(m00, m10, m20,
+                m01, m11, m21,
+                m02, m12, m22);
+    }
+
+    /**
+     * Multiplies every element of this matrix by a factor, in place.
+     * @return the matrix itself
+     */
+    public Mat3 scale(double factor) {
+        return set(m00 * factor, m01 * factor, m02 * factor,
+                m10 * factor, m11 * factor, m12 * factor,
+                m20 * factor, m21 * factor, m22 * factor);
+    }
+
+    /**
+     * Transforms the given coordinates into the output.
+     */
+    public Vec3 transform(double x, double y, double z, Vec3 out) {
+        return out.set(
+                m00 * x + m01 * y + m02 * z,
+                m10 * x + m11 * y + m12 * z,
+                m20 * x + m21 * y + m22 * z
+        );
+    }
+
+    public Vec3 transform(Vec3 in, Vec3 out) {
+        return transform(in.x, in.y, in.z, out);
+    }
+
+    /**
+     * Transforms the xyz triple at {@code in[inOffset]} and
+     * writes the result to {@code out[outOffset]}.
+     */
+    public void transform(double[] in, int inOffset, double[] out, int outOffset) {
+        double x = in[inOffset], y = in[inOffset + 1], z = in[inOffset + 2];
+        out[outOffset] = m00 * x + m01 * y + m02 * z;
+        out[outOffset + 1] = m10 * x + m11 * y + m12 * z;
+        out[outOffset + 2] = m20 * x + m21 * y + m22 * z;
+    }
+
+    /**
+     * Inverts this matrix in place.
+     * @return the matrix itself
+     * @throws MatrixException if the matrix is singular
+     */
+    public Mat3 invert() {
+        return inverseTranspose().transpose();
+    }
+
+    /**
+     * Replaces this matrix by the transpose of its inverse, the matrix that
+     * transforms normals when this one transforms points. For a rotation,
+     * that is the rotation itself.
+     * @return the matrix itself
+     * @throws MatrixException if the matrix is singular
+     */
+    public Mat3 inverseTranspose() {
+        // the cofactors, divided by the determinant
+        double c00 = m11 * m22 - m12 * m21, c01 = m12 * m20 - m10 * m22, c02 = m10 * m21 - m11 * m20;
+        double c10 = m02 * m21 - m01 * m22, c11 = m00 * m22 - m02 * m20, c12 = m01 * m20 - m00 * m21;
+        double c20 = m01 * m12 - m02 * m11, c21 = m02 * m10 - m00 * m12, c22 = m00 * m11 - m01 * m10;
+        double determinant = m00 * c00 + m01 * c01 + m02 * c02;
+        if(determinant == 0) throw new MatrixException("Matrix is singular");
+        double inverse = 1 / determinant;
+        return set(c00 * inverse, c01 * inverse, c02 * inverse,
+                c10 * inverse, c11 * inverse, c12 * inverse,
+                c20 * inverse, c21 * inverse, c22 * inverse);
+    }
+
+    public double determinant() {
+        return m00 * (m11 * m22 - m12 * m21)
+                - m01 * (m10 * m22 - m12 * m20)
+                + m02 * (m10 * m21 - m11 * m20);
+    }
+
+    public Matrix toMatrix() {
+        return new Matrix(3, 3, new double[] {
+                m00, m01, m02,
+                m10, m11, m12,
+                m20, m21, m22
+        });
+    }
+
+    @Override
+    public String toString() {
+        return toMatrix().toString();
+    }
+}
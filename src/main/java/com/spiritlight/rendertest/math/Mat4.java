@@ -0,0 +1,175 @@
+package com.spiritlight.rendertest.math;
+
+/**
+ * A mutable 4x4 matrix with hand-unrolled operations, used for
+ * homogeneous transforms, that is, a rotation/scale combined with a
+ * translation and possibly a projection.
+ * <p>
+ *     Like {@link Mat3}, nothing in here allocates; results are written into
+ *     a supplied output, which may be the same instance as any of the inputs.
+ * </p>
+ * The element {@code mRC} is located at row {@code R} and column {@code C}.
+ */
+public final class Mat4 {
+    public double m00, m01, m02, m03;
+    public double m10, m11, m12, m13;
+    public double m20, m21, m22, m23;
+    public double m30, m31, m32, m33;
+
+    /**
+     * Creates an identity matrix.
+     */
+    public Mat4() {
+        identity();
+    }
+
+    public Mat4 identity() {
+        return set(1, 0, 0, 0,
+                0, 1, 0, 0,
+                0, 0, 1, 0,
+                0, 0, 0, 1);
+    }
+
+    public Mat4 set(double m00, double m01, double m02, double m03,
+                    double m10, double m11, double m12, double m13,
+                    double m20, double m21, double m22, double m23,
+                    double m30, double m31, double m32, double m33) {
+        this.m00 = m00; this.m01 = m01; this.m02 = m02; this.m03 = m03;
+        this.m10 = m10; this.m11 = m11; this.m12 = m12; this.m13 = m13;
+        this.m20 = m20; this.m21 = m21; this.m22 = m22; this.m23 = m23;
+        this.m30 = m30; this.m31 = m31; this.m32 = m32; this.m33 = m33;
+        return this;
+    }
+
+    public Mat4 set(Mat4 other) {
+        return set(other.m00, other.m01, other.m02, other.m03,
+                other.m10, other.m11, other.m12, other.m13,
+                other.m20, other.m21, other.m22, other.m23,
+                other.m30, other.m31, other.m32, other.m33);
+    }
+
+    /**
+     * Sets this matrix to the affine transform rotating by the
+     * given 3x3 matrix, followed by a translation.
+     */
+    public Mat4 set(Mat3 rotation, double tx, double ty, double tz) {
+        return set(rotation.m00, rotation.m01, rotation.m02, tx,
+                rotation.m10, rotation.m11, rotation.m12, ty,
+                rotation.m20, rotation.m21, rotation.m22, tz,
+                0, 0, 0, 1);
+    }
+
+    /**
+     * Copies the elements of a 4x4 {@link Matrix} into this matrix.
+     * @throws IllegalArgumentException if the matrix is not 4x4
+     */
+    public Mat4 set(Matrix matrix) {
+        if(matrix.columns != 4 || matrix.rows != 4) throw new IllegalArgumentException("matrix has to be 4x4");
+        double[] d = matrix.data;
+        int r0 = 0, r1 = matrix.stride, r2 = 2 * matrix.stride, r3 = 3 * matrix.stride;
+        return set(d[r0], d[r0 + 1], d[r0 + 2], d[r0 + 3],
+                d[r1], d[r1 + 1], d[r1 + 2], d[r1 + 3],
+                d[r2], d[r2 + 1], d[r2 + 2], d[r2 + 3],
+                d[r3], d[r3 + 1], d[r3 + 2], d[r3 + 3]);
+    }
+
+    /**
+     * Computes {@code a * b} into the output.
+     */
+    public static Mat4 multiply(Mat4 a, Mat4 b, Mat4 out) {
+        return out.set(
+                a.m00 * b.m00 + a.m01 * b.m10 + a.m02 * b.m20 + a.m03 * b.m30,
+                a.m00 * b.m01 + a.m01 * b.m11 + a.m02 * b.m21 + a.m03 * b.m31,
+                a.m00 * b.m02 + a.m01 * b.m12 + a.m02 * b.m22 + a.m03 * b.m32,
+                a.m00 * b.m03 + a.m01 * b.m13 + a.m02 * b.m23 + a.m03 * b.m33,
+
+                a.m10 * b.m00 + a.m11 * b.m10 + a.m12 * b.m20 + a.m13 * b.m30,
+                a.m10 * b.m01 + a.m11 * b.m11 + a.m12 * b.m21 + a.m13 * b.m31,
+                a.m10 * b.m02 + a.m11 * b.m12 + a.m12 * b.m22 + a.m13 * b.m32,
+                a.m10 * b.m03 + a.m11 * b.m13 + a.m12 * b.m23 + a.m13 * b.m33,
+
+                a.m20 * b.m00 + a.m21 * b.m10 + a.m22 * b.m20 + a.m23 * b.m30,
+                a.m20 * b.m01 + a.m21 * b.m11 + a.m22 * b.m21 + a.m23 * b.m31,
+                a.m20 * b.m02 + a.m21 * b.m12 + a.m22 * b.m22 + a.m23 * b.m32,
+                a.m20 * b.m03 + a.m21 * b.m13 + a.m22 * b.m23 + a.m23 * b.m33,
+
+                a.m30 * b.m00 + a.m31 * b.m10 + a.m32 * b.m20 + a.m33 * b.m30,
+                a.m30 * b.m01 + a.m31 * b.m11 + a.m32 * b.m21 + a.m33 * b.m31,
+                a.m30 * b.m02 + a.m31 * b.m12 + a.m32 * b.m22 + a.m33 * b.m32,
+                a.m30 * b.m03 + a.m31 * b.m13 + a.m32 * b.m23 + a.m33 * b.m33
+        );
+    }
+
+    /**
+     * Transposes this matrix in place.
+     * @return the matrix itself
+     */
+    public Mat4 transpose() {
+        return set(m00, m10, m20, m30,
+                m01, m11, m21, m31,
+                m02, m12, m22, m32,
+                m03, m13, m23, m33);
+    }
+
+    /**
+     * Transforms the point {@code (x, y, z, 1)} into the output,
+     * dividing by the resulting w if it is not 1.
+     */
+    public Vec3 transformPoint(double x, double y, double z, Vec3 out) {
+        double w = m30 * x + m31 * y + m32 * z + m33;
+        double rx = m00 * x + m01 * y + m02 * z + m03;
+        double ry = m10 * x + m11 * y + m12 * z + m13;
+        double rz = m20 * x + m21 * y + m22 * z + m23;
+        if(w != 1) {
+            double inv = 1.0 / w;
+            rx *= inv;
+            ry *= inv;
+            rz *= inv;
+        }
+        return out.set(rx, ry, rz);
+    }
+
+    public Vec3 transformPoint(Vec3 in, Vec3 out) {
+        return transformPoint(in.x, in.y, in.z, out);
+    }
+
+    /**
+     * Transforms the direction {@code (x, y, z, 0)} into the output,
+     * ignoring the translation.
+     */
+    public Vec3 transformDirection(Vec3 in, Vec3 out) {
+        double x = in.x, y = in.y, z = in.z;
+        return out.set(
+                m00 * x + m01 * y + m02 * z,
+                m10 * x + m11 * y + m12 * z,
+                m20 * x + m21 * y + m22 * z
+        );
+    }
+
+    /**
+     * Transforms the point stored as an xyz triple at {@code in[inOffset]},
+     * and writes the resulting xyz triple to {@code out[outOffset]}.
+     */
+    public void transformPoint(double[] in, int inOffset, double[] out, int outOffset) {
+        double x = in[inOffset], y = in[inOffset + 1], z = in[inOffset + 2];
+        double w = m30 * x + m31 * y + m32 * z + m33;
+        double inv = w == 1 ? 1 : 1.0 / w;
+        out[outOffset] = (m00 * x + m01 * y + m02 * z + m03) * inv;
+        out[outOffset + 1] = (m10 * x + m11 * y + m12 * z + m13) * inv;
+        out[outOffset + 2] = (m20 * x + m21 * y + m22 * z + m23) * inv;
+    }
+
+    public Matrix toMatrix() {
+        return new Matrix(4, 4, new double[] {
+                m00, m01, m02, m03,
+                m10, m11, m12, m13,
+                m20, m21, m22, m23,
+                m30, m31, m32, m33
+        });
+    }
+
+    @Override
+    public String toString() {
+        return toMatrix().toString();
+    }
+}
@@ -1,8 +1,8 @@
 package com.spiritlight.rendertest.math;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class Matrices {
 
@@ -12,7 +12,8 @@ public final class Matrices {
     // just in case multiple calls are needed and wastes extra computing power
     // to calculate another one. Since our Matrix implementation is immutable,
     // it's safe to assume that the generated matrices are going to be stable.
-    private static final Map<Integer, Matrix> identity = new HashMap<>();
+    // Renderers may ask from several threads at once, hence the concurrent map.
+    private static final Map<Integer, Matrix> identity = new ConcurrentHashMap<>();
 
     /**
      * Creates an identity matrix for given size.
@@ -23,14 +24,13 @@ public final class Matrices {
      * @return The identity matrix created.
      */
     public static Matrix identityMatrix(int size) {
-        if(identity.containsKey(size)) return identity.get(size);
-        double[][] val = new double[size][size];
-        for(int i = 0; i < size; i++) {
-            val[i][i] = 1;
-        }
-        Matrix m = Matrix.ofArray(val);
-        identity.putIfAbsent(size, m);
-        return m;
+        return identity.computeIfAbsent(size, s -> {
+            double[][] val = new double[s][s];
+            for(int i = 0; i < s; i++) {
+                val[i][i] = 1;
+            }
+            return Matrix.ofArray(val);
+        });
     }
 
     /**
@@ -75,5 +75,22 @@ public final class Matrices {
         return Matrix.ofArray(val);
     }
 
-
+    /**
+     * Multiplies two square matrices of equal size by Strassen's algorithm.
+     * <p>
+     *     This trades 8 sub-products for 7 at every level of the recursion,
+     *     which pays off for very large matrices (at least several hundred
+     *     rows), at the cost of slightly larger rounding errors than
+     *     {@link Matrix#multiply(Matrix)}.
+     * </p>
+     * @param left The left hand side
+     * @param right The right hand side
+     * @return A new matrix holding {@code left * right}
+     */
+    public static Matrix multiplyStrassen(Matrix left, Matrix right) {
+        if(!left.isSquare() || !right.isSquare() || left.rows != right.rows) {
+            throw new IllegalArgumentException("Strassen multiplication needs two square matrices of the same size");
+        }
+        return MatrixMultiplier.strassen(left, right);
+    }
 }
@@ -14,9 +14,13 @@ import java.util.*;
  * <p></p>
  * A row is denoted by the size of the elements, and the
  * column is determined by the elements in each row.
+ * <p></p>
+ * The elements are stored row-major in one contiguous array, the element
+ * at {@code (row, column)} being located at {@code row * stride + column}.
  */
 public class Matrix implements Iterable<MatrixElement> {
-    protected final MatrixElement[] elements;
+    protected final double[] data;
+    protected final int stride;
 
     // these numbers are tracked for sake of accessibility
     public final int rows;
@@ -32,69 +36,119 @@ public class Matrix implements Iterable<MatrixElement> {
         if(elements.length == 0 || elements[0].length == 0) {
             throw new IllegalArgumentException("Invalid matrix size of 0");
         }
-        this.elements = elements.clone();
         this.rows = elements.length;
         this.columns = elements[0].length;
+        this.stride = columns;
+        this.data = new double[rows * columns];
+        for(int i = 0; i < rows; i++) {
+            if(elements[i].length != columns) throw new IllegalArgumentException("row " + i + " has " + elements[i].length + " columns, expected " + columns);
+            System.arraycopy(elements[i].elements(), 0, data, i * stride, columns);
+        }
+    }
+
+    /**
+     * Wraps the given row-major array, without copying it.
+     */
+    Matrix(int rows, int columns, double[] data) {
+        if(rows <= 0 || columns <= 0) {
+            throw new IllegalArgumentException("Invalid matrix size of " + rows + "x" + columns);
+        }
+        if(data.length < rows * columns) throw new IllegalArgumentException("array too small for a " + rows + "x" + columns + " matrix");
+        this.rows = rows;
+        this.columns = columns;
+        this.stride = columns;
+        this.data = data;
     }
 
     @Contract("_ -> new")
     public static Matrix ofArray(double[][] array) {
-        MatrixElement[] e = new MatrixElement[array.length];
-        int i = 0;
-        for(double[] val : array) {
-            e[i++] = new MatrixElement(val);
+        if(array.length == 0) throw new IllegalArgumentException("Invalid matrix size of 0");
+        return ofArray(array, array[0].length);
+    }
+
+    /**
+     * Creates a matrix from a possibly jagged array. Rows shorter
+     * than the given column count are padded with 0.
+     */
+    static Matrix ofArray(double[][] array, int columns) {
+        int rows = array.length;
+        double[] data = new double[rows * columns];
+        for(int i = 0; i < rows; i++) {
+            double[] row = array[i];
+            if(row == null) continue;
+            if(row.length > columns) throw new IllegalArgumentException("row " + i + " has " + row.length + " columns, expected " + columns);
+            System.arraycopy(row, 0, data, i * columns, row.length);
         }
-        return new Matrix(e);
+        return new Matrix(rows, columns, data);
+    }
+
+    /**
+     * Creates a matrix from a row-major array, that is, an array
+     * listing the first row, followed by the second row and so on.
+     * @param rows The amount of rows
+     * @param columns The amount of columns
+     * @param data The elements, of which the first {@code rows * columns} are used
+     * @return A new matrix holding a copy of the elements
+     */
+    @Contract("_, _, _ -> new")
+    public static Matrix ofRowMajor(int rows, int columns, double... data) {
+        if(data.length < rows * columns) throw new IllegalArgumentException("expected " + rows * columns + " elements, got " + data.length);
+        return new Matrix(rows, columns, Arrays.copyOf(data, rows * columns));
     }
 
     public MatrixElement getRow(int index) {
-        if(index < 0 || index >= elements.length) throw new IndexOutOfBoundsException(index);
-        return elements[index];
+        if(index < 0 || index >= rows) throw new IndexOutOfBoundsException(index);
+        int from = index * stride;
+        return new MatrixElement(Arrays.copyOfRange(data, from, from + columns));
     }
 
     public MatrixElement getColumn(int index) {
+        if(index < 0 || index >= columns) throw new IndexOutOfBoundsException(index);
         double[] result = new double[rows];
-        int i = 0;
-        for(MatrixElement element : elements) {
-            result[i++] = element.getElement(index);
+        for(int i = 0, at = index; i < rows; i++, at += stride) {
+            result[i] = data[at];
         }
         return new MatrixElement(result);
     }
 
     public double get(int row, int column) {
-        MatrixElement element = this.getRow(row);
-        if(column < 0 || column >= element.length) throw new IndexOutOfBoundsException(column);
-        return element.getElement(column);
+        if(row < 0 || row >= rows) throw new IndexOutOfBoundsException(row);
+        if(column < 0 || column >= columns) throw new IndexOutOfBoundsException(column);
+        return data[row * stride + column];
     }
 
     public MatrixElement[] getElements() {
-        return elements.clone(); // We clone here for some sort of immutability
+        MatrixElement[] ret = new MatrixElement[rows];
+        for(int i = 0; i < rows; i++) {
+            ret[i] = getRow(i);
+        }
+        return ret;
     }
 
+    /**
+     * Multiplies this matrix by another one. Large products are computed
+     * cache-blocked, and spread across the common fork-join pool once
+     * they are large enough.
+     * @param that The right hand side of the product
+     * @return A new matrix holding {@code this * that}
+     */
     @Contract(value = "null -> fail; _ -> new", pure = true)
     public Matrix multiply(Matrix that) {
         if(this.columns != that.rows) throw new IllegalArgumentException("rows mismatch on multiplying matrix");
-        double[][] result = new double[rows][that.columns];
-        for (int i = 0; i < rows; i++) {
-            MatrixElement element = elements[i];
-            for (int j = 0; j < that.columns; j++) {
-                for (int k = 0; k < that.rows; k++)
-                    result[i][j] += element.getElement(k) * that.elements[k].getElement(j);
-            }
-        }
-        return Matrix.ofArray(result);
+        return MatrixMultiplier.multiply(this, that);
     }
 
     @Contract(value = "_ -> new", pure = true)
     public Matrix scale(double scale) {
-        double[][] val = toArray();
-        double[][] other = new double[val.length][val[0].length];
-        for(int i = 0; i < val.length; i++) {
-            for(int j = 0; j < val[0].length; j++) {
-                other[i][j] = val[i][j] * scale;
+        double[] other = new double[rows * columns];
+        for(int i = 0; i < rows; i++) {
+            int from = i * stride;
+            int to = i * columns;
+            for(int j = 0; j < columns; j++) {
+                other[to + j] = data[from + j] * scale;
             }
         }
-        return Matrix.ofArray(other);
+        return new Matrix(rows, columns, other);
     }
 
     /**
@@ -107,32 +161,84 @@ public class Matrix implements Iterable<MatrixElement> {
      * @return A 2D array representing this matrix
      */
     public double[][] toArray() {
-        double[][] ret = new double[rows][columns];
+        double[][] ret = new double[rows][];
 
         for(int i = 0; i < rows; i++) {
-            ret[i] = elements[i].getElements();
+            int from = i * stride;
+            ret[i] = Arrays.copyOfRange(data, from, from + columns);
         }
 
         return ret;
     }
 
+    /**
+     * Converts this matrix to a row-major array.
+     * <p>
+     *     The array is constructed such that when supplying the output
+     *     into {@link Matrix#ofRowMajor(int, int, double...)} along with
+     *     the rows and columns, the output matrix is equal to this matrix.
+     * </p>
+     * @return A new array holding all elements of this matrix, row by row
+     */
+    public double[] toRowMajorArray() {
+        if(stride == columns) return Arrays.copyOf(data, rows * columns);
+        double[] ret = new double[rows * columns];
+        for(int i = 0; i < rows; i++) {
+            System.arraycopy(data, i * stride, ret, i * columns, columns);
+        }
+        return ret;
+    }
+
     /**
      * Creates a new matrix that is transposed by this matrix.
      * @return A new matrix that's the transpose of the current matrix
      */
     public Matrix transpose() {
-        double[][] val = new double[columns][rows];
-        for(int i = 0; i < columns; i++) {
-            // safe to use here as the array provided is copied instead of consumed
-            val[i] = this.getColumn(i).elements();
+        double[] val = new double[columns * rows];
+        for(int i = 0; i < rows; i++) {
+            int from = i * stride;
+            for(int j = 0; j < columns; j++) {
+                val[j * rows + i] = data[from + j];
+            }
         }
-        return Matrix.ofArray(val);
+        return new Matrix(columns, rows, val);
     }
 
     public boolean isSquare() {
         return rows == columns;
     }
 
+    /**
+     * Computes the determinant of this square matrix by LU decomposition.
+     * @return the determinant, 0 if the matrix is singular
+     */
+    public double determinant() {
+        return new LUDecomposition().decompose(this).determinant();
+    }
+
+    /**
+     * Creates the inverse of this square matrix. To invert matrices over and
+     * over, an {@link LUDecomposition} and a {@link MutableMatrix} reused
+     * between them avoid allocating.
+     * @return A new matrix that's the inverse of the current matrix
+     * @throws com.spiritlight.rendertest.math.exceptions.MatrixException if the matrix is singular
+     */
+    @Contract(value = "-> new", pure = true)
+    public Matrix inverse() {
+        MutableMatrix inverse = new LUDecomposition().decompose(this).inverse(new MutableMatrix(rows, columns));
+        return new Matrix(rows, columns, inverse.data);
+    }
+
+    /**
+     * Solves {@code this * x = b} for x, this matrix being square.
+     * @param b The right hand side, one element per row
+     * @return A new array holding the solution
+     * @throws com.spiritlight.rendertest.math.exceptions.MatrixException if the matrix is singular
+     */
+    public double[] solve(double... b) {
+        return new LUDecomposition().decompose(this).solve(b, new double[rows]);
+    }
+
     @Contract(value = "_, _ -> new", pure = true)
     public static @NotNull Builder builder(int rows, int cols) {
         return new Builder(rows, cols);
@@ -140,7 +246,7 @@ public class Matrix implements Iterable<MatrixElement> {
 
     @Override
     public Iterator<MatrixElement> iterator() {
-        return Arrays.stream(elements.clone()).iterator();
+        return Arrays.stream(getElements()).iterator();
     }
 
     @Override
@@ -243,7 +349,7 @@ public class Matrix implements Iterable<MatrixElement> {
          * @return The matrix built
          */
         public Matrix build() {
-            return Matrix.ofArray(element);
+            return Matrix.ofArray(element, columns);
         }
 
         /**
@@ -276,13 +382,23 @@ public class Matrix implements Iterable<MatrixElement> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Matrix that = (Matrix) o;
-        return rows == that.rows && columns == that.columns && Arrays.equals(elements, that.elements);
+        if (rows != that.rows || columns != that.columns) return false;
+        for (int i = 0; i < rows; i++) {
+            int from = i * stride;
+            int thatFrom = i * that.stride;
+            if (!Arrays.equals(data, from, from + columns, that.data, thatFrom, thatFrom + columns)) return false;
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
         int result = Objects.hash(rows, columns);
-        result = 31 * result + Arrays.hashCode(elements);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                result = 31 * result + Double.hashCode(data[i * stride + j]);
+            }
+        }
         return result;
     }
 }
@@ -0,0 +1,252 @@
+package com.spiritlight.rendertest.math;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The multiplication kernels behind {@link Matrix#multiply(Matrix)}
+ * and {@link Matrices#multiplyStrassen(Matrix, Matrix)}.
+ * <p>
+ *     Small products run a plain i-k-j loop. Larger ones transpose the right
+ *     hand side once, so both operands are walked row by row, and then work
+ *     through {@link #BLOCK} sized tiles that stay in cache. Above
+ *     {@link #PARALLEL_THRESHOLD} multiply-adds, blocks of rows are
+ *     spread over the common fork-join pool.
+ * </p>
+ */
+final class MatrixMultiplier {
+
+    private MatrixMultiplier() {}
+
+    // tile edge length, 3 tiles of 64x64 doubles are 96KiB which sits well in L2
+    static final int BLOCK = 64;
+
+    // below this many multiply-adds, setting up the blocked multiply costs more than it saves
+    static final long BLOCKED_THRESHOLD = 32L * 32 * 32;
+
+    // below this many multiply-adds, forking isn't worth it
+    static final long PARALLEL_THRESHOLD = 128L * 128 * 128;
+
+    // sub-matrices at or below this size are multiplied directly by Strassen's algorithm
+    static final int STRASSEN_LEAF = 128;
+
+    static Matrix multiply(Matrix left, Matrix right) {
+        int rows = left.rows, inner = left.columns, columns = right.columns;
+        double[] result = new double[rows * columns];
+        long work = (long) rows * inner * columns;
+
+        if(work < BLOCKED_THRESHOLD) {
+            simple(left.data, left.stride, right.data, right.stride, result, rows, inner, columns);
+            return new Matrix(rows, columns, result);
+        }
+
+        double[] transposed = transpose(right.data, right.stride, inner, columns);
+        if(work < PARALLEL_THRESHOLD || rows <= BLOCK) {
+            blocked(left.data, left.stride, transposed, result, inner, columns, 0, rows);
+        } else {
+            ForkJoinPool.commonPool().invoke(new RowBlocks(left.data, left.stride, transposed, result, inner, columns, 0, rows));
+        }
+        return new Matrix(rows, columns, result);
+    }
+
+    /**
+     * The textbook multiply, in i-k-j order so the innermost loop
+     * walks both the result and the right hand side row by row.
+     */
+    static void simple(double[] a, int aStride, double[] b, int bStride, double[] c,
+                       int rows, int inner, int columns) {
+        for (int i = 0; i < rows; i++) {
+            int rowA = i * aStride;
+            int rowC = i * columns;
+            for (int k = 0; k < inner; k++) {
+                double value = a[rowA + k];
+                int rowB = k * bStride;
+                for (int j = 0; j < columns; j++) {
+                    c[rowC + j] += value * b[rowB + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies rows {@code from} to {@code to} of {@code a} by the matrix
+     * whose transpose is {@code bt}, tile by tile. Every element of the result
+     * then is the dot product of two contiguous rows.
+     */
+    static void blocked(double[] a, int aStride, double[] bt, double[] c,
+                        int inner, int columns, int from, int to) {
+        for (int ii = from; ii < to; ii += BLOCK) {
+            int iEnd = Math.min(ii + BLOCK, to);
+            for (int jj = 0; jj < columns; jj += BLOCK) {
+                int jEnd = Math.min(jj + BLOCK, columns);
+                for (int kk = 0; kk < inner; kk += BLOCK) {
+                    int kEnd = Math.min(kk + BLOCK, inner);
+                    for (int i = ii; i < iEnd; i++) {
+                        int rowA = i * aStride;
+                        int rowC = i * columns;
+                        for (int j = jj; j < jEnd; j++) {
+                            int rowB = j * inner;
+                            double sum = c[rowC + j];
+                            for (int k = kk; k < kEnd; k++) {
+                                sum += a[rowA + k] * bt[rowB + k];
+                            }
+                            c[rowC + j] = sum;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static double[] transpose(double[] data, int stride, int rows, int columns) {
+        double[] ret = new double[rows * columns];
+        // blocked too, so neither side is walked column-wise for long
+        for (int ii = 0; ii < rows; ii += BLOCK) {
+            int iEnd = Math.min(ii + BLOCK, rows);
+            for (int jj = 0; jj < columns; jj += BLOCK) {
+                int jEnd = Math.min(jj + BLOCK, columns);
+                for (int i = ii; i < iEnd; i++) {
+                    for (int j = jj; j < jEnd; j++) {
+                        ret[j * rows + i] = data[i * stride + j];
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static final class RowBlocks extends RecursiveAction {
+        private final double[] a, bt, c;
+        private final int aStride, inner, columns, from, to;
+
+        private RowBlocks(double[] a, int aStride, double[] bt, double[] c, int inner, int columns, int from, int to) {
+            this.a = a;
+            this.aStride = aStride;
+            this.bt = bt;
+            this.c = c;
+            this.inner = inner;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BLOCK) {
+                blocked(a, aStride, bt, c, inner, columns, from, to);
+                return;
+            }
+            // split on a block boundary so no tile is shared between tasks
+            int mid = from + ((to - from) / 2 + BLOCK - 1) / BLOCK * BLOCK;
+            invokeAll(new RowBlocks(a, aStride, bt, c, inner, columns, from, mid),
+                    new RowBlocks(a, aStride, bt, c, inner, columns, mid, to));
+        }
+    }
+
+    /**
+     * Multiplies two square matrices by Strassen's algorithm. Both are padded
+     * with zeros up to the smallest {@code m * 2^k} covering them with a leaf
+     * size {@code m} between half of {@link #STRASSEN_LEAF} (exclusive) and
+     * {@link #STRASSEN_LEAF}, which is where the recursion switches back to
+     * the blocked multiply. Padding to a power of two multiple of the leaf
+     * instead would nearly double the size just above every power of two.
+     * Matrices no larger than a leaf go straight to {@link #multiply(Matrix, Matrix)}.
+     */
+    static Matrix strassen(Matrix left, Matrix right) {
+        int n = left.rows;
+        if (n <= STRASSEN_LEAF) return multiply(left, right);
+        int levels = 0;
+        while ((n + (1 << levels) - 1) >> levels > STRASSEN_LEAF) levels++;
+        int leaf = (n + (1 << levels) - 1) >> levels;
+        int size = leaf << levels;
+
+        double[] a = pad(left, size);
+        double[] b = pad(right, size);
+        double[] c = ForkJoinPool.commonPool().invoke(new Strassen(a, b, size));
+
+        double[] result = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(c, i * size, result, i * n, n);
+        }
+        return new Matrix(n, n, result);
+    }
+
+    private static double[] pad(Matrix matrix, int size) {
+        double[] ret = new double[size * size];
+        for (int i = 0; i < matrix.rows; i++) {
+            System.arraycopy(matrix.data, i * matrix.stride, ret, i * size, matrix.columns);
+        }
+        return ret;
+    }
+
+    private static final class Strassen extends RecursiveTask<double[]> {
+        private final double[] a, b;
+        private final int size;
+
+        private Strassen(double[] a, double[] b, int size) {
+            this.a = a;
+            this.b = b;
+            this.size = size;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (size <= STRASSEN_LEAF) {
+                double[] c = new double[size * size];
+                blocked(a, size, transpose(b, size, size, size), c, size, size, 0, size);
+                return c;
+            }
+            int h = size / 2;
+            double[] a11 = quadrant(a, size, 0, 0), a12 = quadrant(a, size, 0, h);
+            double[] a21 = quadrant(a, size, h, 0), a22 = quadrant(a, size, h, h);
+            double[] b11 = quadrant(b, size, 0, 0), b12 = quadrant(b, size, 0, h);
+            double[] b21 = quadrant(b, size, h, 0), b22 = quadrant(b, size, h, h);
+
+            Strassen m1 = new Strassen(add(a11, a22), add(b11, b22), h);
+            Strassen m2 = new Strassen(add(a21, a22), b11, h);
+            Strassen m3 = new Strassen(a11, subtract(b12, b22), h);
+            Strassen m4 = new Strassen(a22, subtract(b21, b11), h);
+            Strassen m5 = new Strassen(add(a11, a12), b22, h);
+            Strassen m6 = new Strassen(subtract(a21, a11), add(b11, b12), h);
+            Strassen m7 = new Strassen(subtract(a12, a22), add(b21, b22), h);
+            invokeAll(m1, m2, m3, m4, m5, m6, m7);
+
+            double[] p1 = m1.join(), p2 = m2.join(), p3 = m3.join(), p4 = m4.join();
+            double[] p5 = m5.join(), p6 = m6.join(), p7 = m7.join();
+
+            double[] c = new double[size * size];
+            for (int i = 0; i < h; i++) {
+                int top = i * size, bottom = (i + h) * size, q = i * h;
+                for (int j = 0; j < h; j++) {
+                    c[top + j] = p1[q + j] + p4[q + j] - p5[q + j] + p7[q + j];
+                    c[top + h + j] = p3[q + j] + p5[q + j];
+                    c[bottom + j] = p2[q + j] + p4[q + j];
+                    c[bottom + h + j] = p1[q + j] - p2[q + j] + p3[q + j] + p6[q + j];
+                }
+            }
+            return c;
+        }
+
+        private static double[] quadrant(double[] m, int size, int row, int column) {
+            int h = size / 2;
+            double[] ret = new double[h * h];
+            for (int i = 0; i < h; i++) {
+                System.arraycopy(m, (row + i) * size + column, ret, i * h, h);
+            }
+            return ret;
+        }
+
+        private static double[] add(double[] x, double[] y) {
+            double[] ret = new double[x.length];
+            for (int i = 0; i < ret.length; i++) ret[i] = x[i] + y[i];
+            return ret;
+        }
+
+        private static double[] subtract(double[] x, double[] y) {
+            double[] ret = new double[x.length];
+            for (int i = 0; i < ret.length; i++) ret[i] = x[i] - y[i];
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.spiritlight.rendertest.math;
+
+import java.util.Arrays;
+
+/**
+ * A mutable matrix of any size, the workspace counterpart of {@link Matrix}.
+ * <p>
+ *     Operations write into this matrix or a supplied destination instead of
+ *     allocating a result, so a few workspaces can be reused for every frame
+ *     or every step of a computation. Unlike {@link Mat3}, a destination may
+ *     not be one of the operands of a product or transpose, as the operands
+ *     are still being read while the result is written.
+ * </p>
+ * The elements are stored row-major in one array, the element at
+ * {@code (row, column)} being located at {@code row * columns + column}.
+ */
+public final class MutableMatrix {
+    final double[] data;
+
+    public final int rows;
+    public final int columns;
+
+    /**
+     * Creates a matrix of zeros.
+     */
+    public MutableMatrix(int rows, int columns) {
+        if(rows <= 0 || columns <= 0) throw new IllegalArgumentException("Invalid matrix size of " + rows + "x" + columns);
+        this.rows = rows;
+        this.columns = columns;
+        this.data = new double[rows * columns];
+    }
+
+    /**
+     * Creates a copy of a matrix.
+     */
+    public static MutableMatrix of(Matrix matrix) {
+        return new MutableMatrix(matrix.rows, matrix.columns).set(matrix);
+    }
+
+    /**
+     * Creates a matrix from a row-major array.
+     * @param data The elements, of which the first {@code rows * columns} are copied
+     */
+    public static MutableMatrix ofRowMajor(int rows, int columns, double... data) {
+        if(data.length < rows * columns) throw new IllegalArgumentException("expected " + rows * columns + " elements, got " + data.length);
+        MutableMatrix matrix = new MutableMatrix(rows, columns);
+        System.arraycopy(data, 0, matrix.data, 0, rows * columns);
+        return matrix;
+    }
+
+    public double get(int row, int column) {
+        return data[index(row, column)];
+    }
+
+    public MutableMatrix set(int row, int column, double value) {
+        data[index(row, column)] = value;
+        return this;
+    }
+
+    private int index(int row, int column) {
+        if(row < 0 || row >= rows) throw new IndexOutOfBoundsException(row);
+        if(column < 0 || column >= columns) throw new IndexOutOfBoundsException(column);
+        return row * columns + column;
+    }
+
+    /**
+     * Copies the elements of a matrix of the same size into this one.
+     * @return the matrix itself
+     */
+    public MutableMatrix set(Matrix matrix) {
+        checkSize(matrix.rows, matrix.columns, rows, columns);
+        for(int i = 0; i < rows; i++) {
+            System.arraycopy(matrix.data, i * matrix.stride, data, i * columns, columns);
+        }
+        return this;
+    }
+
+    /**
+     * Copies the elements of a matrix of the same size into this one.
+     * @return the matrix itself
+     */
+    public MutableMatrix set(MutableMatrix other) {
+        checkSize(other.rows, other.columns, rows, columns);
+        System.arraycopy(other.data, 0, data, 0, data.length);
+        return this;
+    }
+
+    /**
+     * Sets every element to the same value.
+     * @return the matrix itself
+     */
+    public MutableMatrix fill(double value) {
+        Arrays.fill(data, value);
+        return this;
+    }
+
+    /**
+     * Sets this matrix to ones on the diagonal and zeros elsewhere,
+     * also when it isn't square.
+     * @return the matrix itself
+     */
+    public MutableMatrix identity() {
+        Arrays.fill(data, 0);
+        for(int i = 0, n = Math.min(rows, columns); i < n; i++) {
+            data[i * columns + i] = 1;
+        }
+        return this;
+    }
+
+    /**
+     * Multiplies this matrix by another one into a destination.
+     * @param right The right hand side of the product
+     * @param out The destination, sized {@code rows x right.columns},
+     *            and neither this matrix nor the right hand side
+     * @return the destination, holding {@code this * right}
+     */
+    public MutableMatrix multiplyInto(MutableMatrix right, MutableMatrix out) {
+        if(columns != right.rows) throw new IllegalArgumentException("rows mismatch on multiplying matrix");
+        checkSize(out.rows, out.columns, rows, right.columns);
+        if(out == this || out == right) throw new IllegalArgumentException("destination of a product can't be one of its operands");
+        Arrays.fill(out.data, 0);
+        MatrixMultiplier.simple(data, columns, right.data, right.columns, out.data, rows, columns, right.columns);
+        return out;
+    }
+
+    /**
+     * Multiplies every element by a factor.
+     * @return the matrix itself
+     */
+    public MutableMatrix scaleInPlace(double scale) {
+        for(int i = 0; i < data.length; i++) {
+            data[i] *= scale;
+        }
+        return this;
+    }
+
+    /**
+     * Adds a matrix of the same size to this one, element by element.
+     * @return the matrix itself
+     */
+    public MutableMatrix addInPlace(MutableMatrix other) {
+        return addInPlace(other, 1);
+    }
+
+    /**
+     * Adds a multiple of a matrix of the same size to this one, element by
+     * element, which subtracts it for a scale of -1. The other matrix may be
+     * this one.
+     * @return the matrix itself
+     */
+    public MutableMatrix addInPlace(MutableMatrix other, double scale) {
+        checkSize(other.rows, other.columns, rows, columns);
+        double[] that = other.data;
+        for(int i = 0; i < data.length; i++) {
+            data[i] += that[i] * scale;
+        }
+        return this;
+    }
+
+    /**
+     * Writes the transpose of this matrix into a destination.
+     * @param out The destination, sized {@code columns x rows}, and not this matrix
+     * @return the destination
+     */
+    public MutableMatrix transposeInto(MutableMatrix out) {
+        checkSize(out.rows, out.columns, columns, rows);
+        if(out == this) throw new IllegalArgumentException("destination of a transpose can't be its source");
+        double[] result = out.data;
+        for(int i = 0; i < rows; i++) {
+            int from = i * columns;
+            for(int j = 0; j < columns; j++) {
+                result[j * rows + i] = data[from + j];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Transposes a square matrix in place.
+     * @return the matrix itself
+     */
+    public MutableMatrix transposeInPlace() {
+        if(!isSquare()) throw new IllegalArgumentException("only a square matrix can be transposed in place");
+        for(int i = 0; i < rows; i++) {
+            for(int j = i + 1; j < columns; j++) {
+                int upper = i * columns + j, lower = j * columns + i;
+                double value = data[upper];
+                data[upper] = data[lower];
+                data[lower] = value;
+            }
+        }
+        return this;
+    }
+
+    public boolean isSquare() {
+        return rows == columns;
+    }
+
+    /**
+     * @return a new immutable matrix holding a copy of the elements
+     */
+    public Matrix toMatrix() {
+        return new Matrix(rows, columns, data.clone());
+    }
+
+    static void checkSize(int rows, int columns, int expectedRows, int expectedColumns) {
+        if(rows != expectedRows || columns != expectedColumns) {
+            throw new IllegalArgumentException("expected a " + expectedRows + "x" + expectedColumns + " matrix, got " + rows + "x" + columns);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toMatrix().toString();
+    }
+}
@@ -0,0 +1,498 @@
+package com.spiritlight.rendertest.math;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An immutable matrix storing only its non-zero elements, for large
+ * matrices that are mostly zeros, such as mesh adjacency or Laplacians.
+ * <p>
+ *     The elements are compressed by rows (CSR) or by columns (CSC), see
+ *     {@link Order}. Either way the matrix holds three arrays: the non-zero
+ *     values, ordered by row then column (or column then row), the column
+ *     (or row) of each of them, and for every row (or column) where its
+ *     values start, plus one past the end. Memory and the time of every
+ *     operation grow with the number of non-zeros rather than with
+ *     {@code rows * columns}.
+ * </p>
+ * The rows of a matrix compressed by rows are the columns of its transpose
+ * compressed by columns, so {@link #transpose()} shares the arrays and
+ * takes no time at all.
+ */
+public final class SparseMatrix {
+    private final Order order;
+    // per row when compressed by rows, per column otherwise, length major + 1
+    private final int[] pointers;
+    // the column of every value when compressed by rows, the row otherwise
+    private final int[] indices;
+    private final double[] values;
+
+    public final int rows;
+    public final int columns;
+
+    private SparseMatrix(int rows, int columns, Order order, int[] pointers, int[] indices, double[] values) {
+        this.rows = rows;
+        this.columns = columns;
+        this.order = order;
+        this.pointers = pointers;
+        this.indices = indices;
+        this.values = values;
+    }
+
+    /**
+     * Compresses the non-zero elements of a dense matrix by rows.
+     */
+    @Contract("_ -> new")
+    public static SparseMatrix of(Matrix matrix) {
+        return of(matrix, Order.ROW);
+    }
+
+    /**
+     * Compresses the non-zero elements of a dense matrix.
+     */
+    @Contract("_, _ -> new")
+    public static SparseMatrix of(Matrix matrix, Order order) {
+        int rows = matrix.rows, columns = matrix.columns, stride = matrix.stride;
+        double[] data = matrix.data;
+        int count = 0;
+        for(int i = 0; i < rows; i++) {
+            for(int j = 0, at = i * stride; j < columns; j++) {
+                if(data[at + j] != 0) count++;
+            }
+        }
+        int major = order == Order.ROW ? rows : columns, minor = order == Order.ROW ? columns : rows;
+        int[] pointers = new int[major + 1];
+        int[] indices = new int[count];
+        double[] values = new double[count];
+        int n = 0;
+        for(int a = 0; a < major; a++) {
+            for(int b = 0; b < minor; b++) {
+                double value = order == Order.ROW ? data[a * stride + b] : data[b * stride + a];
+                if(value == 0) continue;
+                indices[n] = b;
+                values[n++] = value;
+            }
+            pointers[a + 1] = n;
+        }
+        return new SparseMatrix(rows, columns, order, pointers, indices, values);
+    }
+
+    /**
+     * Creates a matrix from compressed arrays, which are copied.
+     * @param order Whether the arrays are compressed by rows or by columns
+     * @param pointers Where the values of every row (or column) start, plus the end
+     * @param indices The column (or row) of every value, increasing within a row (or column)
+     * @param values The values
+     * @throws IllegalArgumentException if the arrays don't describe a matrix of the given size
+     */
+    @Contract("_, _, _, _, _, _ -> new")
+    public static SparseMatrix ofCompressed(int rows, int columns, Order order, int[] pointers, int[] indices, double[] values) {
+        checkSize(rows, columns);
+        int major = order == Order.ROW ? rows : columns, minor = order == Order.ROW ? columns : rows;
+        if(pointers.length != major + 1) throw new IllegalArgumentException("expected " + (major + 1) + " pointers, got " + pointers.length);
+        if(pointers[0] != 0) throw new IllegalArgumentException("pointers have to start at 0");
+        int count = pointers[major];
+        if(indices.length < count || values.length < count) {
+            throw new IllegalArgumentException("expected " + count + " indices and values, got " + indices.length + " and " + values.length);
+        }
+        for(int a = 0; a < major; a++) {
+            if(pointers[a + 1] < pointers[a]) throw new IllegalArgumentException("pointers decrease at " + a);
+            for(int p = pointers[a]; p < pointers[a + 1]; p++) {
+                if(indices[p] < 0 || indices[p] >= minor) throw new IllegalArgumentException("index " + indices[p] + " out of range at " + p);
+                if(p > pointers[a] && indices[p] <= indices[p - 1]) throw new IllegalArgumentException("indices not increasing at " + p);
+            }
+        }
+        return new SparseMatrix(rows, columns, order, pointers.clone(),
+                Arrays.copyOf(indices, count), Arrays.copyOf(values, count));
+    }
+
+    @Contract(value = "_, _ -> new", pure = true)
+    public static @NotNull Builder builder(int rows, int columns) {
+        return new Builder(rows, columns);
+    }
+
+    private static void checkSize(int rows, int columns) {
+        if(rows <= 0 || columns <= 0) throw new IllegalArgumentException("Invalid matrix size of " + rows + "x" + columns);
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * @return the number of elements stored, all non-zero
+     */
+    public int getNonZeros() {
+        return values.length;
+    }
+
+    /**
+     * @return a copy of where the values of every row (or column) start, plus the end
+     */
+    public int[] getPointers() {
+        return pointers.clone();
+    }
+
+    /**
+     * @return a copy of the column (or row) of every value
+     */
+    public int[] getIndices() {
+        return indices.clone();
+    }
+
+    /**
+     * @return a copy of the values
+     */
+    public double[] getValues() {
+        return values.clone();
+    }
+
+    public double get(int row, int column) {
+        if(row < 0 || row >= rows) throw new IndexOutOfBoundsException(row);
+        if(column < 0 || column >= columns) throw new IndexOutOfBoundsException(column);
+        int major = order == Order.ROW ? row : column, minor = order == Order.ROW ? column : row;
+        int at = Arrays.binarySearch(indices, pointers[major], pointers[major + 1], minor);
+        return at >= 0 ? values[at] : 0;
+    }
+
+    /**
+     * @return the transpose of this matrix, sharing its arrays, compressed the other way
+     */
+    public SparseMatrix transpose() {
+        return new SparseMatrix(columns, rows, order.other(), pointers, indices, values);
+    }
+
+    /**
+     * @return this matrix compressed the given way, this matrix itself if it already is
+     */
+    public SparseMatrix toOrder(Order order) {
+        if(order == this.order) return this;
+        int major = this.order == Order.ROW ? rows : columns, minor = this.order == Order.ROW ? columns : rows;
+        // a counting sort by the minor index, walking majors in order keeps them sorted
+        int[] pointers = new int[minor + 1];
+        for(int index : indices) {
+            pointers[index + 1]++;
+        }
+        for(int b = 0; b < minor; b++) {
+            pointers[b + 1] += pointers[b];
+        }
+        int[] next = Arrays.copyOf(pointers, minor);
+        int[] indices = new int[values.length];
+        double[] values = new double[this.values.length];
+        for(int a = 0; a < major; a++) {
+            for(int p = this.pointers[a]; p < this.pointers[a + 1]; p++) {
+                int at = next[this.indices[p]]++;
+                indices[at] = a;
+                values[at] = this.values[p];
+            }
+        }
+        return new SparseMatrix(rows, columns, order, pointers, indices, values);
+    }
+
+    /**
+     * @return a new dense matrix holding the same elements
+     */
+    public Matrix toMatrix() {
+        double[] data = new double[rows * columns];
+        int major = order == Order.ROW ? rows : columns;
+        for(int a = 0; a < major; a++) {
+            for(int p = pointers[a]; p < pointers[a + 1]; p++) {
+                if(order == Order.ROW) {
+                    data[a * columns + indices[p]] = values[p];
+                } else {
+                    data[indices[p] * columns + a] = values[p];
+                }
+            }
+        }
+        return new Matrix(rows, columns, data);
+    }
+
+    /**
+     * Multiplies this matrix by a vector.
+     * @param x The vector, one element per column
+     * @return A new vector holding {@code this * x}
+     */
+    public double[] multiply(double[] x) {
+        return multiply(x, new double[rows]);
+    }
+
+    /**
+     * Multiplies this matrix by a vector into a destination.
+     * @param x The vector, one element per column
+     * @param y The destination, one element per row, not the same array as the vector
+     * @return the destination, holding {@code this * x}
+     */
+    public double[] multiply(double[] x, double[] y) {
+        if(x.length != columns) throw new IllegalArgumentException("expected a vector of " + columns + " elements, got " + x.length);
+        if(y.length != rows) throw new IllegalArgumentException("expected a destination of " + rows + " elements, got " + y.length);
+        if(x == y) throw new IllegalArgumentException("destination of a product can't be its vector");
+        if(order == Order.ROW) {
+            // a dot product per row
+            for(int i = 0; i < rows; i++) {
+                double sum = 0;
+                for(int p = pointers[i]; p < pointers[i + 1]; p++) {
+                    sum += values[p] * x[indices[p]];
+                }
+                y[i] = sum;
+            }
+        } else {
+            // every column scaled and scattered into the result
+            Arrays.fill(y, 0);
+            for(int j = 0; j < columns; j++) {
+                double value = x[j];
+                if(value == 0) continue;
+                for(int p = pointers[j]; p < pointers[j + 1]; p++) {
+                    y[indices[p]] += values[p] * value;
+                }
+            }
+        }
+        return y;
+    }
+
+    /**
+     * Multiplies this matrix by a dense one.
+     * @param that The right hand side of the product
+     * @return A new dense matrix holding {@code this * that}
+     */
+    @Contract(value = "null -> fail; _ -> new", pure = true)
+    public Matrix multiply(Matrix that) {
+        if(this.columns != that.rows) throw new IllegalArgumentException("rows mismatch on multiplying matrix");
+        int width = that.columns, stride = that.stride;
+        double[] b = that.data;
+        double[] result = new double[rows * width];
+        int major = order == Order.ROW ? rows : columns;
+        // every non-zero adds a scaled row of the right hand side to a row of the result
+        for(int a = 0; a < major; a++) {
+            for(int p = pointers[a]; p < pointers[a + 1]; p++) {
+                int row = order == Order.ROW ? a : indices[p];
+                int inner = order == Order.ROW ? indices[p] : a;
+                double value = values[p];
+                int to = row * width, from = inner * stride;
+                for(int j = 0; j < width; j++) {
+                    result[to + j] += value * b[from + j];
+                }
+            }
+        }
+        return new Matrix(rows, width, result);
+    }
+
+    /**
+     * Multiplies this matrix by another sparse one, row by row as Gustavson's
+     * algorithm does, so the time grows with the multiply-adds actually needed.
+     * Elements cancelling out to zero are left out.
+     * @param that The right hand side of the product
+     * @return A new sparse matrix holding {@code this * that}, compressed by rows
+     */
+    @Contract(value = "null -> fail; _ -> new", pure = true)
+    public SparseMatrix multiply(SparseMatrix that) {
+        if(this.columns != that.rows) throw new IllegalArgumentException("rows mismatch on multiplying matrix");
+        SparseMatrix left = toOrder(Order.ROW), right = that.toOrder(Order.ROW);
+        int width = right.columns;
+        double[] accumulator = new double[width];
+        // the row each column was last touched in, plus one
+        int[] touched = new int[width];
+        int[] pending = new int[width];
+        int[] pointers = new int[rows + 1];
+        int[] indices = new int[Math.max(16, left.values.length + right.values.length)];
+        double[] values = new double[indices.length];
+        int count = 0;
+        for(int i = 0; i < rows; i++) {
+            int found = 0;
+            for(int p = left.pointers[i]; p < left.pointers[i + 1]; p++) {
+                int k = left.indices[p];
+                double value = left.values[p];
+                for(int q = right.pointers[k]; q < right.pointers[k + 1]; q++) {
+                    int j = right.indices[q];
+                    if(touched[j] != i + 1) {
+                        touched[j] = i + 1;
+                        accumulator[j] = 0;
+                        pending[found++] = j;
+                    }
+                    accumulator[j] += value * right.values[q];
+                }
+            }
+            Arrays.sort(pending, 0, found);
+            if(count + found > indices.length) {
+                int capacity = Math.max(count + found, indices.length * 2);
+                indices = Arrays.copyOf(indices, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            for(int n = 0; n < found; n++) {
+                int j = pending[n];
+                if(accumulator[j] == 0) continue;
+                indices[count] = j;
+                values[count++] = accumulator[j];
+            }
+            pointers[i + 1] = count;
+        }
+        return new SparseMatrix(rows, width, Order.ROW, pointers,
+                Arrays.copyOf(indices, count), Arrays.copyOf(values, count));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(rows).append('x').append(columns).append(", ").append(values.length).append(" non-zeros");
+        SparseMatrix byRow = toOrder(Order.ROW);
+        for(int i = 0; i < rows; i++) {
+            for(int p = byRow.pointers[i]; p < byRow.pointers[i + 1]; p++) {
+                builder.append("\n(").append(i).append(", ").append(byRow.indices[p]).append(") ").append(byRow.values[p]);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Two sparse matrices are equal if they hold the same elements,
+     * however they are compressed.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SparseMatrix that = ((SparseMatrix) o).toOrder(order);
+        return rows == that.rows && columns == that.columns
+                && Arrays.equals(pointers, that.pointers)
+                && Arrays.equals(indices, that.indices)
+                && Arrays.equals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        SparseMatrix byRow = toOrder(Order.ROW);
+        int result = Objects.hash(rows, columns);
+        result = 31 * result + Arrays.hashCode(byRow.pointers);
+        result = 31 * result + Arrays.hashCode(byRow.indices);
+        return 31 * result + Arrays.hashCode(byRow.values);
+    }
+
+    /**
+     * How the elements of a sparse matrix are compressed.
+     */
+    public enum Order {
+        /**
+         * Row by row (CSR), for products with a vector or matrix on the right
+         */
+        ROW,
+        /**
+         * Column by column (CSC), for reading columns
+         */
+        COLUMN;
+
+        Order other() {
+            return this == ROW ? COLUMN : ROW;
+        }
+    }
+
+    /**
+     * Collects elements in any order, and compresses them once built.
+     * Elements added at the same position are summed, and those ending
+     * up zero are left out.
+     */
+    public static class Builder {
+        private final int rows;
+        private final int columns;
+
+        private int count;
+        private int[] rowIndices = new int[16];
+        private int[] columnIndices = new int[16];
+        private double[] values = new double[16];
+
+        public Builder(int rows, int columns) {
+            checkSize(rows, columns);
+            this.rows = rows;
+            this.columns = columns;
+        }
+
+        /**
+         * Adds a value to an element.
+         * @return the builder itself
+         */
+        public Builder add(int row, int column, double value) {
+            if(row < 0 || row >= rows) throw new IndexOutOfBoundsException(row);
+            if(column < 0 || column >= columns) throw new IndexOutOfBoundsException(column);
+            if(count == values.length) {
+                int capacity = count * 2;
+                rowIndices = Arrays.copyOf(rowIndices, capacity);
+                columnIndices = Arrays.copyOf(columnIndices, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            rowIndices[count] = row;
+            columnIndices[count] = column;
+            values[count++] = value;
+            return this;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Builds the matrix, compressed by rows.
+         */
+        public SparseMatrix build() {
+            return build(Order.ROW);
+        }
+
+        public SparseMatrix build(Order order) {
+            int[] majors = order == Order.ROW ? rowIndices : columnIndices;
+            int[] minors = order == Order.ROW ? columnIndices : rowIndices;
+            int major = order == Order.ROW ? rows : columns;
+
+            // a counting sort by the major index first
+            int[] pointers = new int[major + 1];
+            for(int n = 0; n < count; n++) {
+                pointers[majors[n] + 1]++;
+            }
+            int longest = 0;
+            for(int a = 0; a < major; a++) {
+                longest = Math.max(longest, pointers[a + 1]);
+                pointers[a + 1] += pointers[a];
+            }
+            int[] next = Arrays.copyOf(pointers, major);
+            int[] sorted = new int[count];
+            for(int n = 0; n < count; n++) {
+                sorted[next[majors[n]]++] = n;
+            }
+
+            // then by the minor index within each, summing duplicates
+            long[] keys = new long[longest];
+            int[] indices = new int[count];
+            double[] values = new double[count];
+            int[] compressed = new int[major + 1];
+            int size = 0;
+            for(int a = 0; a < major; a++) {
+                int from = pointers[a], length = pointers[a + 1] - from;
+                for(int n = 0; n < length; n++) {
+                    int element = sorted[from + n];
+                    keys[n] = (long) minors[element] << 32 | element;
+                }
+                Arrays.sort(keys, 0, length);
+                int start = size;
+                for(int n = 0; n < length; n++) {
+                    int minor = (int) (keys[n] >>> 32), element = (int) keys[n];
+                    if(size > start && indices[size - 1] == minor) {
+                        values[size - 1] += this.values[element];
+                    } else {
+                        indices[size] = minor;
+                        values[size++] = this.values[element];
+                    }
+                }
+                // drop what summed up to zero
+                int kept = start;
+                for(int p = start; p < size; p++) {
+                    if(values[p] == 0) continue;
+                    indices[kept] = indices[p];
+                    values[kept++] = values[p];
+                }
+                size = kept;
+                compressed[a + 1] = size;
+            }
+            return new SparseMatrix(rows, columns, order, compressed,
+                    Arrays.copyOf(indices, size), Arrays.copyOf(values, size));
+        }
+    }
+}
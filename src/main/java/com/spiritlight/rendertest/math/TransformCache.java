@@ -0,0 +1,178 @@
+package com.spiritlight.rendertest.math;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sine and cosine tables per whole degree, and a thread-safe cache of
+ * camera rotations for whole-degree yaw and pitch.
+ * <p>
+ *     A rotation is the heading rotation multiplied by the pitch rotation,
+ *     computed exactly the same way as {@link Mat3#setHeading(double)} and
+ *     {@link Mat3#setPitch(double)} would, so for angles between -360 and
+ *     359 degrees a cached rotation is equal to a computed one down to the
+ *     last bit. Cached rotations are never handed
+ *     out, only copied into a caller's matrix, so they can be shared freely.
+ * </p>
+ * <p>
+ *     Rotations are kept in a slot per yaw and pitch, so looking one up
+ *     doesn't allocate. The cache holds at most a given number of rotations.
+ *     Once full, an arbitrary rotation is evicted for every new one. The size
+ *     is checked before a rotation is added, so threads missing at the same
+ *     time may each add one and take the size a few past the maximum.
+ * </p>
+ */
+public final class TransformCache {
+    public static final int DEFAULT_SIZE = 4096;
+
+    // indexed by degrees + 360, filled for -360 to 359 degrees: the
+    // sine of an angle and of that angle plus a turn differ in the last bits
+    private static final int TABLE_OFFSET = 360;
+    private static final double[] SIN = new double[2 * TABLE_OFFSET];
+    private static final double[] COS = new double[2 * TABLE_OFFSET];
+
+    static {
+        for(int i = 0; i < SIN.length; i++) {
+            double radians = Math.toRadians(i - TABLE_OFFSET);
+            SIN[i] = Math.sin(radians);
+            COS[i] = Math.cos(radians);
+        }
+    }
+
+    private static final TransformCache DEFAULT = new TransformCache(DEFAULT_SIZE);
+
+    private final int maxSize;
+    // a row of pitches per yaw, both indexed as the tables, rows made as yaws are first seen
+    private final AtomicReferenceArray<AtomicReferenceArray<double[]>> rotations = new AtomicReferenceArray<>(SIN.length);
+    private final AtomicInteger size = new AtomicInteger();
+    // the slot the last eviction stopped at, races only make eviction less orderly
+    private volatile int evictFrom;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize The most rotations to keep
+     */
+    public TransformCache(int maxSize) {
+        if(maxSize <= 0) throw new IllegalArgumentException("Invalid cache size of " + maxSize);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cache shared by every {@link com.spiritlight.rendertest.render.Camera} by default
+     */
+    public static TransformCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the sine of an angle in degrees, as {@code Math.sin(Math.toRadians(degrees))}
+     * for angles between -360 and 359 degrees, and of the same angle a whole number of
+     * turns closer to zero otherwise
+     */
+    public static double sin(int degrees) {
+        return SIN[index(degrees)];
+    }
+
+    /**
+     * @return the cosine of an angle in degrees
+     * @see #sin(int)
+     */
+    public static double cos(int degrees) {
+        return COS[index(degrees)];
+    }
+
+    /**
+     * @return true if the tables hold the angle itself, rather than one a whole number of turns apart
+     */
+    public static boolean isExact(int degrees) {
+        return degrees >= -TABLE_OFFSET && degrees < TABLE_OFFSET;
+    }
+
+    private static int index(int degrees) {
+        if(isExact(degrees)) return degrees + TABLE_OFFSET;
+        // strips whole turns and keeps the sign, landing in -359 to 359
+        return degrees % 360 + TABLE_OFFSET;
+    }
+
+    /**
+     * Writes the rotation for a yaw and pitch into a matrix, the same
+     * as {@code Camera.getTransform(Mat3)} computes it.
+     * @param yaw The heading, in degrees
+     * @param pitch The pitch, in degrees
+     * @param out The matrix to write to
+     * @return the output matrix
+     */
+    public Mat3 getRotation(int yaw, int pitch, Mat3 out) {
+        int y = index(yaw), p = index(pitch);
+        AtomicReferenceArray<double[]> row = rotations.get(y);
+        double[] rotation = row == null ? null : row.get(p);
+        if(rotation == null) {
+            misses.increment();
+            rotation = compute(y, p);
+            if(row == null) {
+                rotations.compareAndSet(y, null, new AtomicReferenceArray<>(SIN.length));
+                row = rotations.get(y);
+            }
+            if(size.get() >= maxSize) evict();
+            if(row.compareAndSet(p, null, rotation)) size.incrementAndGet();
+        } else {
+            hits.increment();
+        }
+        return out.set(rotation[0], rotation[1], rotation[2],
+                rotation[3], rotation[4], rotation[5],
+                rotation[6], rotation[7], rotation[8]);
+    }
+
+    private static double[] compute(int yaw, int pitch) {
+        double sin = SIN[yaw], cos = COS[yaw];
+        Mat3 heading = new Mat3().set(cos, 0, -sin,
+                0, 1, 0,
+                sin, 0, cos);
+        sin = SIN[pitch];
+        cos = COS[pitch];
+        Mat3 pitchTransform = new Mat3().set(1, 0, 0,
+                0, cos, sin,
+                0, -sin, cos);
+        Mat3 m = Mat3.multiply(heading, pitchTransform, new Mat3());
+        return new double[] {m.m00, m.m01, m.m02, m.m10, m.m11, m.m12, m.m20, m.m21, m.m22};
+    }
+
+    private void evict() {
+        // walks on from where the last eviction stopped, which is as good as random
+        int slots = SIN.length * SIN.length, slot = evictFrom;
+        for(int n = 0; n < slots && size.get() >= maxSize; n++, slot++) {
+            if(slot >= slots) slot = 0;
+            AtomicReferenceArray<double[]> row = rotations.get(slot / SIN.length);
+            if(row != null && row.getAndSet(slot % SIN.length, null) != null) size.decrementAndGet();
+        }
+        evictFrom = slot;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void clear() {
+        for(int y = 0; y < SIN.length; y++) {
+            AtomicReferenceArray<double[]> row = rotations.get(y);
+            if(row == null) continue;
+            for(int p = 0; p < SIN.length; p++) {
+                if(row.getAndSet(p, null) != null) size.decrementAndGet();
+            }
+        }
+    }
+}
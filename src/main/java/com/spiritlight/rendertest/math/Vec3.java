@@ -0,0 +1,98 @@
+package com.spiritlight.rendertest.math;
+
+/**
+ * A mutable 3-component vector.
+ * <p>
+ *     Unlike {@link Vertex}, this class is meant to be reused: every
+ *     operation either modifies this vector in place or writes into a
+ *     supplied output vector, so hot loops can work on a handful of
+ *     preallocated instances instead of creating one per result.
+ *     The output may be the same instance as any of the inputs.
+ * </p>
+ */
+public final class Vec3 {
+    public double x, y, z;
+
+    public Vec3() {
+    }
+
+    public Vec3(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public Vec3 set(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public Vec3 set(Vec3 other) {
+        return set(other.x, other.y, other.z);
+    }
+
+    public Vec3 set(Vertex vertex) {
+        return set(vertex.x, vertex.y, vertex.z);
+    }
+
+    public Vec3 add(double x, double y, double z) {
+        return set(this.x + x, this.y + y, this.z + z);
+    }
+
+    public Vec3 add(Vec3 other) {
+        return add(other.x, other.y, other.z);
+    }
+
+    public Vec3 subtract(Vec3 other) {
+        return set(x - other.x, y - other.y, z - other.z);
+    }
+
+    public Vec3 scale(double scalar) {
+        return set(x * scalar, y * scalar, z * scalar);
+    }
+
+    public double dot(Vec3 other) {
+        return x * other.x + y * other.y + z * other.z;
+    }
+
+    public double length() {
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+
+    /**
+     * Normalizes this vector in place.
+     * @return the vector itself
+     */
+    public Vec3 normalize() {
+        return scale(1.0 / length());
+    }
+
+    /**
+     * Computes {@code a - b} into the output.
+     */
+    public static Vec3 subtract(Vec3 a, Vec3 b, Vec3 out) {
+        return out.set(a.x - b.x, a.y - b.y, a.z - b.z);
+    }
+
+    /**
+     * Computes the cross product {@code a x b} into the output.
+     */
+    public static Vec3 cross(Vec3 a, Vec3 b, Vec3 out) {
+        return out.set(
+                a.y * b.z - a.z * b.y,
+                a.z * b.x - a.x * b.z,
+                a.x * b.y - a.y * b.x
+        );
+    }
+
+    public Vertex toVertex() {
+        return new Vertex(x, y, z);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + x + ", " + y + ", " + z + "]";
+    }
+}
@@ -63,10 +63,10 @@ public class Vertex extends Point {
      * @return The vertex representing the cross product
      */
     public Vertex cross(Vertex other) {
-        Matrix result = this.asSkewMatrix().multiply(other.asMatrix());
-        return new Vertex(result.get(0, 0),
-                result.get(1, 0),
-                result.get(2, 0));
+        // same as asSkewMatrix().multiply(other.asMatrix()), without the matrices
+        return new Vertex(y * other.z - z * other.y,
+                z * other.x - x * other.z,
+                x * other.y - y * other.x);
     }
 
     public double dot(Vertex other) {
@@ -84,7 +84,7 @@ public class Vertex extends Point {
      * <pre>
      *     [0, -z, y]
      *     [z, 0, -x]
-     *     [y, -x, 0]
+     *     [-y, x, 0]
      * </pre>
      * @return A 3x3 matrix that's skew-symmetric by the vertex.
      */
@@ -92,7 +92,7 @@ public class Vertex extends Point {
         return Matrix.builder(3, 3)
                 .putRow(0, -z, y)
                 .putRow(z, 0, -x)
-                .putRow(y, -x, 0).build();
+                .putRow(-y, x, 0).build();
     }
 
     /**
@@ -116,14 +116,27 @@ public class Vertex extends Point {
     public Vertex transform(Matrix matrix) {
         if(matrix.columns != 3 || matrix.rows != 3) throw new IllegalArgumentException("matrix has to be 3x3");
 
-        Matrix vertex = Matrix.builder(3, 1)
-                .putRow(x).putRow(y).putRow(z).build();
+        // unrolled 3x3 * 3x1 straight off the backing array
+        double[] m = matrix.data;
+        int r1 = matrix.stride, r2 = 2 * matrix.stride;
+        return new Vertex(m[0] * x + m[1] * y + m[2] * z,
+                m[r1] * x + m[r1 + 1] * y + m[r1 + 2] * z,
+                m[r2] * x + m[r2 + 1] * y + m[r2 + 2] * z);
+    }
 
-        Matrix result = matrix.multiply(vertex);
+    public Vertex transform(Mat3 matrix) {
+        return new Vertex(matrix.m00 * x + matrix.m01 * y + matrix.m02 * z,
+                matrix.m10 * x + matrix.m11 * y + matrix.m12 * z,
+                matrix.m20 * x + matrix.m21 * y + matrix.m22 * z);
+    }
 
-        return new Vertex(result.get(0, 0),
-                result.get(1, 0),
-                result.get(2, 0));
+    /**
+     * Transforms this vertex by the matrix, writing the result into
+     * the output instead of creating a new vertex.
+     * @return the output vector
+     */
+    public Vec3 transform(Mat3 matrix, Vec3 out) {
+        return matrix.transform(x, y, z, out);
     }
 
     public static Vertex of(double x, double y, double z) {
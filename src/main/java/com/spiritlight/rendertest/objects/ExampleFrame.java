@@ -1,19 +1,30 @@
 package com.spiritlight.rendertest.objects;
 
 import com.spiritlight.rendertest.Main;
-import com.spiritlight.rendertest.math.Matrix;
-import com.spiritlight.rendertest.math.Vertex;
-import com.spiritlight.rendertest.utils.AutoScaler;
-import com.spiritlight.rendertest.utils.MathHelper;
+import com.spiritlight.rendertest.render.Camera;
+import com.spiritlight.rendertest.render.RenderMetrics;
+import com.spiritlight.rendertest.render.RenderStage;
+import com.spiritlight.rendertest.render.RenderTarget;
+import com.spiritlight.rendertest.render.RenderThread;
+import com.spiritlight.rendertest.render.Renderer;
+import com.spiritlight.rendertest.render.ResolutionScaler;
+import com.spiritlight.rendertest.scene.LodChain;
+import com.spiritlight.rendertest.utils.FrameScheduler;
+import com.spiritlight.rendertest.utils.PingPong;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
-import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ExampleFrame extends JFrame {
+    // tells the metrics of several frames in one JVM apart
+    private static final AtomicInteger FRAMES = new AtomicInteger();
 
     protected JSlider slider = new JSlider(0, 360, 180);
 
@@ -22,10 +33,30 @@ public class ExampleFrame extends JFrame {
     private final AtomicInteger yaw = new AtomicInteger();
     private final AtomicInteger pitch = new AtomicInteger();
 
-    protected AutoScaler yawScale = new AutoScaler(yaw, 360, 0, 6, 50, TimeUnit.MILLISECONDS, this::repaint);
-    protected AutoScaler pitchScale = new AutoScaler(pitch, 90, -90, 2, 50, TimeUnit.MILLISECONDS, this::repaint);
+    protected final FrameScheduler scheduler;
+
+    // rendered instead of Main.list when set
+    private final LodChain model;
+    private final ExamplePanel panel;
 
     public ExampleFrame() {
+        this((LodChain) null);
+    }
+
+    /**
+     * Creates a frame showing a mesh rather than the built-in triangles.
+     * @param mesh The mesh to show, or null for {@link Main#list}
+     */
+    public ExampleFrame(Mesh mesh) {
+        this(mesh == null ? null : new LodChain(mesh));
+    }
+
+    /**
+     * Creates a frame showing a model at the level of detail fitting its size on screen.
+     * @param model The model to show, or null for {@link Main#list}
+     */
+    public ExampleFrame(LodChain model) {
+        this.model = model;
         Container pane = this.getContentPane();
         pane.setLayout(new BorderLayout());
 
@@ -33,107 +64,95 @@ public class ExampleFrame extends JFrame {
 
         // pane.add(pitchSlider, BorderLayout.EAST);
 
-        pane.add(new ExamplePanel(), BorderLayout.CENTER);
+        this.panel = new ExamplePanel();
+        // 120 and 40 degrees per second, as the old 6 and 2 degrees every 50 ms
+        this.scheduler = new FrameScheduler(60, panel::requestFrame)
+                .animate(new PingPong(yaw, 0, 360, 120))
+                .animate(new PingPong(pitch, -90, 90, 40));
+        pane.add(panel, BorderLayout.CENTER);
 
         this.setSize(400, 400);
+        // hiding, the default, never fires windowClosed and the threads below would keep going
+        this.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
 
         // so the slider changes are seen
-        // slider.addChangeListener(e -> repaint());
-        // pitchSlider.addChangeListener(e -> repaint());
-
-        this.yawScale.start();
-        this.pitchScale.start();
+        // slider.addChangeListener(e -> scheduler.requestFrame());
+        // pitchSlider.addChangeListener(e -> scheduler.requestFrame());
+
+        this.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                scheduler.stop();
+                panel.renderThread.stop();
+                panel.metrics.stopLogging();
+                panel.metrics.unregister();
+            }
+        });
+        this.panel.renderThread.start();
+        this.scheduler.start();
     }
 
+    /**
+     * Shows the frames of a render thread, so painting never waits for the renderer.
+     */
     private class ExamplePanel extends JPanel {
+        private final RenderMetrics metrics = new RenderMetrics();
+        private final Camera camera = new Camera();
+        private final RenderThread renderThread = new RenderThread(new Renderer().setMetrics(metrics), this::draw, this::frameDone);
+
+        private ExamplePanel() {
+            // visible in JConsole under com.spiritlight.rendertest
+            metrics.register("ExampleFrame-" + FRAMES.incrementAndGet());
+            if(Boolean.getBoolean("rendertest.metrics.log")) {
+                metrics.startLogging(10, TimeUnit.SECONDS);
+            }
+            // a frame time budget in milliseconds turns on dynamic resolution
+            String budget = System.getProperty("rendertest.resolution.budget");
+            if(budget != null) {
+                String filter = System.getProperty("rendertest.resolution.filter", "bilinear");
+                renderThread.setResolutionScaler(new ResolutionScaler((long) (Double.parseDouble(budget) * 1_000_000))
+                        .setFilter(ResolutionScaler.Filter.valueOf(filter.toUpperCase())));
+            }
+            this.addComponentListener(new ComponentAdapter() {
+                @Override
+                public void componentResized(ComponentEvent e) {
+                    if (getWidth() <= 0 || getHeight() <= 0) return;
+                    renderThread.setSize(getWidth(), getHeight());
+                    scheduler.requestFrame();
+                }
+            });
+        }
+
+        void requestFrame() {
+            renderThread.requestFrame();
+        }
+
+        // on the render thread
+        private void draw(Renderer renderer, RenderTarget target) {
+            camera.setYaw(yaw.get()).setPitch(pitch.get());
+            if (model != null) {
+                model.render(renderer, camera, target);
+            } else {
+                renderer.render(Main.list, camera, target);
+            }
+        }
+
+        // on the render thread
+        private void frameDone() {
+            scheduler.frameRendered();
+            repaint();
+        }
+
         @Override
         public void paintComponent(Graphics g) {
-            if (!(g instanceof Graphics2D)) return;
             g.setColor(Color.BLACK);
             g.fillRect(0, 0, this.getWidth(), this.getHeight());
-
-            // rendering
-            double heading = Math.toRadians(yaw.get());
-            Matrix headingTransform = Matrix.builder(3, 3)
-                    .putRow(Math.cos(heading), 0, -Math.sin(heading))
-                    .putRow(0, 1, 0)
-                    .putRow(Math.sin(heading), 0, Math.cos(heading))
-                    .build();
-
-            double pitch = Math.toRadians(ExampleFrame.this.pitch.get());
-            Matrix pitchTransform = Matrix.builder(3, 3)
-                    .putRow(1, 0, 0)
-                    .putRow(0, Math.cos(pitch), Math.sin(pitch))
-                    .putRow(0, -Math.sin(pitch), Math.cos(pitch))
-                    .build();
-
-            Matrix transform = headingTransform.multiply(pitchTransform);
-
-            g.setColor(Color.WHITE);
-
-            BufferedImage image = new BufferedImage(this.getWidth(), this.getHeight(), BufferedImage.TYPE_INT_ARGB);
-
-            // Z-Buffer array
-            double[] buffer = new double[image.getHeight() * image.getWidth()];
-            Arrays.fill(buffer, Double.NEGATIVE_INFINITY);
-
-            for (Triangle t : Main.list) {
-                // transform the vertices and then translate
-                Vertex v1 = t.getPoint1().transform(transform)
-                        .add(this.getWidth() / 2d, this.getHeight() / 2d, 0);
-                Vertex v2 = t.getPoint2().transform(transform)
-                        .add(this.getWidth() / 2d, this.getHeight() / 2d, 0);
-                Vertex v3 = t.getPoint3().transform(transform)
-                        .add(this.getWidth() / 2d, this.getHeight() / 2d, 0);
-
-                Vertex ab = v2.subtract(v1);
-                Vertex ac = v3.subtract(v1);
-                Vertex normal = Vertex.of(
-                        ab.getY() * ac.getZ() - ab.getZ() * ac.getY(),
-                        ab.getZ() * ac.getX() - ab.getX() * ac.getZ(),
-                        ab.getX() * ac.getY() - ab.getY() * ac.getX()
-                );
-
-                normal = normal.scale(1.0 / normal.normalLength());
-
-                double angle = Math.cos(normal.getZ());
-
-                int minX = (int) Math.max(0, Math.ceil(MathHelper.min(v1.getX(), v2.getX(), v3.getX())));
-                int maxX = (int) Math.min(this.getWidth() - 1, Math.floor(MathHelper.max(v1.getX(), v2.getX(), v3.getX())));
-
-                int minY = (int) Math.max(0, Math.ceil(MathHelper.min(v1.getY(), v2.getY(), v3.getY())));
-                int maxY = (int) Math.min(this.getHeight() - 1, Math.floor(MathHelper.max(v1.getY(), v2.getY(), v3.getY())));
-
-                double triArea2D = (v1.getY() - v3.getY()) * (v2.getX() - v3.getX()) + (v2.getY() - v3.getY()) * (v3.getX() - v1.getX());
-
-                // didn't really feel like typing out this hot mess so i just copied it over with modifications
-
-                /* Start of the hot mess */
-                // this just draws our picture btw
-                for (int y = minY; y <= maxY; y++) {
-                    for (int x = minX; x <= maxX; x++) {
-                        double b1 =
-                                ((y - v3.getY()) * (v2.getX() - v3.getX()) + (v2.getY() - v3.getY()) * (v3.getX() - x)) / triArea2D;
-                        double b2 =
-                                ((y - v1.getY()) * (v3.getX() - v1.getX()) + (v3.getY() - v1.getY()) * (v1.getX() - x)) / triArea2D;
-                        double b3 =
-                                ((y - v2.getY()) * (v1.getX() - v2.getX()) + (v1.getY() - v2.getY()) * (v2.getX() - x)) / triArea2D;
-                        double depth = b1 * v1.getZ() + b2 * v2.getZ() + b3 * v3.getZ();
-
-                        int zIndex = y * image.getWidth() + x;
-
-                        if (b1 >= 0 && b1 <= 1 && b2 >= 0 && b2 <= 1 && b3 >= 0 && b3 <= 1) {
-                            if(buffer[zIndex] < depth) {
-                                image.setRGB(x, y, t.getShade(angle).getRGB());
-                                buffer[zIndex] = depth;
-                            }
-                        }
-                    }
-                }
-            }
-            /* End of that hot mess */
-
+            // frames of the old size are shown until one of the new size is done
+            BufferedImage image = renderThread.latest();
+            if (image == null) return;
+            long blit = System.nanoTime();
             g.drawImage(image, 0, 0, null);
+            metrics.record(RenderStage.BLIT, System.nanoTime() - blit);
         }
     }
 }
@@ -0,0 +1,208 @@
+package com.spiritlight.rendertest.objects;
+
+import com.spiritlight.rendertest.math.Mat3;
+import com.spiritlight.rendertest.math.Vertex;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A triangle mesh stored as a structure of arrays.
+ * <p>
+ *     Vertex positions are kept in three parallel arrays, one per axis,
+ *     and triangles refer to them through an index buffer holding three
+ *     vertex indices per triangle. Every triangle also carries a packed
+ *     RGB color. Compared to a {@code List<Triangle>}, this avoids an
+ *     object per vertex and lets whole meshes be transformed in one loop.
+ * </p>
+ * The arrays returned by the getters are the backing arrays of the mesh,
+ * modifying them modifies the mesh.
+ */
+public class Mesh {
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    private final int[] indices;
+    private final int[] colors;
+    // triangles drawn from both sides even with back-face culling on
+    private final BitSet twoSided;
+
+    private final int vertexCount;
+    private final int triangleCount;
+
+    /**
+     * Creates a mesh over the given arrays, without copying them.
+     * @param x The x coordinate of each vertex
+     * @param y The y coordinate of each vertex
+     * @param z The z coordinate of each vertex
+     * @param indices Three vertex indices per triangle
+     * @param colors The packed RGB color of each triangle
+     */
+    public Mesh(double[] x, double[] y, double[] z, int[] indices, int[] colors) {
+        this(x, y, z, indices, colors, new BitSet());
+    }
+
+    private Mesh(double[] x, double[] y, double[] z, int[] indices, int[] colors, BitSet twoSided) {
+        if(x.length != y.length || x.length != z.length) throw new IllegalArgumentException("position arrays differ in length");
+        if(indices.length % 3 != 0) throw new IllegalArgumentException("index count " + indices.length + " is not a multiple of 3");
+        if(colors.length != indices.length / 3) throw new IllegalArgumentException("expected " + indices.length / 3 + " colors, got " + colors.length);
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.indices = indices;
+        this.colors = colors;
+        this.twoSided = twoSided;
+        this.vertexCount = x.length;
+        this.triangleCount = colors.length;
+    }
+
+    /**
+     * Packs a list of triangles into a mesh. Vertices that are equal
+     * are stored once and shared between the triangles using them.
+     * @param triangles The triangles to pack
+     * @return A new mesh holding the triangles
+     */
+    public static Mesh fromTriangles(List<Triangle> triangles) {
+        Map<Vertex, Integer> lookup = new HashMap<>();
+        List<Vertex> vertices = new ArrayList<>();
+        int[] indices = new int[triangles.size() * 3];
+        int[] colors = new int[triangles.size()];
+        BitSet twoSided = new BitSet();
+
+        int i = 0;
+        for(Triangle t : triangles) {
+            indices[i * 3] = indexOf(t.getPoint1(), lookup, vertices);
+            indices[i * 3 + 1] = indexOf(t.getPoint2(), lookup, vertices);
+            indices[i * 3 + 2] = indexOf(t.getPoint3(), lookup, vertices);
+            colors[i] = t.getColor().getRGB();
+            twoSided.set(i, t.isTwoSided());
+            i++;
+        }
+
+        double[] x = new double[vertices.size()];
+        double[] y = new double[vertices.size()];
+        double[] z = new double[vertices.size()];
+        for(int v = 0; v < vertices.size(); v++) {
+            Vertex vertex = vertices.get(v);
+            x[v] = vertex.getX();
+            y[v] = vertex.getY();
+            z[v] = vertex.getZ();
+        }
+        return new Mesh(x, y, z, indices, colors, twoSided);
+    }
+
+    private static int indexOf(Vertex vertex, Map<Vertex, Integer> lookup, List<Vertex> vertices) {
+        return lookup.computeIfAbsent(vertex, v -> {
+            vertices.add(v);
+            return vertices.size() - 1;
+        });
+    }
+
+    /**
+     * Unpacks this mesh into a list of triangles.
+     * @return A new list holding one triangle per mesh triangle
+     */
+    public List<Triangle> toTriangles() {
+        List<Triangle> ret = new ArrayList<>(triangleCount);
+        for(int i = 0; i < triangleCount; i++) {
+            Triangle triangle = new Triangle(getVertex(indices[i * 3]),
+                    getVertex(indices[i * 3 + 1]),
+                    getVertex(indices[i * 3 + 2]),
+                    new Color(colors[i]));
+            triangle.setTwoSided(twoSided.get(i));
+            ret.add(triangle);
+        }
+        return ret;
+    }
+
+    public Vertex getVertex(int index) {
+        return Vertex.of(x[index], y[index], z[index]);
+    }
+
+    /**
+     * Transforms every vertex of the mesh by the matrix, then translates
+     * it by {@code (tx, ty, tz)}, and writes the results to the output arrays.
+     * The output arrays have to hold at least {@link #getVertexCount()} elements.
+     */
+    public static void transform(Mesh mesh, Mat3 matrix, double tx, double ty, double tz,
+                                 double[] outX, double[] outY, double[] outZ) {
+        double m00 = matrix.m00, m01 = matrix.m01, m02 = matrix.m02;
+        double m10 = matrix.m10, m11 = matrix.m11, m12 = matrix.m12;
+        double m20 = matrix.m20, m21 = matrix.m21, m22 = matrix.m22;
+        double[] x = mesh.x, y = mesh.y, z = mesh.z;
+        int n = mesh.vertexCount;
+        if(outX.length < n || outY.length < n || outZ.length < n) throw new IllegalArgumentException("output arrays hold less than " + n + " vertices");
+        for(int i = 0; i < n; i++) {
+            double vx = x[i], vy = y[i], vz = z[i];
+            outX[i] = m00 * vx + m01 * vy + m02 * vz + tx;
+            outY[i] = m10 * vx + m11 * vy + m12 * vz + ty;
+            outZ[i] = m20 * vx + m21 * vy + m22 * vz + tz;
+        }
+    }
+
+    /**
+     * Transforms every vertex of the mesh by the matrix, writing the
+     * positions to another mesh of the same vertex count.
+     * @param mesh The mesh to transform
+     * @param matrix The matrix to transform by
+     * @param out The mesh receiving the transformed positions, may be {@code mesh} itself
+     */
+    public static void transform(Mesh mesh, Mat3 matrix, Mesh out) {
+        if(out.vertexCount != mesh.vertexCount) throw new IllegalArgumentException("vertex count mismatch: " + mesh.vertexCount + " vs " + out.vertexCount);
+        transform(mesh, matrix, 0, 0, 0, out.x, out.y, out.z);
+    }
+
+    /**
+     * Creates a mesh sharing the index buffer, colors and two-sided flags of this mesh,
+     * with its own copy of the positions. Useful as the output of
+     * {@link #transform(Mesh, Mat3, Mesh)}.
+     */
+    public Mesh copyPositions() {
+        return new Mesh(x.clone(), y.clone(), z.clone(), indices, colors, twoSided);
+    }
+
+    /**
+     * @return whether the triangle is drawn from both sides, even
+     * when the renderer culls back faces
+     */
+    public boolean isTwoSided(int triangle) {
+        return twoSided.get(triangle);
+    }
+
+    public void setTwoSided(int triangle, boolean twoSided) {
+        if(triangle < 0 || triangle >= triangleCount) throw new IndexOutOfBoundsException("triangle " + triangle + " out of bounds for " + triangleCount);
+        this.twoSided.set(triangle, twoSided);
+    }
+
+    public double[] getPositionsX() {
+        return x;
+    }
+
+    public double[] getPositionsY() {
+        return y;
+    }
+
+    public double[] getPositionsZ() {
+        return z;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int[] getColors() {
+        return colors;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+}
@@ -1,6 +1,7 @@
 package com.spiritlight.rendertest.objects;
 
 import com.spiritlight.rendertest.math.Vertex;
+import com.spiritlight.rendertest.render.Shading;
 
 import java.awt.*;
 
@@ -9,6 +10,7 @@ public class Triangle {
     private Vertex point2;
     private Vertex point3;
     private Color color;
+    private boolean twoSided;
 
     public Triangle(Vertex point1, Vertex point2, Vertex point3, Color color) {
         this.point1 = point1;
@@ -21,22 +23,43 @@ public class Triangle {
         return color;
     }
 
-    private static final float LINEAR_CONSTANT = 2.4F;
+    /**
+     * Shades this triangle's color. This allocates a new color on every call,
+     * anything shading often should use {@link #getShade(int, double)} instead.
+     * @param shade The amount of light, from 0 to 1
+     * @return The shaded color
+     * @see Shading#shade(int, double)
+     */
     public Color getShade(double shade) {
-        double redL = Math.pow(color.getRed(), LINEAR_CONSTANT) * shade;
-        double greenL = Math.pow(color.getGreen(), LINEAR_CONSTANT) * shade;
-        double blueL = Math.pow(color.getBlue(), LINEAR_CONSTANT) * shade;
+        return new Color(Shading.shade(color.getRGB(), shade));
+    }
 
-        int red = (int) Math.pow(redL, 1 / LINEAR_CONSTANT);
-        int green = (int) Math.pow(greenL, 1 / LINEAR_CONSTANT);
-        int blue = (int) Math.pow(blueL, 1 / LINEAR_CONSTANT);
-        return new Color(red, green, blue);
+    /**
+     * Shades a packed RGB color the same way {@link #getShade(double)} does.
+     * @param rgb The color to shade, alpha is ignored
+     * @param shade The amount of light, from 0 to 1
+     * @return The shaded color as packed, opaque ARGB
+     */
+    public static int getShade(int rgb, double shade) {
+        return Shading.shade(rgb, shade);
     }
 
     public void setColor(Color color) {
         this.color = color;
     }
 
+    /**
+     * @return whether this triangle is drawn from both sides, even
+     * when the renderer culls back faces
+     */
+    public boolean isTwoSided() {
+        return twoSided;
+    }
+
+    public void setTwoSided(boolean twoSided) {
+        this.twoSided = twoSided;
+    }
+
     public Vertex getPoint1() {
         return point1;
     }
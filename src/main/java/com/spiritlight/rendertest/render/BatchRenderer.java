@@ -0,0 +1,293 @@
+package com.spiritlight.rendertest.render;
+
+import com.spiritlight.rendertest.io.FrameSink;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Renders sequences of frames offline, without a window, with one frame
+ * per thread at a time.
+ * <p>
+ *     Frames of a sequence don't depend on each other, so rather than
+ *     splitting every frame across cores, each worker renders whole frames
+ *     with a renderer of its own, and throughput grows with the number of
+ *     workers. Finished frames go to a {@link FrameSink}, in order unless
+ *     the sink takes them in any order.
+ * </p>
+ * <p>
+ *     At most a given number of frames are rendered or waiting to be
+ *     written at once, each in a target of its own, which bounds the memory
+ *     used however many frames there are: when a frame takes long, the
+ *     frames after it wait for it rather than piling up.
+ * </p>
+ */
+public class BatchRenderer {
+    private final int width, height;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxInFlight = -1;
+    private double fps = 60;
+    private Supplier<Renderer> renderers = Renderer::new;
+
+    /**
+     * @param width The width of every frame
+     * @param height The height of every frame
+     */
+    public BatchRenderer(int width, int height) {
+        if(width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Sets the number of frames rendered at once, the number of cores by default.
+     * @return the batch renderer itself
+     */
+    public BatchRenderer setThreads(int threads) {
+        if(threads <= 0) throw new IllegalArgumentException("Invalid thread count of " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the most frames rendered or waiting to be written at once,
+     * twice the number of threads by default.
+     * @return the batch renderer itself
+     */
+    public BatchRenderer setMaxInFlight(int maxInFlight) {
+        if(maxInFlight <= 0) throw new IllegalArgumentException("Invalid frames in flight of " + maxInFlight);
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight > 0 ? maxInFlight : threads * 2;
+    }
+
+    /**
+     * Sets the frames per second the sequence is played at, passed on to the sink.
+     * @return the batch renderer itself
+     */
+    public BatchRenderer setFps(double fps) {
+        if(!(fps > 0)) throw new IllegalArgumentException("Invalid frame rate of " + fps);
+        this.fps = fps;
+        return this;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    /**
+     * Sets how the renderer of each worker is made, plain serial renderers by default.
+     * @return the batch renderer itself
+     */
+    public BatchRenderer setRenderers(Supplier<Renderer> renderers) {
+        this.renderers = renderers;
+        return this;
+    }
+
+    /**
+     * Renders a sequence and writes it to a sink, returning once every frame is written.
+     * The sink is begun but not closed.
+     * @param frames The number of frames
+     * @param path Places the camera of every frame
+     * @param scene Draws a frame
+     * @param sink Receives the finished frames
+     * @return the number of frames and the time they took
+     * @throws IOException if the sink failed, no more frames are rendered after that
+     */
+    public Result render(int frames, CameraPath path, Scene scene, FrameSink sink) throws IOException {
+        if(frames < 0) throw new IllegalArgumentException("Invalid frame count of " + frames);
+        long start = System.nanoTime();
+        sink.begin(width, height, fps);
+        Batch batch = new Batch(path, scene, sink);
+        AtomicInteger workers = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "BatchRenderer-" + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for(int i = 0; i < frames && batch.failure.get() == null; i++) {
+                batch.inFlight.acquire();
+                int frame = i;
+                pool.execute(() -> batch.render(frame));
+            }
+            // every permit back means every frame is written
+            batch.inFlight.acquire(batch.permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        Throwable failure = batch.failure.get();
+        if(failure instanceof IOException) throw (IOException) failure;
+        if(failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if(failure instanceof Error) throw (Error) failure;
+        return new Result(batch.written.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * The state of one sequence being rendered.
+     */
+    private final class Batch {
+        private final CameraPath path;
+        private final Scene scene;
+        private final FrameSink sink;
+
+        private final int permits = getMaxInFlight();
+        private final Semaphore inFlight = new Semaphore(permits);
+        private final ThreadLocal<Renderer> renderer = ThreadLocal.withInitial(renderers);
+        private final Queue<RenderTarget> targets = new ConcurrentLinkedQueue<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final AtomicInteger written = new AtomicInteger();
+
+        // frames finished but not written yet, for sinks taking them in order
+        private final Map<Integer, RenderTarget> finished = new ConcurrentHashMap<>();
+        private final ReentrantLock writing = new ReentrantLock();
+        // the next frame to write, guarded by writing
+        private int next;
+
+        Batch(CameraPath path, Scene scene, FrameSink sink) {
+            this.path = path;
+            this.scene = scene;
+            this.sink = sink;
+        }
+
+        void render(int frame) {
+            RenderTarget target = targets.poll();
+            if(target == null) target = new RenderTarget(width, height);
+            // once waiting in finished, whoever drains it hands it back
+            boolean handedOver = false;
+            try {
+                if(failure.get() == null) {
+                    Camera camera = new Camera();
+                    path.place(frame, camera);
+                    scene.render(renderer.get(), camera, target);
+                    if(sink.isConcurrent()) {
+                        sink.write(frame, target);
+                        written.incrementAndGet();
+                    } else {
+                        finished.put(frame, target);
+                        handedOver = true;
+                        drain();
+                    }
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                if(!failure.compareAndSet(null, e)) failure.get().addSuppressed(e);
+                if(!sink.isConcurrent()) {
+                    try {
+                        drain();
+                    } catch (IOException ignored) {
+                        // nothing is written after a failure
+                    }
+                }
+            } finally {
+                if(!handedOver) done(target);
+            }
+        }
+
+        /**
+         * Writes the finished frames that are next in order, unless another
+         * thread already is. After a failure, hands every finished frame back
+         * without writing it.
+         */
+        private void drain() throws IOException {
+            // a frame finished just as another thread stopped writing is
+            // picked up by the check after unlocking
+            while(writing.tryLock()) {
+                try {
+                    if(failure.get() != null) {
+                        for(Integer frame : finished.keySet()) {
+                            RenderTarget target = finished.remove(frame);
+                            if(target != null) done(target);
+                        }
+                    }
+                    RenderTarget target;
+                    while((target = finished.remove(next)) != null) {
+                        int frame = next++;
+                        try {
+                            if(failure.get() == null) {
+                                sink.write(frame, target);
+                                written.incrementAndGet();
+                            }
+                        } finally {
+                            done(target);
+                        }
+                    }
+                } finally {
+                    writing.unlock();
+                }
+                boolean waiting = failure.get() != null ? !finished.isEmpty() : finished.containsKey(next);
+                if(!waiting) return;
+            }
+        }
+
+        private void done(RenderTarget target) {
+            targets.add(target);
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Draws one frame of a sequence, on one of the workers.
+     */
+    @FunctionalInterface
+    public interface Scene {
+        /**
+         * @param renderer The renderer of the worker
+         * @param camera The camera placed for the frame
+         * @param target The target to draw into, holding an earlier frame
+         */
+        void render(Renderer renderer, Camera camera, RenderTarget target);
+    }
+
+    /**
+     * The outcome of rendering a sequence.
+     */
+    public static final class Result {
+        private final int frames;
+        private final long nanos;
+
+        private Result(int frames, long nanos) {
+            this.frames = frames;
+            this.nanos = nanos;
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+
+        /**
+         * @return the time from the first frame started to the last one written
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getFramesPerSecond() {
+            return nanos == 0 ? 0 : frames * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d frames in %.1f s, %.1f fps", frames, nanos / 1e9, getFramesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.spiritlight.rendertest.render;
+
+import com.spiritlight.rendertest.math.Mat3;
+import com.spiritlight.rendertest.math.Matrix;
+import com.spiritlight.rendertest.math.TransformCache;
+
+/**
+ * The viewing state used by a {@link Renderer}. The camera is described
+ * by a yaw (heading) and a pitch, both in degrees, and always looks
+ * towards the center of the render target.
+ */
+public class Camera {
+    private double yaw;
+    private double pitch;
+    private TransformCache cache = TransformCache.getDefault();
+
+    public Camera() {
+        this(0, 0);
+    }
+
+    public Camera(double yaw, double pitch) {
+        this.yaw = yaw;
+        this.pitch = pitch;
+    }
+
+    public double getYaw() {
+        return yaw;
+    }
+
+    public Camera setYaw(double yaw) {
+        this.yaw = yaw;
+        return this;
+    }
+
+    public double getPitch() {
+        return pitch;
+    }
+
+    public Camera setPitch(double pitch) {
+        this.pitch = pitch;
+        return this;
+    }
+
+    /**
+     * Sets the cache rotations for whole-degree angles are taken from.
+     * @param cache The cache, or null to always compute the rotation
+     * @return the camera itself
+     */
+    public Camera setTransformCache(TransformCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    public TransformCache getTransformCache() {
+        return cache;
+    }
+
+    /**
+     * Builds the 3x3 rotation matrix for this camera, that is,
+     * the heading transform multiplied by the pitch transform.
+     * @return A new 3x3 matrix rotating model space into view space
+     */
+    public Matrix getTransform() {
+        double heading = Math.toRadians(yaw);
+        Matrix headingTransform = Matrix.builder(3, 3)
+                .putRow(Math.cos(heading), 0, -Math.sin(heading))
+                .putRow(0, 1, 0)
+                .putRow(Math.sin(heading), 0, Math.cos(heading))
+                .build();
+
+        double pitch = Math.toRadians(this.pitch);
+        Matrix pitchTransform = Matrix.builder(3, 3)
+                .putRow(1, 0, 0)
+                .putRow(0, Math.cos(pitch), Math.sin(pitch))
+                .putRow(0, -Math.sin(pitch), Math.cos(pitch))
+                .build();
+
+        return headingTransform.multiply(pitchTransform);
+    }
+
+    private static boolean cached(double degrees) {
+        return degrees == (int) degrees && TransformCache.isExact((int) degrees);
+    }
+
+    // scratch for the pitch half of the transform, so filling one in doesn't allocate
+    private final Mat3 pitchScratch = new Mat3();
+
+    /**
+     * Writes the same transform as {@link #getTransform()} into the
+     * given matrix, without allocating. Whole-degree angles from -360 to
+     * 359 degrees are looked up in the transform cache, if any.
+     * @param out The matrix to write to
+     * @return the output matrix
+     */
+    public Mat3 getTransform(Mat3 out) {
+        if(cache != null && cached(yaw) && cached(pitch)) {
+            return cache.getRotation((int) yaw, (int) pitch, out);
+        }
+        pitchScratch.setPitch(Math.toRadians(pitch));
+        return Mat3.multiply(out.setHeading(Math.toRadians(yaw)), pitchScratch, out);
+    }
+}
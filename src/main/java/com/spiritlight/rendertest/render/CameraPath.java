@@ -0,0 +1,44 @@
+package com.spiritlight.rendertest.render;
+
+import com.spiritlight.rendertest.utils.PingPong;
+
+/**
+ * Places the camera for every frame of a sequence. Frames are placed
+ * independently of each other, in any order and from any thread, so
+ * a path must not depend on the frames placed before.
+ */
+@FunctionalInterface
+public interface CameraPath {
+    /**
+     * @param frame The frame, from 0
+     * @param camera The camera to place, a fresh one per frame
+     */
+    void place(int frame, Camera camera);
+
+    /**
+     * The sweep {@link com.spiritlight.rendertest.objects.ExampleFrame} animates:
+     * yaw bouncing between 0 and 360 degrees at 120 degrees a second, and pitch
+     * between -90 and 90 at 40 degrees a second, both from 0 and in whole degrees.
+     * @param fps The frames per second the sequence is played at
+     * @return the path
+     */
+    static CameraPath sweep(double fps) {
+        if(!(fps > 0)) throw new IllegalArgumentException("Invalid frame rate of " + fps);
+        return (frame, camera) -> {
+            double seconds = frame / fps;
+            camera.setYaw(Math.round(PingPong.valueAt(0, 0, 360, 120, seconds)))
+                    .setPitch(Math.round(PingPong.valueAt(0, -90, 90, 40, seconds)));
+        };
+    }
+
+    /**
+     * A full turn of yaw over the given number of frames, at a fixed pitch.
+     * @param frames The frames of one turn
+     * @param pitch The pitch, in degrees
+     * @return the path
+     */
+    static CameraPath turntable(int frames, double pitch) {
+        if(frames <= 0) throw new IllegalArgumentException("Invalid frame count of " + frames);
+        return (frame, camera) -> camera.setYaw(360d * (frame % frames) / frames).setPitch(pitch);
+    }
+}
@@ -0,0 +1,17 @@
+package com.spiritlight.rendertest.render;
+
+/**
+ * How a {@link RenderTarget} stores depth.
+ */
+public enum DepthFormat {
+    /**
+     * A {@code double} per pixel, the same precision the depth is computed in
+     */
+    DOUBLE,
+    /**
+     * A {@code float} per pixel, half the memory and bandwidth of {@link #DOUBLE}.
+     * Depth is rounded when stored, so surfaces very close to each other may
+     * fight over pixels.
+     */
+    FLOAT
+}
@@ -0,0 +1,175 @@
+package com.spiritlight.rendertest.render;
+
+import java.util.Arrays;
+
+/**
+ * A two level hierarchy over the depth buffer of a {@link RenderTarget},
+ * keeping the farthest depth of every {@value #BLOCK_SIZE}x{@value #BLOCK_SIZE}
+ * block and of every group of {@value #GROUP_SIZE}x{@value #GROUP_SIZE} blocks.
+ * A triangle can't pass the depth test anywhere in a block whose farthest
+ * depth is at least as close as the triangle itself, so the rasterizer skips
+ * such blocks, or the whole triangle, without touching their pixels.
+ * <p>
+ *     The stored values are lower bounds rather than exact minimums: depth
+ *     only ever moves closer between two clears, so a minimum taken at any
+ *     earlier point stays a valid bound. Blocks are marked dirty when written
+ *     and only recomputed when next asked for. This also makes it safe to use
+ *     from several tiles at once, as a racing update can only ever leave a
+ *     bound lower than it could be.
+ * </p>
+ */
+final class DepthPyramid {
+    static final int BLOCK_BITS = 3;
+    static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    static final int GROUP_BITS = 3;
+    static final int GROUP_SIZE = 1 << GROUP_BITS;
+
+    private final RenderTarget target;
+
+    private int blocksX, blocksY;
+    private int groupsX, groupsY;
+
+    private double[] blockMin = new double[0];
+    private boolean[] blockDirty = new boolean[0];
+    private double[] groupMin = new double[0];
+    private boolean[] groupDirty = new boolean[0];
+
+    DepthPyramid(RenderTarget target) {
+        this.target = target;
+        resize();
+    }
+
+    /**
+     * Adapts to the current size of the target, and forgets everything known
+     * about its depth.
+     */
+    void resize() {
+        blocksX = (target.getWidth() + BLOCK_SIZE - 1) >> BLOCK_BITS;
+        blocksY = (target.getHeight() + BLOCK_SIZE - 1) >> BLOCK_BITS;
+        groupsX = (blocksX + GROUP_SIZE - 1) >> GROUP_BITS;
+        groupsY = (blocksY + GROUP_SIZE - 1) >> GROUP_BITS;
+        if(blockMin.length < blocksX * blocksY) {
+            blockMin = new double[blocksX * blocksY];
+            blockDirty = new boolean[blocksX * blocksY];
+        }
+        if(groupMin.length < groupsX * groupsY) {
+            groupMin = new double[groupsX * groupsY];
+            groupDirty = new boolean[groupsX * groupsY];
+        }
+        invalidate();
+    }
+
+    /**
+     * Marks everything dirty, for when the depth buffer was changed from outside.
+     */
+    void invalidate() {
+        Arrays.fill(blockDirty, 0, blocksX * blocksY, true);
+        Arrays.fill(groupDirty, 0, groupsX * groupsY, true);
+    }
+
+    /**
+     * Resets all bounds to the given depth, which the whole buffer was just cleared to.
+     */
+    void clear(double depth) {
+        Arrays.fill(blockMin, 0, blocksX * blocksY, depth);
+        Arrays.fill(blockDirty, 0, blocksX * blocksY, false);
+        Arrays.fill(groupMin, 0, groupsX * groupsY, depth);
+        Arrays.fill(groupDirty, 0, groupsX * groupsY, false);
+    }
+
+    /**
+     * Marks a row of blocks as written.
+     * @param fromX The first block column, inclusive
+     * @param toX The last block column, inclusive
+     * @param y The block row
+     */
+    void written(int fromX, int toX, int y) {
+        int row = y * blocksX;
+        for(int x = fromX; x <= toX; x++) {
+            blockDirty[row + x] = true;
+        }
+        int groupRow = (y >> GROUP_BITS) * groupsX;
+        for(int g = fromX >> GROUP_BITS, end = toX >> GROUP_BITS; g <= end; g++) {
+            groupDirty[groupRow + g] = true;
+        }
+    }
+
+    /**
+     * Gets the stored bound of a block as it is, even if the block is dirty.
+     */
+    double bound(int x, int y) {
+        return blockMin[y * blocksX + x];
+    }
+
+    /**
+     * Recomputes the dirty blocks in a row of blocks.
+     * @param fromX The first block column, inclusive
+     * @param toX The last block column, inclusive
+     * @param y The block row
+     */
+    void refresh(int fromX, int toX, int y) {
+        int row = y * blocksX;
+        for(int x = fromX; x <= toX; x++) {
+            if(blockDirty[row + x]) recompute(x, y);
+        }
+    }
+
+    /**
+     * Checks whether nothing in the given pixel rectangle is farther than the
+     * given depth, on the coarse level only.
+     */
+    boolean occluded(int minX, int minY, int maxX, int maxY, double depth) {
+        int fromX = minX >> (BLOCK_BITS + GROUP_BITS), toX = maxX >> (BLOCK_BITS + GROUP_BITS);
+        int fromY = minY >> (BLOCK_BITS + GROUP_BITS), toY = maxY >> (BLOCK_BITS + GROUP_BITS);
+        for(int y = fromY; y <= toY; y++) {
+            for(int x = fromX; x <= toX; x++) {
+                int group = y * groupsX + x;
+                if(groupDirty[group]) recomputeGroup(x, y);
+                if(!(groupMin[group] >= depth)) return false;
+            }
+        }
+        return true;
+    }
+
+    private void recomputeGroup(int groupX, int groupY) {
+        int group = groupY * groupsX + groupX;
+        // cleared first, a block written meanwhile marks it dirty again
+        groupDirty[group] = false;
+        int fromX = groupX << GROUP_BITS, toX = Math.min(blocksX, fromX + GROUP_SIZE) - 1;
+        int fromY = groupY << GROUP_BITS, toY = Math.min(blocksY, fromY + GROUP_SIZE) - 1;
+        double min = Double.POSITIVE_INFINITY;
+        for(int y = fromY; y <= toY; y++) {
+            refresh(fromX, toX, y);
+            for(int x = fromX; x <= toX; x++) {
+                min = Math.min(min, blockMin[y * blocksX + x]);
+            }
+        }
+        groupMin[group] = min;
+    }
+
+    private void recompute(int blockX, int blockY) {
+        int block = blockY * blocksX + blockX;
+        blockDirty[block] = false;
+        int width = target.getWidth();
+        int fromX = blockX << BLOCK_BITS, toX = Math.min(width, fromX + BLOCK_SIZE);
+        int fromY = blockY << BLOCK_BITS, toY = Math.min(target.getHeight(), fromY + BLOCK_SIZE);
+
+        double min = Double.POSITIVE_INFINITY;
+        double[] depth = target.getDepth();
+        if(depth != null) {
+            for(int y = fromY; y < toY; y++) {
+                for(int i = y * width + fromX, end = y * width + toX; i < end; i++) {
+                    min = Math.min(min, depth[i]);
+                }
+            }
+        } else {
+            float[] floatDepth = target.getFloatDepth();
+            for(int y = fromY; y < toY; y++) {
+                for(int i = y * width + fromX, end = y * width + toX; i < end; i++) {
+                    min = Math.min(min, floatDepth[i]);
+                }
+            }
+        }
+        blockMin[block] = min;
+    }
+}
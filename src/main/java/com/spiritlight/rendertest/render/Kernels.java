@@ -0,0 +1,142 @@
+package com.spiritlight.rendertest.render;
+
+import com.spiritlight.rendertest.math.Mat3;
+import com.spiritlight.rendertest.objects.Mesh;
+
+/**
+ * The innermost loops of the renderer, that is, the batch vertex transform
+ * and the filling of one row of a triangle.
+ * <p>
+ *     There are two implementations: a plain scalar one, and one running on
+ *     the {@code jdk.incubator.vector} API which is only used if that module
+ *     was resolved at startup (with {@code --add-modules jdk.incubator.vector}).
+ *     Both produce bit-identical output.
+ * </p>
+ */
+interface Kernels {
+
+    /**
+     * Transforms and translates all vertices of the mesh into the output arrays.
+     * @see Mesh#transform(Mesh, Mat3, double, double, double, double[], double[], double[])
+     */
+    void transform(Mesh mesh, Mat3 matrix, double tx, double ty, double tz,
+                   double[] outX, double[] outY, double[] outZ);
+
+    /**
+     * Fills one row of a triangle.
+     * @param color The color buffer
+     * @param depth The depth buffer
+     * @param index The buffer index of the first pixel of the span
+     * @param x The x coordinate of the first pixel of the span
+     * @param count The amount of pixels in the span
+     * @param w1 The first edge function at the first pixel
+     * @param w2 The second edge function at the first pixel
+     * @param w3 The third edge function at the first pixel
+     * @param step1 The step of the first edge function per pixel
+     * @param step2 The step of the second edge function per pixel
+     * @param step3 The step of the third edge function per pixel
+     * @param zRow The depth at x = 0 on this row
+     * @param dzdx The depth step per pixel
+     * @param rgb The color to fill with
+     * @return The number of pixels written
+     */
+    int fillSpan(int[] color, double[] depth, int index, int x, int count,
+                 long w1, long w2, long w3, long step1, long step2, long step3,
+                 double zRow, double dzdx, int rgb);
+
+    /**
+     * Fills one row of a triangle into a float depth buffer. Depth is computed
+     * in double precision as usual, and rounded only to be compared and stored.
+     * @see #fillSpan(int[], double[], int, int, int, long, long, long, long, long, long, double, double, int)
+     */
+    int fillSpan(int[] color, float[] depth, int index, int x, int count,
+                 long w1, long w2, long w3, long step1, long step2, long step3,
+                 double zRow, double dzdx, int rgb);
+
+    static Kernels scalar() {
+        return ScalarKernels.INSTANCE;
+    }
+
+    /**
+     * Gets the vector kernels, or null if the vector API is not available.
+     */
+    static Kernels vector() {
+        return VectorHolder.INSTANCE;
+    }
+
+    /**
+     * Gets the fastest kernels available.
+     */
+    static Kernels preferred() {
+        Kernels vector = vector();
+        return vector == null ? scalar() : vector;
+    }
+
+    final class ScalarKernels implements Kernels {
+        private static final Kernels INSTANCE = new ScalarKernels();
+
+        private ScalarKernels() {}
+
+        @Override
+        public void transform(Mesh mesh, Mat3 matrix, double tx, double ty, double tz,
+                              double[] outX, double[] outY, double[] outZ) {
+            Mesh.transform(mesh, matrix, tx, ty, tz, outX, outY, outZ);
+        }
+
+        @Override
+        public int fillSpan(int[] color, double[] depth, int index, int x, int count,
+                            long w1, long w2, long w3, long step1, long step2, long step3,
+                            double zRow, double dzdx, int rgb) {
+            int written = 0;
+            for(int end = x + count; x < end; x++, index++) {
+                double z = zRow + x * dzdx;
+                if((w1 | w2 | w3) >= 0 && depth[index] < z) {
+                    color[index] = rgb;
+                    depth[index] = z;
+                    written++;
+                }
+                w1 += step1;
+                w2 += step2;
+                w3 += step3;
+            }
+            return written;
+        }
+
+        @Override
+        public int fillSpan(int[] color, float[] depth, int index, int x, int count,
+                            long w1, long w2, long w3, long step1, long step2, long step3,
+                            double zRow, double dzdx, int rgb) {
+            int written = 0;
+            for(int end = x + count; x < end; x++, index++) {
+                float z = (float) (zRow + x * dzdx);
+                if((w1 | w2 | w3) >= 0 && depth[index] < z) {
+                    color[index] = rgb;
+                    depth[index] = z;
+                    written++;
+                }
+                w1 += step1;
+                w2 += step2;
+                w3 += step3;
+            }
+            return written;
+        }
+    }
+
+    // lazily looked up, so the vector classes are never touched unless needed
+    final class VectorHolder {
+        private static final Kernels INSTANCE = load();
+
+        private VectorHolder() {}
+
+        private static Kernels load() {
+            if(ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+            try {
+                return (Kernels) Class.forName("com.spiritlight.rendertest.render.VectorKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+                // the module is there, but not usable on this platform
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.spiritlight.rendertest.render;
+
+/**
+ * An immutable summary of the most recent samples of a metric, as
+ * reported by {@link RenderMetrics}. Timings are in nanoseconds.
+ * <p>
+ *     The getters double as the attributes shown over JMX.
+ * </p>
+ */
+public final class Percentiles {
+    static final Percentiles EMPTY = new Percentiles(0, 0, 0, 0, 0, 0);
+
+    private final long count;
+    private final double mean;
+    private final long p50, p95, p99, max;
+
+    Percentiles(long count, double mean, long p50, long p95, long p99, long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    /**
+     * @return the number of samples recorded in total, not only
+     * the ones the percentiles were taken over
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP95() {
+        return p95;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "p50=" + p50 + " p95=" + p95 + " p99=" + p99 + " max=" + max;
+    }
+}
@@ -0,0 +1,282 @@
+package com.spiritlight.rendertest.render;
+
+/**
+ * An incremental edge-function triangle rasterizer.
+ * <p>
+ *     Vertex positions are snapped to a fixed-point grid with
+ *     {@link #SUB_PIXEL_BITS} bits of sub-pixel precision, and the three
+ *     edge equations are set up once per triangle. Walking the bounding box
+ *     then only takes integer additions, as the edge functions are stepped
+ *     from pixel to pixel instead of being re-evaluated. Depth comes from
+ *     the triangle's depth plane, which makes it independent of where the
+ *     walk started.
+ * </p>
+ * <p>
+ *     When the {@code jdk.incubator.vector} module is available, each row is
+ *     filled several pixels at a time, see {@link Renderer#isSimdAvailable()}.
+ * </p>
+ * <p>
+ *     Before any pixel is touched, the triangle is tested against the depth
+ *     hierarchy of the target, skipping whole triangles or blocks of pixels
+ *     that are already covered by something closer, see {@link DepthPyramid}.
+ * </p>
+ * <p>
+ *     Pixels are sampled at integer coordinates. A pixel lying exactly on an
+ *     edge is only covered if that edge is a top or a left edge, so two
+ *     triangles sharing an edge never draw the same pixel twice and never
+ *     leave a gap in between.
+ * </p>
+ */
+public class Rasterizer {
+    public static final int SUB_PIXEL_BITS = 8;
+    private static final double SUB_PIXEL_SCALE = 1 << SUB_PIXEL_BITS;
+
+    // anything beyond this could overflow the edge equations, and is far
+    // outside any sensible render target anyway
+    private static final double GUARD_BAND = 1 << 20;
+
+    // relative error allowed for when bounding the depth plane,
+    // far more than the few roundings it takes to evaluate it
+    private static final double DEPTH_SLACK = 0x1p-40;
+
+    private final Kernels kernels;
+    private final boolean hierarchical;
+
+    /**
+     * Creates a rasterizer using the vector API if it is available,
+     * and the depth hierarchy of the target.
+     */
+    public Rasterizer() {
+        this(Kernels.preferred(), true);
+    }
+
+    Rasterizer(Kernels kernels, boolean hierarchical) {
+        this.kernels = kernels;
+        this.hierarchical = hierarchical;
+    }
+
+    /**
+     * Fills a triangle into the whole target.
+     * @see #fill(RenderTarget, double, double, double, double, double, double, double, double, double, int, int, int, int, int)
+     */
+    public int fill(RenderTarget target,
+                    double x1, double y1, double z1,
+                    double x2, double y2, double z2,
+                    double x3, double y3, double z3,
+                    int rgb) {
+        return fill(target, x1, y1, z1, x2, y2, z2, x3, y3, z3, rgb,
+                0, 0, target.getWidth() - 1, target.getHeight() - 1);
+    }
+
+    /**
+     * Fills a triangle into the target, depth testing every pixel against
+     * the depth of the target. Only pixels inside the given clip rectangle
+     * (inclusive on all sides) are touched.
+     * <p>
+     *     The triangle may be supplied in either winding order.
+     * </p>
+     * @param target The target to render to
+     * @param rgb The ARGB color to fill the triangle with
+     * @param clipMinX The smallest x coordinate that may be written
+     * @param clipMinY The smallest y coordinate that may be written
+     * @param clipMaxX The largest x coordinate that may be written
+     * @param clipMaxY The largest y coordinate that may be written
+     * @return The number of pixels written
+     */
+    public int fill(RenderTarget target,
+                    double x1, double y1, double z1,
+                    double x2, double y2, double z2,
+                    double x3, double y3, double z3,
+                    int rgb,
+                    int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        if(!inGuardBand(x1, y1) || !inGuardBand(x2, y2) || !inGuardBand(x3, y3)) return 0;
+
+        // snap to the sub-pixel grid
+        long fx1 = snap(x1), fy1 = snap(y1);
+        long fx2 = snap(x2), fy2 = snap(y2);
+        long fx3 = snap(x3), fy3 = snap(y3);
+
+        long area = (fx2 - fx1) * (fy3 - fy1) - (fy2 - fy1) * (fx3 - fx1);
+        if(area == 0) return 0;
+        if(area < 0) {
+            // flip the winding so all edge functions are positive inside
+            long tx = fx2, ty = fy2;
+            fx2 = fx3; fy2 = fy3;
+            fx3 = tx; fy3 = ty;
+            double tz = z2;
+            z2 = z3;
+            z3 = tz;
+            area = -area;
+        }
+
+        int minX = Math.max(clipMinX, ceilPixel(Math.min(fx1, Math.min(fx2, fx3))));
+        int maxX = Math.min(clipMaxX, floorPixel(Math.max(fx1, Math.max(fx2, fx3))));
+        int minY = Math.max(clipMinY, ceilPixel(Math.min(fy1, Math.min(fy2, fy3))));
+        int maxY = Math.min(clipMaxY, floorPixel(Math.max(fy1, Math.max(fy2, fy3))));
+        if(minX > maxX || minY > maxY) return 0;
+
+        // edge equations E(x, y) = a * x + b * y + c, one per edge,
+        // each being zero on the edge and positive on the inner side
+        long a23 = fy2 - fy3, b23 = fx3 - fx2;
+        long a31 = fy3 - fy1, b31 = fx1 - fx3;
+        long a12 = fy1 - fy2, b12 = fx2 - fx1;
+
+        // starting values at the top-left corner of the bounding box, with the
+        // bias folded in so that pixels on non top-left edges test negative
+        long px = (long) minX << SUB_PIXEL_BITS;
+        long py = (long) minY << SUB_PIXEL_BITS;
+        long row1 = a23 * (px - fx2) + b23 * (py - fy2) - bias(a23, b23);
+        long row2 = a31 * (px - fx3) + b31 * (py - fy3) - bias(a31, b31);
+        long row3 = a12 * (px - fx1) + b12 * (py - fy1) - bias(a12, b12);
+
+        // per pixel steps
+        long stepX1 = a23 << SUB_PIXEL_BITS, stepY1 = b23 << SUB_PIXEL_BITS;
+        long stepX2 = a31 << SUB_PIXEL_BITS, stepY2 = b31 << SUB_PIXEL_BITS;
+        long stepX3 = a12 << SUB_PIXEL_BITS, stepY3 = b12 << SUB_PIXEL_BITS;
+
+        // depth is linear in screen space
+        double invArea = 1.0 / area;
+        double gradX = (a23 * z1 + a31 * z2 + a12 * z3) * invArea;
+        double gradY = (b23 * z1 + b31 * z2 + b12 * z3) * invArea;
+        double dzdx = gradX * SUB_PIXEL_SCALE;
+        double dzdy = gradY * SUB_PIXEL_SCALE;
+        // depth at pixel (0, 0); anchoring on it rather than on the clip
+        // rectangle keeps the depth of a pixel the same however it is clipped
+        double zOrigin = z1 - fx1 * gradX - fy1 * gradY;
+
+        DepthPyramid pyramid = hierarchical ? target.getDepthPyramid() : null;
+        if(pyramid != null) {
+            // the depth plane is evaluated with a little rounding error,
+            // which the bounds have to allow for
+            double slack = (Math.abs(zOrigin) + Math.abs(dzdx) * Math.max(Math.abs(minX), Math.abs(maxX))
+                    + Math.abs(dzdy) * Math.max(Math.abs(minY), Math.abs(maxY))) * DEPTH_SLACK;
+            double zMax = Math.max(z1, Math.max(z2, z3)) + slack;
+            if(pyramid.occluded(minX, minY, maxX, maxY, zMax)) return 0;
+            return fillBlocks(target, pyramid, minX, minY, maxX, maxY,
+                    row1, row2, row3, stepX1, stepX2, stepX3, stepY1, stepY2, stepY3,
+                    zOrigin, dzdx, dzdy, zMax, slack, rgb);
+        }
+
+        int count = maxX - minX + 1;
+        int written = 0;
+        for(int y = minY; y <= maxY; y++) {
+            written += span(target, y * target.getWidth() + minX, minX, count,
+                    row1, row2, row3, stepX1, stepX2, stepX3,
+                    zOrigin + y * dzdy, dzdx, rgb);
+            row1 += stepY1;
+            row2 += stepY2;
+            row3 += stepY3;
+        }
+        return written;
+    }
+
+    /**
+     * Walks the bounding box one row of depth blocks at a time, only filling
+     * the runs of blocks the triangle may be visible in.
+     */
+    private int fillBlocks(RenderTarget target, DepthPyramid pyramid,
+                           int minX, int minY, int maxX, int maxY,
+                           long row1, long row2, long row3,
+                           long stepX1, long stepX2, long stepX3,
+                           long stepY1, long stepY2, long stepY3,
+                           double zOrigin, double dzdx, double dzdy, double zMax, double slack, int rgb) {
+        int width = target.getWidth();
+        int fromBlock = minX >> DepthPyramid.BLOCK_BITS, toBlock = maxX >> DepthPyramid.BLOCK_BITS;
+        int written = 0;
+        for(int blockY = minY >> DepthPyramid.BLOCK_BITS; (blockY << DepthPyramid.BLOCK_BITS) <= maxY; blockY++) {
+            int fromY = Math.max(minY, blockY << DepthPyramid.BLOCK_BITS);
+            int toY = Math.min(maxY, (blockY << DepthPyramid.BLOCK_BITS) + DepthPyramid.BLOCK_SIZE - 1);
+            pyramid.refresh(fromBlock, toBlock, blockY);
+
+            // the closest the plane gets along this band, on the relevant edge
+            double bandMax = zOrigin + Math.max(fromY * dzdy, toY * dzdy) + slack;
+
+            int blockX = fromBlock;
+            while(blockX <= toBlock) {
+                // skip hidden blocks, then take every visible one after it
+                while(blockX <= toBlock && hidden(pyramid, blockX, blockY, zMax, bandMax, dzdx)) blockX++;
+                if(blockX > toBlock) break;
+                int runStart = blockX;
+                while(blockX <= toBlock && !hidden(pyramid, blockX, blockY, zMax, bandMax, dzdx)) blockX++;
+                int runEnd = blockX - 1;
+
+                int fromX = Math.max(minX, runStart << DepthPyramid.BLOCK_BITS);
+                int toX = Math.min(maxX, (runEnd << DepthPyramid.BLOCK_BITS) + DepthPyramid.BLOCK_SIZE - 1);
+                int count = toX - fromX + 1;
+                long offset = fromX - minX, rows = fromY - minY;
+                long w1 = row1 + rows * stepY1 + offset * stepX1;
+                long w2 = row2 + rows * stepY2 + offset * stepX2;
+                long w3 = row3 + rows * stepY3 + offset * stepX3;
+
+                int runWritten = 0;
+                for(int y = fromY; y <= toY; y++) {
+                    runWritten += span(target, y * width + fromX, fromX, count,
+                            w1, w2, w3, stepX1, stepX2, stepX3,
+                            zOrigin + y * dzdy, dzdx, rgb);
+                    w1 += stepY1;
+                    w2 += stepY2;
+                    w3 += stepY3;
+                }
+                if(runWritten > 0) pyramid.written(runStart, runEnd, blockY);
+                written += runWritten;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Checks whether the farthest depth in a block is at least as close as
+     * the closest the triangle gets within it.
+     */
+    private static boolean hidden(DepthPyramid pyramid, int blockX, int blockY,
+                                  double zMax, double bandMax, double dzdx) {
+        int fromX = blockX << DepthPyramid.BLOCK_BITS;
+        int toX = fromX + DepthPyramid.BLOCK_SIZE - 1;
+        double blockMax = Math.min(zMax, bandMax + Math.max(fromX * dzdx, toX * dzdx));
+        return pyramid.bound(blockX, blockY) >= blockMax;
+    }
+
+    private int span(RenderTarget target, int index, int x, int count,
+                     long w1, long w2, long w3, long step1, long step2, long step3,
+                     double zRow, double dzdx, int rgb) {
+        double[] depth = target.getDepth();
+        if(depth != null) {
+            return kernels.fillSpan(target.getColor(), depth, index, x, count,
+                    w1, w2, w3, step1, step2, step3, zRow, dzdx, rgb);
+        }
+        return kernels.fillSpan(target.getColor(), target.getFloatDepth(), index, x, count,
+                w1, w2, w3, step1, step2, step3, zRow, dzdx, rgb);
+    }
+
+    /**
+     * Gets the fill rule bias of an edge. Top edges (horizontal, with the
+     * inside below) and left edges (inside to the right) own the pixels lying
+     * exactly on them, every other edge excludes them.
+     */
+    private static long bias(long a, long b) {
+        boolean topLeft = a > 0 || (a == 0 && b > 0);
+        return topLeft ? 0 : 1;
+    }
+
+    /**
+     * Snaps a screen coordinate to the sub-pixel grid. Together with
+     * {@link #ceilPixel(long)} and {@link #floorPixel(long)}, this is what
+     * anything predicting the pixels of a triangle has to use to agree with
+     * the rasterizer, such as the tile bins.
+     */
+    static long snap(double coordinate) {
+        return Math.round(coordinate * SUB_PIXEL_SCALE);
+    }
+
+    static int ceilPixel(long fixed) {
+        return (int) -((-fixed) >> SUB_PIXEL_BITS);
+    }
+
+    static int floorPixel(long fixed) {
+        return (int) (fixed >> SUB_PIXEL_BITS);
+    }
+
+    static boolean inGuardBand(double x, double y) {
+        return Math.abs(x) < GUARD_BAND && Math.abs(y) < GUARD_BAND;
+    }
+}
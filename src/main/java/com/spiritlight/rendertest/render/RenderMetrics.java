@@ -0,0 +1,341 @@
+package com.spiritlight.rendertest.render;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Per-stage frame timings, collected by a {@link Renderer} once set through
+ * {@link Renderer#setMetrics(RenderMetrics)}.
+ * <p>
+ *     Every metric keeps the most recent samples in a fixed ring buffer, so
+ *     recording a sample never allocates and the metrics can be left enabled
+ *     under load. Percentiles are only computed when they are asked for,
+ *     either over JMX after {@link #register()}, or by the periodic log line
+ *     started with {@link #startLogging(long, TimeUnit)}.
+ * </p>
+ * A frame counts as dropped when the renderer took longer than the frame
+ * budget, which is 1/60th of a second by default.
+ */
+public class RenderMetrics implements RenderMetricsMXBean {
+    private static final Logger LOGGER = Logger.getLogger(RenderMetrics.class.getName());
+
+    public static final int DEFAULT_WINDOW = 1024;
+    public static final long DEFAULT_FRAME_BUDGET = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    private final Window[] stages = new Window[RenderStage.values().length];
+    private final Window frames;
+    private final Window triangles;
+    private final Window pixels;
+
+    private volatile long frameBudget = DEFAULT_FRAME_BUDGET;
+    private volatile long dropped;
+    private volatile long culledBackFacing, culledViewport, culledDepth;
+
+    private ObjectName name;
+    private ScheduledExecutorService logger;
+
+    public RenderMetrics() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * Creates metrics that keep the given number of samples per stage.
+     * @param window The number of most recent samples percentiles are taken over
+     */
+    public RenderMetrics(int window) {
+        if(window <= 0) throw new IllegalArgumentException("Invalid window of " + window);
+        for(int i = 0; i < stages.length; i++) {
+            stages[i] = new Window(window);
+        }
+        this.frames = new Window(window);
+        this.triangles = new Window(window);
+        this.pixels = new Window(window);
+    }
+
+    /**
+     * Records the time spent in a stage.
+     * @param stage The stage
+     * @param nanos The time spent, in nanoseconds
+     */
+    public void record(RenderStage stage, long nanos) {
+        stages[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     * Records a finished frame.
+     * @param triangles The number of triangles submitted
+     * @param pixels The number of pixels written
+     * @param nanos The time the whole frame took, in nanoseconds
+     */
+    public void frame(int triangles, long pixels, long nanos) {
+        this.frames.add(nanos);
+        this.triangles.add(triangles);
+        this.pixels.add(pixels);
+        if(nanos > frameBudget) {
+            synchronized (this) {
+                dropped++;
+            }
+        }
+    }
+
+    /**
+     * Records the triangles culled in a frame, by reason.
+     */
+    public synchronized void culled(int backFacing, int viewport, int depth) {
+        culledBackFacing += backFacing;
+        culledViewport += viewport;
+        culledDepth += depth;
+    }
+
+    public Percentiles getStage(RenderStage stage) {
+        return stages[stage.ordinal()].snapshot();
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frames.count();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return dropped;
+    }
+
+    @Override
+    public long getCulledBackFacing() {
+        return culledBackFacing;
+    }
+
+    @Override
+    public long getCulledViewport() {
+        return culledViewport;
+    }
+
+    @Override
+    public long getCulledDepth() {
+        return culledDepth;
+    }
+
+    @Override
+    public long getFrameBudgetNanos() {
+        return frameBudget;
+    }
+
+    @Override
+    public void setFrameBudgetNanos(long nanos) {
+        if(nanos <= 0) throw new IllegalArgumentException("Invalid frame budget of " + nanos);
+        this.frameBudget = nanos;
+    }
+
+    @Override
+    public Percentiles getFrameTime() {
+        return frames.snapshot();
+    }
+
+    @Override
+    public Percentiles getClearTime() {
+        return getStage(RenderStage.CLEAR);
+    }
+
+    @Override
+    public Percentiles getTransformTime() {
+        return getStage(RenderStage.TRANSFORM);
+    }
+
+    @Override
+    public Percentiles getSetupTime() {
+        return getStage(RenderStage.SETUP);
+    }
+
+    @Override
+    public Percentiles getShadeTime() {
+        return getStage(RenderStage.SHADE);
+    }
+
+    @Override
+    public Percentiles getRasterizeTime() {
+        return getStage(RenderStage.RASTERIZE);
+    }
+
+    @Override
+    public Percentiles getUpscaleTime() {
+        return getStage(RenderStage.UPSCALE);
+    }
+
+    @Override
+    public Percentiles getBlitTime() {
+        return getStage(RenderStage.BLIT);
+    }
+
+    @Override
+    public Percentiles getTrianglesPerFrame() {
+        return triangles.snapshot();
+    }
+
+    @Override
+    public Percentiles getPixelsPerFrame() {
+        return pixels.snapshot();
+    }
+
+    @Override
+    public void reset() {
+        for(Window stage : stages) {
+            stage.reset();
+        }
+        frames.reset();
+        triangles.reset();
+        pixels.reset();
+        synchronized (this) {
+            dropped = 0;
+            culledBackFacing = culledViewport = culledDepth = 0;
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, under
+     * {@code com.spiritlight.rendertest:type=RenderMetrics,name=<name>}.
+     * @param name The name to tell several renderers apart
+     * @throws IllegalStateException if these metrics are already registered,
+     * or the name is taken
+     */
+    public synchronized void register(String name) {
+        if(this.name != null) throw new IllegalStateException("Already registered as " + this.name);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName("com.spiritlight.rendertest:type=RenderMetrics,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+            this.name = objectName;
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("Metrics named " + name + " are already registered", e);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Cannot register metrics as " + name, e);
+        }
+    }
+
+    public void register() {
+        register("default");
+    }
+
+    public synchronized void unregister() {
+        if(name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (InstanceNotFoundException ignored) {
+            // someone else got to it first
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+        name = null;
+    }
+
+    /**
+     * Starts logging a summary line every period, on a daemon thread.
+     * Does nothing if logging was already started.
+     * @param period The time between two lines
+     * @param unit The unit of the period
+     */
+    public synchronized void startLogging(long period, TimeUnit unit) {
+        if(logger != null) return;
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "RenderMetrics-logger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.scheduleAtFixedRate(() -> LOGGER.log(Level.INFO, this::summary), period, period, unit);
+    }
+
+    public synchronized void stopLogging() {
+        if(logger == null) return;
+        logger.shutdownNow();
+        logger = null;
+    }
+
+    /**
+     * @return a single line summarizing all metrics, with times in microseconds
+     */
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("frames=").append(getFrameCount())
+                .append(" dropped=").append(getDroppedFrames())
+                .append(" culled=").append(getCulledBackFacing())
+                .append('/').append(getCulledViewport())
+                .append('/').append(getCulledDepth());
+        appendTimes(builder, "frame", getFrameTime());
+        for(RenderStage stage : RenderStage.values()) {
+            appendTimes(builder, stage.name().toLowerCase(), getStage(stage));
+        }
+        Percentiles triangles = getTrianglesPerFrame(), pixels = getPixelsPerFrame();
+        builder.append(" | triangles p50=").append(triangles.getP50()).append(" max=").append(triangles.getMax())
+                .append(" | pixels p50=").append(pixels.getP50()).append(" max=").append(pixels.getMax());
+        return builder.toString();
+    }
+
+    private static void appendTimes(StringBuilder builder, String name, Percentiles times) {
+        if(times.getCount() == 0) return;
+        builder.append(" | ").append(name)
+                .append(" p50=").append(times.getP50() / 1000)
+                .append(" p95=").append(times.getP95() / 1000)
+                .append(" p99=").append(times.getP99() / 1000)
+                .append(" max=").append(times.getMax() / 1000);
+    }
+
+    /**
+     * A ring buffer of the most recent samples of one metric. Samples
+     * come from the render thread while snapshots may be taken from
+     * any other, an uncontended lock is cheap enough for that.
+     */
+    private static final class Window {
+        private final long[] samples;
+        // scratch space to sort a copy of the samples in
+        private final long[] sorted;
+        private long count;
+
+        private Window(int size) {
+            this.samples = new long[size];
+            this.sorted = new long[size];
+        }
+
+        synchronized void add(long value) {
+            samples[(int) (count % samples.length)] = value;
+            count++;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        synchronized void reset() {
+            count = 0;
+        }
+
+        synchronized Percentiles snapshot() {
+            int size = (int) Math.min(count, samples.length);
+            if(size == 0) return Percentiles.EMPTY;
+            System.arraycopy(samples, 0, sorted, 0, size);
+            Arrays.sort(sorted, 0, size);
+
+            long sum = 0;
+            for(int i = 0; i < size; i++) {
+                sum += sorted[i];
+            }
+            return new Percentiles(count, (double) sum / size,
+                    percentile(size, 0.50), percentile(size, 0.95), percentile(size, 0.99), sorted[size - 1]);
+        }
+
+        // nearest rank, on the sorted scratch copy
+        private long percentile(int size, double p) {
+            int rank = (int) Math.ceil(p * size);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.spiritlight.rendertest.render;
+
+/**
+ * The management interface of {@link RenderMetrics}, as seen from
+ * JConsole, VisualVM or any other JMX client. Stage timings are in
+ * nanoseconds, taken over the most recent frames.
+ */
+public interface RenderMetricsMXBean {
+    long getFrameCount();
+
+    long getDroppedFrames();
+
+    /**
+     * @return the number of back faces culled, in total
+     */
+    long getCulledBackFacing();
+
+    /**
+     * @return the number of triangles culled for lying outside the target, in total
+     */
+    long getCulledViewport();
+
+    /**
+     * @return the number of triangles culled for lying outside the depth range, in total
+     */
+    long getCulledDepth();
+
+    long getFrameBudgetNanos();
+
+    void setFrameBudgetNanos(long nanos);
+
+    Percentiles getFrameTime();
+
+    Percentiles getClearTime();
+
+    Percentiles getTransformTime();
+
+    Percentiles getSetupTime();
+
+    Percentiles getShadeTime();
+
+    Percentiles getRasterizeTime();
+
+    Percentiles getUpscaleTime();
+
+    Percentiles getBlitTime();
+
+    Percentiles getTrianglesPerFrame();
+
+    Percentiles getPixelsPerFrame();
+
+    /**
+     * Forgets all samples and counters.
+     */
+    void reset();
+}
@@ -0,0 +1,37 @@
+package com.spiritlight.rendertest.render;
+
+/**
+ * The stages of a frame that {@link RenderMetrics} keeps timings for.
+ */
+public enum RenderStage {
+    /**
+     * Clearing the color and depth buffer of the target
+     */
+    CLEAR,
+    /**
+     * Transforming vertices into screen space
+     */
+    TRANSFORM,
+    /**
+     * Building screen triangles and their bounds
+     */
+    SETUP,
+    /**
+     * Computing the flat shade of every triangle
+     */
+    SHADE,
+    /**
+     * Binning and filling pixels
+     */
+    RASTERIZE,
+    /**
+     * Scaling a frame rendered at a lower resolution up to the output size,
+     * recorded by a {@link RenderThread} with a {@link ResolutionScaler}
+     */
+    UPSCALE,
+    /**
+     * Copying the finished frame onto the screen. The renderer never
+     * does this itself, it is recorded by whoever presents the frame.
+     */
+    BLIT
+}
@@ -0,0 +1,207 @@
+package com.spiritlight.rendertest.render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * A caller-owned color and depth target a {@link Renderer} draws into.
+ * <p>
+ *     The backing arrays are kept across frames and are only reallocated
+ *     when the target is resized beyond its current capacity, so a single
+ *     target may be reused for every frame without producing garbage.
+ * </p>
+ * Pixels are laid out row by row, the pixel at {@code (x, y)} is located
+ * at index {@code y * getWidth() + x} of both the color and depth array.
+ * Colors are packed ARGB integers, and a larger depth value is considered
+ * closer to the viewer. Depth is kept either as doubles or as floats, see
+ * {@link DepthFormat}. The color can be drawn as is through {@link #getImage()},
+ * without copying it into an image first.
+ */
+public class RenderTarget {
+    private static final DirectColorModel OPAQUE = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+    private static final DirectColorModel ALPHA = (DirectColorModel) ColorModel.getRGBdefault();
+
+    private int width;
+    private int height;
+
+    private final DepthFormat depthFormat;
+
+    private int[] color;
+    // only one of them is used, depending on the format
+    private double[] depth;
+    private float[] floatDepth;
+
+    private final DepthPyramid pyramid;
+    // views of the color array, made when first asked for after a resize
+    private BufferedImage opaqueImage, alphaImage;
+
+    public RenderTarget(int width, int height) {
+        this(width, height, DepthFormat.DOUBLE);
+    }
+
+    public RenderTarget(int width, int height, DepthFormat depthFormat) {
+        checkSize(width, height);
+        this.width = width;
+        this.height = height;
+        this.depthFormat = depthFormat;
+        allocate(width * height);
+        this.pyramid = new DepthPyramid(this);
+    }
+
+    /**
+     * Resizes this target. The backing arrays are only reallocated
+     * if the new size does not fit into the current ones.
+     * @param width The new width
+     * @param height The new height
+     * @return true if the arrays had to be reallocated
+     */
+    public boolean resize(int width, int height) {
+        checkSize(width, height);
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        boolean grown = size > color.length;
+        if(grown) allocate(size);
+        opaqueImage = alphaImage = null;
+        pyramid.resize();
+        return grown;
+    }
+
+    private void allocate(int size) {
+        this.color = new int[size];
+        if(depthFormat == DepthFormat.FLOAT) {
+            this.floatDepth = new float[size];
+        } else {
+            this.depth = new double[size];
+        }
+    }
+
+    /**
+     * Clears the color to fully transparent and the depth
+     * to the farthest possible value.
+     */
+    public void clear() {
+        clear(0);
+    }
+
+    /**
+     * Clears the color to the given ARGB value and the depth
+     * to the farthest possible value.
+     * @param argb The color to fill this target with
+     */
+    public void clear(int argb) {
+        int size = width * height;
+        Arrays.fill(color, 0, size, argb);
+        if(depth != null) {
+            Arrays.fill(depth, 0, size, Double.NEGATIVE_INFINITY);
+        } else {
+            Arrays.fill(floatDepth, 0, size, Float.NEGATIVE_INFINITY);
+        }
+        pyramid.clear(Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Tells this target its depth was changed through the backing array. Depth
+     * written by a {@link Renderer} is tracked already, but anything else has
+     * to be reported here before rendering on top of it, or triangles may be
+     * wrongly considered hidden.
+     */
+    public void depthChanged() {
+        pyramid.invalidate();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the backing color array. The array may be larger than
+     * {@code width * height}, in which case the trailing elements
+     * are unused.
+     * @return The array backing the color of this target
+     */
+    public int[] getColor() {
+        return color;
+    }
+
+    /**
+     * Gets an opaque image over the color of this target, of type
+     * {@link BufferedImage#TYPE_INT_RGB}. The image shares the color
+     * array, so it always shows what was last rendered, until this
+     * target is resized: a new image has to be gotten then.
+     * @return An image of this target, ignoring the alpha of its colors
+     */
+    public BufferedImage getImage() {
+        if(opaqueImage == null) opaqueImage = image(OPAQUE);
+        return opaqueImage;
+    }
+
+    /**
+     * Gets an image over the color of this target, like {@link #getImage()},
+     * keeping the alpha of its colors.
+     * @return An image of this target of type {@link BufferedImage#TYPE_INT_ARGB}
+     */
+    public BufferedImage getTranslucentImage() {
+        if(alphaImage == null) alphaImage = image(ALPHA);
+        return alphaImage;
+    }
+
+    private BufferedImage image(DirectColorModel model) {
+        // the raster only covers the used part of the array
+        DataBufferInt buffer = new DataBufferInt(color, width * height);
+        WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width, model.getMasks(), null);
+        return new BufferedImage(model, raster, false, null);
+    }
+
+    public DepthFormat getDepthFormat() {
+        return depthFormat;
+    }
+
+    /**
+     * Gets the backing depth array. The array may be larger than
+     * {@code width * height}, in which case the trailing elements
+     * are unused.
+     * @return The array backing the depth of this target, or null
+     * if depth is stored as floats
+     * @see #getFloatDepth()
+     */
+    public double[] getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gets the backing depth array of a target storing {@link DepthFormat#FLOAT float} depth.
+     * @return The array backing the depth of this target, or null
+     * if depth is stored as doubles
+     * @see #getDepth()
+     */
+    public float[] getFloatDepth() {
+        return floatDepth;
+    }
+
+    /**
+     * Gets the depth of a pixel, whichever way it is stored.
+     */
+    public double getDepth(int x, int y) {
+        if(x < 0 || x >= width || y < 0 || y >= height) throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside of " + width + "x" + height);
+        int index = y * width + x;
+        return depth != null ? depth[index] : floatDepth[index];
+    }
+
+    DepthPyramid getDepthPyramid() {
+        return pyramid;
+    }
+
+    private static void checkSize(int width, int height) {
+        if(width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid target size of " + width + "x" + height);
+    }
+}
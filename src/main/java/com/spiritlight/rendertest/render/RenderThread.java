@@ -0,0 +1,208 @@
+package com.spiritlight.rendertest.render;
+
+import com.spiritlight.rendertest.utils.TripleBuffer;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Renders frames on a dedicated thread, so a slow frame never holds up
+ * the thread showing them, typically the Swing event dispatch thread.
+ * <p>
+ *     Frames are rendered into a pool of three targets allocated up front
+ *     and handed over through a {@link TripleBuffer}: {@link #latest()}
+ *     always returns the most recently finished frame, frames finished
+ *     while the previous one wasn't picked up yet are dropped. Requests for
+ *     frames made while one is being rendered are folded into one.
+ * </p>
+ * With a {@link ResolutionScaler}, frames are rendered at the resolution it
+ * picks and scaled up to the requested size, so they keep to a time budget.
+ */
+public class RenderThread implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(RenderThread.class.getName());
+
+    private final Renderer renderer;
+    private final Scene scene;
+    private final Runnable onFrame;
+    private final TripleBuffer<RenderTarget> frames = new TripleBuffer<>(() -> new RenderTarget(1, 1));
+
+    private final AtomicBoolean requested = new AtomicBoolean();
+    private volatile int width = 1, height = 1;
+    private volatile ResolutionScaler scaler;
+    // frames below full size are rendered here first, only used by the render thread
+    private RenderTarget lowResolution;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param renderer The renderer to render frames with, only used by the render thread from then on
+     * @param scene Draws a frame
+     * @param onFrame Called on the render thread after every frame, for example to
+     * {@link java.awt.Component#repaint() repaint} the component showing them. Also
+     * called after a frame that failed, so whatever waits for frames isn't held up
+     */
+    public RenderThread(Renderer renderer, Scene scene, Runnable onFrame) {
+        this.renderer = renderer;
+        this.scene = scene;
+        this.onFrame = onFrame;
+    }
+
+    /**
+     * Sets the size of the frames to come. Frames already rendered keep their size.
+     */
+    public void setSize(int width, int height) {
+        if(width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Sets the scaler picking the resolution frames are rendered at, from any thread.
+     * @param scaler The scaler, or null to always render at full size
+     */
+    public void setResolutionScaler(ResolutionScaler scaler) {
+        this.scaler = scaler;
+    }
+
+    public ResolutionScaler getResolutionScaler() {
+        return scaler;
+    }
+
+    /**
+     * Asks for a frame to be rendered, from any thread.
+     */
+    public void requestFrame() {
+        requested.set(true);
+        Thread thread = this.thread;
+        if(thread != null) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Returns the most recently finished frame. Must only be called from
+     * one thread, the frame returned is left alone until it calls this again.
+     * @return the latest frame, or null if none is finished yet
+     */
+    public BufferedImage latest() {
+        RenderTarget frame = frames.latest();
+        return frame == null ? null : frame.getImage();
+    }
+
+    /**
+     * @return the number of frames rendered but replaced by a newer one before being shown
+     */
+    public long getDroppedFrames() {
+        return frames.getDropped();
+    }
+
+    public synchronized void start() {
+        if(thread != null) return;
+        running = true;
+        thread = new Thread(this::loop, "RenderThread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    /**
+     * Stops the render thread, after the frame in progress if any.
+     * May be started again afterwards.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+            this.thread = null;
+            running = false;
+        }
+        if(thread == null) return;
+        LockSupport.unpark(thread);
+        if(thread == Thread.currentThread()) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    private void loop() {
+        while(running) {
+            if(!requested.getAndSet(false)) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                render(frames.back());
+                frames.publish();
+            } catch (RuntimeException e) {
+                // one broken frame shouldn't end all the ones after it, the
+                // last good one stays on show
+                LOGGER.log(Level.SEVERE, "Failed to render a frame", e);
+            } finally {
+                onFrame.run();
+            }
+        }
+    }
+
+    private void render(RenderTarget frame) {
+        int width = this.width, height = this.height;
+        if(frame.getWidth() != width || frame.getHeight() != height) frame.resize(width, height);
+        ResolutionScaler scaler = this.scaler;
+        if(scaler == null) {
+            scene.render(renderer, frame);
+        } else {
+            long start = System.nanoTime();
+            renderScaled(frame, scaler);
+            scaler.frame(System.nanoTime() - start);
+        }
+        // the image view is made here rather than by whoever shows it
+        frame.getImage();
+    }
+
+    private void renderScaled(RenderTarget frame, ResolutionScaler scaler) {
+        double scale = scaler.getScale();
+        if(scale == 1) {
+            scene.render(renderer, frame);
+            return;
+        }
+        int width = scaler.scaled(frame.getWidth()), height = scaler.scaled(frame.getHeight());
+        if(lowResolution == null) {
+            lowResolution = new RenderTarget(width, height, frame.getDepthFormat());
+        } else if(lowResolution.getWidth() != width || lowResolution.getHeight() != height) {
+            lowResolution.resize(width, height);
+        }
+        double previous = renderer.getScale();
+        renderer.setScale(previous * scale);
+        try {
+            scene.render(renderer, lowResolution);
+        } finally {
+            renderer.setScale(previous);
+        }
+        long start = System.nanoTime();
+        scaler.upscale(lowResolution, frame);
+        RenderMetrics metrics = renderer.getMetrics();
+        if(metrics != null) metrics.record(RenderStage.UPSCALE, System.nanoTime() - start);
+    }
+
+    /**
+     * Draws one frame, on the render thread.
+     */
+    @FunctionalInterface
+    public interface Scene {
+        /**
+         * @param renderer The renderer of the render thread
+         * @param target The target to draw into, already sized
+         */
+        void render(Renderer renderer, RenderTarget target);
+    }
+}
@@ -0,0 +1,445 @@
+package com.spiritlight.rendertest.render;
+
+import com.spiritlight.rendertest.math.Mat3;
+import com.spiritlight.rendertest.math.Vec3;
+import com.spiritlight.rendertest.objects.Mesh;
+import com.spiritlight.rendertest.objects.Triangle;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A headless software renderer. The renderer transforms a list of
+ * triangles or a {@link Mesh} by the camera, and rasterizes them into a {@link RenderTarget}
+ * with a depth test and flat shading.
+ * <p>
+ *     The renderer does not depend on Swing or AWT painting, and does not
+ *     allocate any per-frame buffers on its own; all pixel storage is owned
+ *     by the supplied target, so the same target can be reused across frames.
+ * </p>
+ */
+public class Renderer {
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private Kernels kernels = Kernels.preferred();
+    private boolean hierarchicalDepth = true;
+    private Rasterizer rasterizer = new Rasterizer(kernels, hierarchicalDepth);
+    private final ScreenTriangles setup = new ScreenTriangles();
+    private final TileBinner binner;
+
+    // per-frame scratch, reused so the setup pass doesn't allocate
+    private final Mat3 transform = new Mat3();
+    private final Vec3 v1 = new Vec3(), v2 = new Vec3(), v3 = new Vec3();
+    private double[] screenX = new double[0], screenY = new double[0], screenZ = new double[0];
+
+    // null when rendering on the calling thread only
+    private ForkJoinPool pool;
+
+    // null unless someone is interested
+    private RenderMetrics metrics;
+
+    // culling, null draws both sides of every triangle
+    private Winding frontFace;
+    private double minDepth = Double.NEGATIVE_INFINITY, maxDepth = Double.POSITIVE_INFINITY;
+    // pixels per unit
+    private double scale = 1;
+    // the viewport of the frame being set up, and its depth range in screen units
+    private int viewportWidth, viewportHeight;
+    private double screenMinDepth, screenMaxDepth;
+    // triangles culled in the last frame
+    private int culledBackFacing, culledViewport, culledDepth;
+
+    public Renderer() {
+        this(DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Creates a renderer using the given tile size once parallel
+     * rendering is enabled.
+     * @param tileSize The width and height of a screen tile in pixels
+     */
+    public Renderer(int tileSize) {
+        this.binner = new TileBinner(tileSize);
+    }
+
+    /**
+     * Enables or disables parallel rendering on the common pool.
+     * @see #setPool(ForkJoinPool)
+     */
+    public Renderer setParallel(boolean parallel) {
+        return setPool(parallel ? ForkJoinPool.commonPool() : null);
+    }
+
+    /**
+     * Sets the pool to rasterize on. When a pool is set, triangles are binned
+     * into screen tiles which are then rasterized in parallel, each tile owning
+     * its part of the color and depth buffer. Otherwise, everything is
+     * rasterized on the calling thread.
+     * @param pool The pool to use, or null to render serially
+     * @return the renderer itself
+     */
+    public Renderer setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * Checks whether the SIMD path can be used, that is, whether the
+     * {@code jdk.incubator.vector} module was added at startup.
+     * @return true if the vector API is available
+     */
+    public static boolean isSimdAvailable() {
+        return Kernels.vector() != null;
+    }
+
+    /**
+     * Enables or disables the SIMD path for vertex transformation and
+     * rasterization. It is enabled by default whenever it is available,
+     * and requesting it while it is not available keeps the scalar path.
+     * Both paths produce identical images.
+     * @param simd Whether to use the vector API
+     * @return the renderer itself
+     */
+    public Renderer setSimd(boolean simd) {
+        this.kernels = simd ? Kernels.preferred() : Kernels.scalar();
+        this.rasterizer = new Rasterizer(kernels, hierarchicalDepth);
+        return this;
+    }
+
+    public boolean isSimd() {
+        return kernels != Kernels.scalar();
+    }
+
+    /**
+     * Enables or disables early depth rejection on the depth hierarchy of the
+     * target, which skips triangles and blocks of pixels already covered by
+     * something closer. It is enabled by default and doesn't change the image,
+     * only scenes with little overdraw may be slightly faster without it.
+     * @param hierarchicalDepth Whether to test against the depth hierarchy
+     * @return the renderer itself
+     */
+    public Renderer setHierarchicalDepth(boolean hierarchicalDepth) {
+        this.hierarchicalDepth = hierarchicalDepth;
+        this.rasterizer = new Rasterizer(kernels, hierarchicalDepth);
+        return this;
+    }
+
+    public boolean isHierarchicalDepth() {
+        return hierarchicalDepth;
+    }
+
+    /**
+     * Sets which winding front faces have on screen. Triangles of the other
+     * winding are back faces and are culled before rasterization, unless they
+     * are {@linkplain Triangle#isTwoSided() two-sided}.
+     * @param frontFace The winding of front faces, or null to draw both sides
+     *                  of every triangle, which is the default
+     * @return the renderer itself
+     */
+    public Renderer setFrontFace(Winding frontFace) {
+        this.frontFace = frontFace;
+        return this;
+    }
+
+    public Winding getFrontFace() {
+        return frontFace;
+    }
+
+    /**
+     * Sets the range of depth values that is drawn. Triangles lying entirely
+     * outside of it are culled, triangles crossing it are drawn whole.
+     * By default, every depth is drawn.
+     * @param min The smallest depth drawn, the farthest from the viewer
+     * @param max The largest depth drawn, the closest to the viewer
+     * @return the renderer itself
+     */
+    public Renderer setDepthRange(double min, double max) {
+        if(!(min <= max)) throw new IllegalArgumentException("Invalid depth range from " + min + " to " + max);
+        this.minDepth = min;
+        this.maxDepth = max;
+        return this;
+    }
+
+    public double getMinDepth() {
+        return minDepth;
+    }
+
+    public double getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets how many pixels a unit of the scene spans on screen, 1 by default.
+     * Rendering into a target half the size at a scale of 0.5 frames the
+     * scene the same, at half the resolution. Depth is scaled alike, so
+     * shading doesn't change, while the {@linkplain #setDepthRange(double, double)
+     * depth range} stays in scene units.
+     * @return the renderer itself
+     */
+    public Renderer setScale(double scale) {
+        if(!(scale > 0) || Double.isInfinite(scale)) throw new IllegalArgumentException("Invalid scale of " + scale);
+        this.scale = scale;
+        return this;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the number of back faces culled in the last frame
+     */
+    public int getBackFacingCulled() {
+        return culledBackFacing;
+    }
+
+    /**
+     * @return the number of triangles culled in the last frame
+     * for lying entirely outside the target
+     */
+    public int getViewportCulled() {
+        return culledViewport;
+    }
+
+    /**
+     * @return the number of triangles culled in the last frame
+     * for lying entirely outside the depth range
+     */
+    public int getDepthCulled() {
+        return culledDepth;
+    }
+
+    /**
+     * Sets the metrics to record stage timings and frame statistics to.
+     * Timing a frame costs a handful of {@link System#nanoTime()} calls
+     * and no allocation, so this may be left enabled.
+     * @param metrics The metrics to record to, or null to stop recording
+     * @return the renderer itself
+     */
+    public Renderer setMetrics(RenderMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Clears the target and renders the given triangles into it.
+     * @param triangles The triangles to render
+     * @param camera The camera to view the triangles from
+     * @param target The target to render to
+     */
+    public void render(List<Triangle> triangles, Camera camera, RenderTarget target) {
+        long start = System.nanoTime();
+        clear(target, start);
+        draw(triangles, camera, target, start);
+    }
+
+    /**
+     * Clears the target and renders the given mesh into it.
+     * @param mesh The mesh to render
+     * @param camera The camera to view the mesh from
+     * @param target The target to render to
+     */
+    public void render(Mesh mesh, Camera camera, RenderTarget target) {
+        long start = System.nanoTime();
+        clear(target, start);
+        draw(mesh, camera, target, start);
+    }
+
+    /**
+     * Renders the given triangles into the target, without clearing it first.
+     * @param triangles The triangles to render
+     * @param camera The camera to view the triangles from
+     * @param target The target to render to
+     */
+    public void draw(List<Triangle> triangles, Camera camera, RenderTarget target) {
+        draw(triangles, camera, target, System.nanoTime());
+    }
+
+    /**
+     * Renders the given mesh into the target, without clearing it first.
+     * The vertices are transformed in one batch, so vertices shared between
+     * triangles are only transformed once.
+     * @param mesh The mesh to render
+     * @param camera The camera to view the mesh from
+     * @param target The target to render to
+     */
+    public void draw(Mesh mesh, Camera camera, RenderTarget target) {
+        draw(mesh, camera, target, System.nanoTime());
+    }
+
+    private void clear(RenderTarget target, long start) {
+        target.clear();
+        if(metrics != null) metrics.record(RenderStage.CLEAR, System.nanoTime() - start);
+    }
+
+    private void draw(List<Triangle> triangles, Camera camera, RenderTarget target, long start) {
+        long time = System.nanoTime();
+        Mat3 transform = camera.getTransform(this.transform);
+        if(scale != 1) transform.scale(scale);
+
+        double centerX = target.getWidth() / 2d;
+        double centerY = target.getHeight() / 2d;
+
+        Vec3 v1 = this.v1, v2 = this.v2, v3 = this.v3;
+
+        // transform the vertices and then translate, three per triangle
+        ensureScreenCapacity(triangles.size() * 3);
+        double[] x = screenX, y = screenY, z = screenZ;
+        int vertex = 0;
+        for (Triangle t : triangles) {
+            t.getPoint1().transform(transform, v1).add(centerX, centerY, 0);
+            t.getPoint2().transform(transform, v2).add(centerX, centerY, 0);
+            t.getPoint3().transform(transform, v3).add(centerX, centerY, 0);
+            x[vertex] = v1.x; y[vertex] = v1.y; z[vertex++] = v1.z;
+            x[vertex] = v2.x; y[vertex] = v2.y; z[vertex++] = v2.z;
+            x[vertex] = v3.x; y[vertex] = v3.y; z[vertex++] = v3.z;
+        }
+        time = record(RenderStage.TRANSFORM, time);
+
+        beginSetup(target);
+        vertex = 0;
+        for (Triangle t : triangles) {
+            int i1 = vertex++, i2 = vertex++, i3 = vertex++;
+            setup(x[i1], y[i1], z[i1],
+                    x[i2], y[i2], z[i2],
+                    x[i3], y[i3], z[i3],
+                    t.getColor().getRGB(), t.isTwoSided());
+        }
+        time = record(RenderStage.SETUP, time);
+
+        finish(target, triangles.size(), start, time);
+    }
+
+    private void draw(Mesh mesh, Camera camera, RenderTarget target, long start) {
+        long time = System.nanoTime();
+        Mat3 transform = camera.getTransform(this.transform);
+        if(scale != 1) transform.scale(scale);
+
+        ensureScreenCapacity(mesh.getVertexCount());
+        double[] x = screenX, y = screenY, z = screenZ;
+        kernels.transform(mesh, transform, target.getWidth() / 2d, target.getHeight() / 2d, 0, x, y, z);
+        time = record(RenderStage.TRANSFORM, time);
+
+        int[] indices = mesh.getIndices();
+        int[] colors = mesh.getColors();
+
+        beginSetup(target);
+        for (int i = 0, n = mesh.getTriangleCount(); i < n; i++) {
+            int i1 = indices[i * 3], i2 = indices[i * 3 + 1], i3 = indices[i * 3 + 2];
+            setup(x[i1], y[i1], z[i1],
+                    x[i2], y[i2], z[i2],
+                    x[i3], y[i3], z[i3],
+                    colors[i], mesh.isTwoSided(i));
+        }
+        time = record(RenderStage.SETUP, time);
+
+        finish(target, mesh.getTriangleCount(), start, time);
+    }
+
+    private void ensureScreenCapacity(int vertices) {
+        if(screenX.length < vertices) {
+            screenX = new double[vertices];
+            screenY = new double[vertices];
+            screenZ = new double[vertices];
+        }
+    }
+
+    private void beginSetup(RenderTarget target) {
+        setup.clear();
+        viewportWidth = target.getWidth();
+        viewportHeight = target.getHeight();
+        screenMinDepth = minDepth * scale;
+        screenMaxDepth = maxDepth * scale;
+        culledBackFacing = culledViewport = culledDepth = 0;
+    }
+
+    /**
+     * Culls a triangle already in screen space, or queues it for shading and rasterization.
+     */
+    private void setup(double x1, double y1, double z1,
+                       double x2, double y2, double z2,
+                       double x3, double y3, double z3,
+                       int rgb, boolean twoSided) {
+        // pixels are sampled at integer coordinates, so anything not reaching
+        // the first or the last one can't cover a pixel of the target
+        if(Math.max(x1, Math.max(x2, x3)) < 0 || Math.min(x1, Math.min(x2, x3)) > viewportWidth - 1
+                || Math.max(y1, Math.max(y2, y3)) < 0 || Math.min(y1, Math.min(y2, y3)) > viewportHeight - 1) {
+            culledViewport++;
+            return;
+        }
+        if(Math.max(z1, Math.max(z2, z3)) < screenMinDepth || Math.min(z1, Math.min(z2, z3)) > screenMaxDepth) {
+            culledDepth++;
+            return;
+        }
+
+        double abX = x2 - x1, abY = y2 - y1, abZ = z2 - z1;
+        double acX = x3 - x1, acY = y3 - y1, acZ = z3 - z1;
+
+        // only the z component of the normal is needed for the shade,
+        // and its sign gives the winding on screen, positive being
+        // clockwise as y points down
+        double normalX = abY * acZ - abZ * acY;
+        double normalY = abZ * acX - abX * acZ;
+        double normalZ = abX * acY - abY * acX;
+        if(frontFace != null && !twoSided
+                && (frontFace == Winding.CLOCKWISE ? normalZ <= 0 : normalZ >= 0)) {
+            culledBackFacing++;
+            return;
+        }
+        normalZ /= Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+
+        // the shade only depends on the triangle, no need to redo it per pixel
+        setup.add(x1, y1, z1,
+                x2, y2, z2,
+                x3, y3, z3,
+                rgb, Math.cos(normalZ));
+    }
+
+    /**
+     * Shades and rasterizes everything that went through setup, and closes the frame.
+     */
+    private void finish(RenderTarget target, int triangles, long start, long time) {
+        setup.shade();
+        time = record(RenderStage.SHADE, time);
+
+        long pixels = rasterize(target);
+        long end = record(RenderStage.RASTERIZE, time);
+
+        if(metrics != null) {
+            metrics.culled(culledBackFacing, culledViewport, culledDepth);
+            metrics.frame(triangles, pixels, end - start);
+        }
+    }
+
+    /**
+     * Records the time since the given start if metrics are enabled.
+     * @return the current time, as the start of the next stage
+     */
+    private long record(RenderStage stage, long start) {
+        long now = System.nanoTime();
+        if(metrics != null) metrics.record(stage, now - start);
+        return now;
+    }
+
+    private long rasterize(RenderTarget target) {
+        if(pool == null) {
+            int maxX = target.getWidth() - 1;
+            int maxY = target.getHeight() - 1;
+            long written = 0;
+            for(int i = 0; i < setup.size(); i++) {
+                written += setup.fill(i, rasterizer, target, 0, 0, maxX, maxY);
+            }
+            return written;
+        }
+        binner.bin(setup, target.getWidth(), target.getHeight());
+        return binner.rasterize(pool, setup, rasterizer, target);
+    }
+}
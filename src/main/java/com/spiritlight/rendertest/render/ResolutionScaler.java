@@ -0,0 +1,347 @@
+package com.spiritlight.rendertest.render;
+
+/**
+ * Picks the resolution frames are rendered at from how long recent frames
+ * took, trading sharpness for a steady frame rate.
+ * <p>
+ *     The scale is a fraction of the output size per axis, in steps between
+ *     a minimum and 1. Once the average frame time settled at the current
+ *     scale goes over the budget, the scale drops a step. It only rises a
+ *     step again once the average, grown by the extra pixels of the next
+ *     step, would still leave some headroom under the budget. The gap
+ *     between the two keeps the scale from going back and forth every few
+ *     frames, and since only part of a frame scales with its pixels, the
+ *     estimate for the next step errs on the high side.
+ * </p>
+ * Frames rendered below full size are scaled up to the output with a
+ * {@link Filter}. A scaler is meant for one render thread, see
+ * {@link RenderThread#setResolutionScaler(ResolutionScaler)}.
+ */
+public class ResolutionScaler {
+    public static final double DEFAULT_MIN_SCALE = 0.25;
+    public static final double DEFAULT_STEP = 0.125;
+    public static final double DEFAULT_HEADROOM = 0.8;
+    public static final int DEFAULT_SETTLE_FRAMES = 12;
+
+    // weight of the latest frame in the average
+    private static final double SMOOTHING = 0.2;
+
+    private long budget;
+    private double minScale = DEFAULT_MIN_SCALE;
+    private double step = DEFAULT_STEP;
+    private double headroom = DEFAULT_HEADROOM;
+    private int settleFrames = DEFAULT_SETTLE_FRAMES;
+    private Filter filter = Filter.BILINEAR;
+
+    private volatile double scale = 1;
+    // upscaling tables for the last sizes seen, only used by the render thread
+    private final Tables tables = new Tables();
+    private double average;
+    // frames since the scale last changed
+    private int frames;
+    private long changes;
+
+    /**
+     * @param budgetNanos The time a frame may take, in nanoseconds
+     */
+    public ResolutionScaler(long budgetNanos) {
+        setBudget(budgetNanos);
+    }
+
+    /**
+     * Sets the time a frame may take, in nanoseconds.
+     * @return the scaler itself
+     */
+    public ResolutionScaler setBudget(long budgetNanos) {
+        if(budgetNanos <= 0) throw new IllegalArgumentException("Invalid budget of " + budgetNanos + " ns");
+        this.budget = budgetNanos;
+        return this;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the lowest scale frames are rendered at.
+     * @return the scaler itself
+     */
+    public ResolutionScaler setMinScale(double minScale) {
+        if(!(minScale > 0 && minScale <= 1)) throw new IllegalArgumentException("Invalid min scale of " + minScale);
+        this.minScale = minScale;
+        if(scale < minScale) change(minScale);
+        return this;
+    }
+
+    public double getMinScale() {
+        return minScale;
+    }
+
+    /**
+     * Sets how much the scale changes at once.
+     * @return the scaler itself
+     */
+    public ResolutionScaler setStep(double step) {
+        if(!(step > 0 && step <= 1)) throw new IllegalArgumentException("Invalid step of " + step);
+        this.step = step;
+        return this;
+    }
+
+    public double getStep() {
+        return step;
+    }
+
+    /**
+     * Sets the share of the budget a frame at the next step up is expected
+     * to fit in before the scale rises, below 1 so the scale doesn't flip back
+     * and forth between two steps.
+     * @return the scaler itself
+     */
+    public ResolutionScaler setHeadroom(double headroom) {
+        if(!(headroom > 0 && headroom <= 1)) throw new IllegalArgumentException("Invalid headroom of " + headroom);
+        this.headroom = headroom;
+        return this;
+    }
+
+    public double getHeadroom() {
+        return headroom;
+    }
+
+    /**
+     * Sets how many frames are timed at a new scale before it may change again.
+     * @return the scaler itself
+     */
+    public ResolutionScaler setSettleFrames(int settleFrames) {
+        if(settleFrames <= 0) throw new IllegalArgumentException("Invalid settle frame count of " + settleFrames);
+        this.settleFrames = settleFrames;
+        return this;
+    }
+
+    public int getSettleFrames() {
+        return settleFrames;
+    }
+
+    /**
+     * Sets how frames rendered below full size are scaled up, bilinear by default.
+     * @return the scaler itself
+     */
+    public ResolutionScaler setFilter(Filter filter) {
+        if(filter == null) throw new IllegalArgumentException("No filter given");
+        this.filter = filter;
+        return this;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return the scale to render the next frame at, from the minimum to 1
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the number of times the scale changed
+     */
+    public long getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the size to render at for an output size
+     */
+    public int scaled(int size) {
+        return Math.max(1, (int) Math.round(size * scale));
+    }
+
+    /**
+     * Records the time a frame took at the current scale, and adjusts the scale for the next ones.
+     * @param nanos The time from the start of the frame to it being ready to show
+     * @return true if the scale changed
+     */
+    public boolean frame(long nanos) {
+        average = frames == 0 ? nanos : average + (nanos - average) * SMOOTHING;
+        if(++frames < settleFrames) return false;
+        if(average > budget && scale > minScale) {
+            change(Math.max(minScale, scale - step));
+            return true;
+        }
+        if(scale < 1) {
+            double next = Math.min(1, scale + step);
+            // the cost of a frame grows with its pixels, at most
+            double ratio = next / scale;
+            if(average * ratio * ratio < budget * headroom) {
+                change(next);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void change(double scale) {
+        this.scale = scale;
+        this.frames = 0;
+        this.changes++;
+    }
+
+    /**
+     * Scales a frame up to the output with the filter, as
+     * {@link Filter#upscale(RenderTarget, RenderTarget)} does, but keeps the
+     * tables and row buffers it needs for as long as the sizes stay the same,
+     * so upscaling frame after frame doesn't allocate.
+     * @param source The frame rendered at a lower resolution
+     * @param target The target at the output size
+     */
+    public void upscale(RenderTarget source, RenderTarget target) {
+        filter.upscale(source, target, tables);
+    }
+
+    /**
+     * Per column source positions and blend weights, and two rows of
+     * blended source pixels, which only depend on the widths.
+     */
+    private static final class Tables {
+        private Filter filter;
+        private int sourceWidth, width;
+        private int[] columns = new int[0], weights = new int[0];
+        private int[] upper = new int[0], lower = new int[0];
+
+        /**
+         * @return true if the columns have to be filled in anew
+         */
+        boolean fit(Filter filter, int sourceWidth, int width) {
+            if(filter == this.filter && sourceWidth == this.sourceWidth && width == this.width) return false;
+            if(columns.length != width) {
+                columns = new int[width];
+                weights = new int[width];
+                upper = new int[width];
+                lower = new int[width];
+            }
+            this.filter = filter;
+            this.sourceWidth = sourceWidth;
+            this.width = width;
+            return true;
+        }
+    }
+
+    /**
+     * How a frame is scaled up to the output size.
+     */
+    public enum Filter {
+        /**
+         * Takes the closest source pixel, sharp but blocky
+         */
+        NEAREST {
+            @Override
+            void upscale(RenderTarget source, RenderTarget target, Tables tables) {
+                int sw = source.getWidth(), sh = source.getHeight();
+                int w = target.getWidth(), h = target.getHeight();
+                int[] in = source.getColor(), out = target.getColor();
+                int[] columns = tables.columns;
+                if(tables.fit(this, sw, w)) {
+                    columns = tables.columns;
+                    for(int x = 0; x < w; x++) {
+                        columns[x] = Math.min(sw - 1, (int) ((x + 0.5) * sw / w));
+                    }
+                }
+                int previous = -1;
+                for(int y = 0; y < h; y++) {
+                    int row = Math.min(sh - 1, (int) ((y + 0.5) * sh / h)) * sw;
+                    int o = y * w;
+                    if(row == previous) {
+                        // same source row as the output row above
+                        System.arraycopy(out, o - w, out, o, w);
+                        continue;
+                    }
+                    for(int x = 0; x < w; x++) {
+                        out[o + x] = in[row + columns[x]];
+                    }
+                    previous = row;
+                }
+            }
+        },
+        /**
+         * Blends the four closest source pixels, smooth but soft
+         */
+        BILINEAR {
+            @Override
+            void upscale(RenderTarget source, RenderTarget target, Tables tables) {
+                int sw = source.getWidth(), sh = source.getHeight();
+                int w = target.getWidth(), h = target.getHeight();
+                int[] in = source.getColor(), out = target.getColor();
+                // left column and the weight of the right one, out of 256
+                boolean refit = tables.fit(this, sw, w);
+                int[] columns = tables.columns, weights = tables.weights;
+                if(refit) {
+                    for(int x = 0; x < w; x++) {
+                        double u = Math.max(0, Math.min(sw - 1, (x + 0.5) * sw / w - 0.5));
+                        columns[x] = (int) u;
+                        weights[x] = (int) Math.round((u - columns[x]) * 256);
+                    }
+                }
+                // source rows blended across once, and reused by every output row between them
+                int[] upper = tables.upper, lower = tables.lower;
+                int upperRow = -1, lowerRow = -1;
+                for(int y = 0; y < h; y++) {
+                    double v = Math.max(0, Math.min(sh - 1, (y + 0.5) * sh / h - 0.5));
+                    int top = (int) v, bottom = Math.min(sh - 1, top + 1);
+                    int fy = (int) Math.round((v - top) * 256);
+                    if(top != upperRow) {
+                        if(top == lowerRow) {
+                            int[] swap = upper;
+                            upper = lower;
+                            lower = swap;
+                            lowerRow = upperRow;
+                        } else {
+                            blendRow(in, top * sw, sw, columns, weights, upper);
+                        }
+                        upperRow = top;
+                    }
+                    if(bottom != lowerRow) {
+                        blendRow(in, bottom * sw, sw, columns, weights, lower);
+                        lowerRow = bottom;
+                    }
+                    int o = y * w;
+                    if(fy == 0) {
+                        System.arraycopy(upper, 0, out, o, w);
+                    } else {
+                        for(int x = 0; x < w; x++) {
+                            out[o + x] = blend(upper[x], lower[x], fy);
+                        }
+                    }
+                }
+            }
+
+            private static void blendRow(int[] in, int row, int sw, int[] columns, int[] weights, int[] out) {
+                for(int x = 0; x < out.length; x++) {
+                    int left = columns[x];
+                    out[x] = blend(in[row + left], in[row + Math.min(sw - 1, left + 1)], weights[x]);
+                }
+            }
+        };
+
+        /**
+         * Scales the color of a frame up, or down, to fill another target.
+         * Only color is written, depth is left alone.
+         * @param source The frame rendered at a lower resolution
+         * @param target The target at the output size
+         * @see ResolutionScaler#upscale(RenderTarget, RenderTarget)
+         */
+        public void upscale(RenderTarget source, RenderTarget target) {
+            upscale(source, target, new Tables());
+        }
+
+        abstract void upscale(RenderTarget source, RenderTarget target, Tables tables);
+
+        // two channels at a time, red and blue then alpha and green
+        private static int blend(int a, int b, int weight) {
+            if(weight == 0) return a;
+            int inverse = 256 - weight;
+            int rb = ((a & 0xFF00FF) * inverse + (b & 0xFF00FF) * weight) >>> 8 & 0xFF00FF;
+            int ag = ((a >>> 8 & 0xFF00FF) * inverse + (b >>> 8 & 0xFF00FF) * weight) & 0xFF00FF00;
+            return ag | rb;
+        }
+    }
+}
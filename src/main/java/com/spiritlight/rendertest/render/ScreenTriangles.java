@@ -0,0 +1,116 @@
+package com.spiritlight.rendertest.render;
+
+import java.util.Arrays;
+
+/**
+ * A growable, reusable list of triangles that went through setup, that is,
+ * triangles already transformed into screen space, waiting to be shaded
+ * and rasterized. The storage is kept across frames so a steady scene does not
+ * allocate once the arrays have grown to fit it.
+ */
+final class ScreenTriangles {
+    // x, y, z of all three vertices, 9 values per triangle
+    private double[] vertices = new double[9 * 16];
+    private int[] colors = new int[16];
+    // angle to the viewer, until the triangles are shaded
+    private double[] angles = new double[16];
+    // screen space bounding box, 4 values per triangle
+    private int[] bounds = new int[4 * 16];
+    private int size;
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(double x1, double y1, double z1,
+             double x2, double y2, double z2,
+             double x3, double y3, double z3,
+             int rgb, double angle) {
+        if(size == colors.length) grow();
+        int v = size * 9;
+        vertices[v] = x1;
+        vertices[v + 1] = y1;
+        vertices[v + 2] = z1;
+        vertices[v + 3] = x2;
+        vertices[v + 4] = y2;
+        vertices[v + 5] = z2;
+        vertices[v + 6] = x3;
+        vertices[v + 7] = y3;
+        vertices[v + 8] = z3;
+        colors[size] = rgb;
+        angles[size] = angle;
+
+        int b = size * 4;
+        if(Rasterizer.inGuardBand(x1, y1) && Rasterizer.inGuardBand(x2, y2) && Rasterizer.inGuardBand(x3, y3)) {
+            // from the snapped coordinates, as the rasterizer covers a vertex at
+            // 63.999 up to pixel 64, and the bins must not miss that pixel
+            long fx1 = Rasterizer.snap(x1), fy1 = Rasterizer.snap(y1);
+            long fx2 = Rasterizer.snap(x2), fy2 = Rasterizer.snap(y2);
+            long fx3 = Rasterizer.snap(x3), fy3 = Rasterizer.snap(y3);
+            bounds[b] = Rasterizer.ceilPixel(Math.min(fx1, Math.min(fx2, fx3)));
+            bounds[b + 1] = Rasterizer.ceilPixel(Math.min(fy1, Math.min(fy2, fy3)));
+            bounds[b + 2] = Rasterizer.floorPixel(Math.max(fx1, Math.max(fx2, fx3)));
+            bounds[b + 3] = Rasterizer.floorPixel(Math.max(fy1, Math.max(fy2, fy3)));
+        } else {
+            // the rasterizer draws nothing of it, an empty box keeps it out of every bin
+            bounds[b] = bounds[b + 1] = 0;
+            bounds[b + 2] = bounds[b + 3] = -1;
+        }
+        size++;
+    }
+
+    /**
+     * Replaces the color of every stored triangle by its flat shade.
+     */
+    void shade() {
+        int[] colors = this.colors;
+        double[] angles = this.angles;
+        for(int i = 0; i < size; i++) {
+            colors[i] = Shading.shade(colors[i], angles[i]);
+        }
+    }
+
+    int minX(int index) {
+        return bounds[index * 4];
+    }
+
+    int minY(int index) {
+        return bounds[index * 4 + 1];
+    }
+
+    int maxX(int index) {
+        return bounds[index * 4 + 2];
+    }
+
+    int maxY(int index) {
+        return bounds[index * 4 + 3];
+    }
+
+    /**
+     * Rasterizes one of the stored triangles, clipped to the given rectangle.
+     * @return The number of pixels written
+     */
+    int fill(int index, Rasterizer rasterizer, RenderTarget target,
+             int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        int v = index * 9;
+        double[] d = vertices;
+        return rasterizer.fill(target,
+                d[v], d[v + 1], d[v + 2],
+                d[v + 3], d[v + 4], d[v + 5],
+                d[v + 6], d[v + 7], d[v + 8],
+                colors[index],
+                clipMinX, clipMinY, clipMaxX, clipMaxY);
+    }
+
+    private void grow() {
+        int capacity = colors.length * 2;
+        vertices = Arrays.copyOf(vertices, capacity * 9);
+        colors = Arrays.copyOf(colors, capacity);
+        angles = Arrays.copyOf(angles, capacity);
+        bounds = Arrays.copyOf(bounds, capacity * 4);
+    }
+}
@@ -0,0 +1,80 @@
+package com.spiritlight.rendertest.render;
+
+/**
+ * Flat shading of packed colors in linear light, on lookup tables instead
+ * of {@link Math#pow(double, double)}.
+ * <p>
+ *     A channel is linearized by raising it to the power of {@value #GAMMA},
+ *     scaled by the amount of light, and brought back by the inverse power.
+ *     Linearizing is a plain 256-entry table. Going back is done on a coarser,
+ *     quantized table giving the closest channel at or below each step, which
+ *     is then corrected against the forward table, so the result is the exact
+ *     largest channel whose linear value does not exceed the scaled one.
+ * </p>
+ */
+public final class Shading {
+    public static final double GAMMA = 2.4;
+
+    private static final double[] LINEAR = new double[256];
+
+    // 4096 steps keep the correction below a handful of steps in the darks
+    // and a single one everywhere else
+    private static final int INVERSE_STEPS = 1 << 12;
+    private static final short[] INVERSE = new short[INVERSE_STEPS + 1];
+    private static final double TO_STEP;
+
+    static {
+        for(int c = 0; c < 256; c++) {
+            LINEAR[c] = Math.pow(c, GAMMA);
+        }
+        TO_STEP = INVERSE_STEPS / LINEAR[255];
+        int c = 0;
+        for(int step = 0; step <= INVERSE_STEPS; step++) {
+            double linear = step / TO_STEP;
+            while(c < 255 && LINEAR[c + 1] <= linear) c++;
+            INVERSE[step] = (short) c;
+        }
+    }
+
+    private Shading() {}
+
+    /**
+     * Shades a packed RGB color.
+     * @param rgb The color to shade, alpha is ignored
+     * @param shade The amount of light, from 0 to 1
+     * @return The shaded color as packed, opaque ARGB
+     */
+    public static int shade(int rgb, double shade) {
+        // also takes care of NaN
+        if(!(shade > 0)) return 0xFF000000;
+        int red = delinearize(LINEAR[(rgb >> 16) & 0xFF] * shade);
+        int green = delinearize(LINEAR[(rgb >> 8) & 0xFF] * shade);
+        int blue = delinearize(LINEAR[rgb & 0xFF] * shade);
+        return 0xFF000000 | red << 16 | green << 8 | blue;
+    }
+
+    /**
+     * @param channel An 8-bit color channel
+     * @return the channel in linear light, from 0 to 255<sup>{@value #GAMMA}</sup>
+     */
+    public static double linearize(int channel) {
+        return LINEAR[channel & 0xFF];
+    }
+
+    /**
+     * Converts a linear value back to an 8-bit channel, rounding down.
+     * Values past the brightest channel are clamped to 255.
+     * @param linear The linear value
+     * @return the largest channel whose linear value is at most the given one
+     */
+    public static int delinearize(double linear) {
+        if(!(linear > 0)) return 0;
+        if(linear >= LINEAR[255]) return 255;
+        int c = INVERSE[(int) (linear * TO_STEP)];
+        // the step may be off by one ulp either way, and the table only
+        // knows where each step begins
+        while(c > 0 && LINEAR[c] > linear) c--;
+        while(LINEAR[c + 1] <= linear) c++;
+        return c;
+    }
+}
@@ -0,0 +1,133 @@
+package com.spiritlight.rendertest.render;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts screen triangles into square screen tiles and rasterizes the
+ * tiles in parallel.
+ * <p>
+ *     Each tile only ever writes the pixels inside its own rectangle, so
+ *     tiles never touch the same part of the color or depth buffer and no
+ *     locking is needed. Within a tile, triangles are drawn in submission
+ *     order, which keeps the output identical to a serial render.
+ * </p>
+ */
+final class TileBinner {
+    private final int tileSize;
+
+    private int tilesX;
+    private int tilesY;
+
+    // per tile list of triangle indices, kept across frames
+    private int[][] bins = new int[0][];
+    private int[] binSizes = new int[0];
+
+    TileBinner(int tileSize) {
+        if(tileSize <= 0) throw new IllegalArgumentException("Invalid tile size of " + tileSize);
+        this.tileSize = tileSize;
+    }
+
+    int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Bins every triangle into the tiles its bounding box overlaps.
+     */
+    void bin(ScreenTriangles triangles, int width, int height) {
+        tilesX = (width + tileSize - 1) / tileSize;
+        tilesY = (height + tileSize - 1) / tileSize;
+        int tiles = tilesX * tilesY;
+        if(bins.length < tiles) {
+            bins = Arrays.copyOf(bins, tiles);
+            binSizes = new int[tiles];
+        }
+        Arrays.fill(binSizes, 0, tiles, 0);
+
+        for(int i = 0; i < triangles.size(); i++) {
+            int minX = Math.max(0, triangles.minX(i));
+            int minY = Math.max(0, triangles.minY(i));
+            int maxX = Math.min(width - 1, triangles.maxX(i));
+            int maxY = Math.min(height - 1, triangles.maxY(i));
+            if(minX > maxX || minY > maxY) continue;
+
+            int tileMaxX = maxX / tileSize;
+            int tileMaxY = maxY / tileSize;
+            for(int ty = minY / tileSize; ty <= tileMaxY; ty++) {
+                for(int tx = minX / tileSize; tx <= tileMaxX; tx++) {
+                    add(ty * tilesX + tx, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rasterizes all binned tiles on the given pool, and waits for them to finish.
+     * @return The number of pixels written
+     */
+    long rasterize(ForkJoinPool pool, ScreenTriangles triangles, Rasterizer rasterizer, RenderTarget target) {
+        TileTask task = new TileTask(triangles, rasterizer, target, 0, tilesX * tilesY);
+        pool.invoke(task);
+        return task.written;
+    }
+
+    private void add(int tile, int triangle) {
+        int[] bin = bins[tile];
+        int size = binSizes[tile];
+        if(bin == null) {
+            bin = bins[tile] = new int[16];
+        } else if(size == bin.length) {
+            bin = bins[tile] = Arrays.copyOf(bin, size * 2);
+        }
+        bin[size] = triangle;
+        binSizes[tile] = size + 1;
+    }
+
+    private long drawTile(int tile, ScreenTriangles triangles, Rasterizer rasterizer, RenderTarget target) {
+        int size = binSizes[tile];
+        if(size == 0) return 0;
+        int[] bin = bins[tile];
+
+        int clipMinX = (tile % tilesX) * tileSize;
+        int clipMinY = (tile / tilesX) * tileSize;
+        int clipMaxX = Math.min(target.getWidth(), clipMinX + tileSize) - 1;
+        int clipMaxY = Math.min(target.getHeight(), clipMinY + tileSize) - 1;
+
+        long written = 0;
+        for(int i = 0; i < size; i++) {
+            written += triangles.fill(bin[i], rasterizer, target, clipMinX, clipMinY, clipMaxX, clipMaxY);
+        }
+        return written;
+    }
+
+    private class TileTask extends RecursiveAction {
+        private final ScreenTriangles triangles;
+        private final Rasterizer rasterizer;
+        private final RenderTarget target;
+        private final int from, to;
+        private long written;
+
+        private TileTask(ScreenTriangles triangles, Rasterizer rasterizer, RenderTarget target, int from, int to) {
+            this.triangles = triangles;
+            this.rasterizer = rasterizer;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                written = drawTile(from, triangles, rasterizer, target);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            TileTask left = new TileTask(triangles, rasterizer, target, from, mid);
+            TileTask right = new TileTask(triangles, rasterizer, target, mid, to);
+            invokeAll(left, right);
+            written = left.written + right.written;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.spiritlight.rendertest.render;
+
+import com.spiritlight.rendertest.math.Mat3;
+import com.spiritlight.rendertest.objects.Mesh;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link Kernels} running several vertices or pixels per operation on the
+ * vector API. Only ever loaded through {@link Kernels#vector()}, which makes
+ * sure the incubator module is present first.
+ * <p>
+ *     Pixels are processed in as many lanes as fit a preferred double vector,
+ *     e.g. 4 on AVX2 or 8 on AVX-512. Since edge functions are linear, a chunk
+ *     is fully inside the triangle when its first and last pixel are, which
+ *     is checked on the fixed-point values directly; only those chunks take
+ *     the vector depth test. Chunks along the edges, partly hidden ones and
+ *     the tail go through the scalar loop, as reading masks lane by lane,
+ *     64-bit integer lanes and casting masks between shapes are not
+ *     intrinsified everywhere and end up boxing vectors.
+ * </p>
+ */
+final class VectorKernels implements Kernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    static {
+        if(DOUBLES.length() < 2) throw new UnsupportedOperationException("no usable vector shape");
+    }
+
+    private static final DoubleVector DOUBLE_IOTA = DoubleVector.zero(DOUBLES).addIndex(1);
+
+    VectorKernels() {}
+
+    @Override
+    public void transform(Mesh mesh, Mat3 matrix, double tx, double ty, double tz,
+                          double[] outX, double[] outY, double[] outZ) {
+        int n = mesh.getVertexCount();
+        if(outX.length < n || outY.length < n || outZ.length < n) throw new IllegalArgumentException("output arrays hold less than " + n + " vertices");
+        double[] x = mesh.getPositionsX(), y = mesh.getPositionsY(), z = mesh.getPositionsZ();
+
+        int lanes = DOUBLES.length();
+        int bound = DOUBLES.loopBound(n);
+        int i = 0;
+        for(; i < bound; i += lanes) {
+            DoubleVector vx = DoubleVector.fromArray(DOUBLES, x, i);
+            DoubleVector vy = DoubleVector.fromArray(DOUBLES, y, i);
+            DoubleVector vz = DoubleVector.fromArray(DOUBLES, z, i);
+            // same order of operations as the scalar transform, so results match exactly
+            vx.mul(matrix.m00).add(vy.mul(matrix.m01)).add(vz.mul(matrix.m02)).add(tx).intoArray(outX, i);
+            vx.mul(matrix.m10).add(vy.mul(matrix.m11)).add(vz.mul(matrix.m12)).add(ty).intoArray(outY, i);
+            vx.mul(matrix.m20).add(vy.mul(matrix.m21)).add(vz.mul(matrix.m22)).add(tz).intoArray(outZ, i);
+        }
+        for(; i < n; i++) {
+            double vx = x[i], vy = y[i], vz = z[i];
+            outX[i] = matrix.m00 * vx + matrix.m01 * vy + matrix.m02 * vz + tx;
+            outY[i] = matrix.m10 * vx + matrix.m11 * vy + matrix.m12 * vz + ty;
+            outZ[i] = matrix.m20 * vx + matrix.m21 * vy + matrix.m22 * vz + tz;
+        }
+    }
+
+    @Override
+    public int fillSpan(int[] color, double[] depth, int index, int x, int count,
+                        long w1, long w2, long w3, long step1, long step2, long step3,
+                        double zRow, double dzdx, int rgb) {
+        int lanes = DOUBLES.length();
+        if(count < lanes) {
+            return Kernels.scalar().fillSpan(color, depth, index, x, count,
+                    w1, w2, w3, step1, step2, step3, zRow, dzdx, rgb);
+        }
+
+        // nothing vector typed is carried from one iteration to the next, and only
+        // full, unmasked loads and stores are used; both keep C2 from boxing vectors
+        int written = 0;
+        int i = 0;
+        int last = lanes - 1;
+        for(; i <= count - lanes; i += lanes) {
+            long e1 = w1 + i * step1, e2 = w2 + i * step2, e3 = w3 + i * step3;
+            // edge functions are linear, so a chunk lies entirely inside the
+            // triangle exactly when its first and last pixel both do
+            boolean inside = (e1 | e2 | e3) >= 0
+                    && ((e1 + last * step1) | (e2 + last * step2) | (e3 + last * step3)) >= 0;
+            if(!inside) {
+                // along the edges; reading a mask lane by lane isn't intrinsified
+                // on every JDK, so the scalar loop takes these chunks
+                written += Kernels.scalar().fillSpan(color, depth, index + i, x + i, lanes,
+                        e1, e2, e3, step1, step2, step3, zRow, dzdx, rgb);
+                continue;
+            }
+
+            int at = index + i;
+            DoubleVector z = DOUBLE_IOTA.add(x + i).mul(dzdx).add(zRow);
+            DoubleVector stored = DoubleVector.fromArray(DOUBLES, depth, at);
+            VectorMask<Double> closer = stored.compare(VectorOperators.LT, z);
+            int passed = closer.trueCount();
+            if(passed == 0) continue;
+
+            if(passed == lanes) {
+                z.intoArray(depth, at);
+                for(int k = at, end = at + lanes; k < end; k++) {
+                    color[k] = rgb;
+                }
+                written += lanes;
+            } else {
+                // partly hidden, same story as the edges
+                written += Kernels.scalar().fillSpan(color, depth, at, x + i, lanes,
+                        e1, e2, e3, step1, step2, step3, zRow, dzdx, rgb);
+            }
+        }
+
+        // whatever doesn't fill a whole vector
+        if(i < count) {
+            written += Kernels.scalar().fillSpan(color, depth, index + i, x + i, count - i,
+                    w1 + i * step1, w2 + i * step2, w3 + i * step3, step1, step2, step3,
+                    zRow, dzdx, rgb);
+        }
+        return written;
+    }
+
+    @Override
+    public int fillSpan(int[] color, float[] depth, int index, int x, int count,
+                        long w1, long w2, long w3, long step1, long step2, long step3,
+                        double zRow, double dzdx, int rgb) {
+        // narrowing double lanes to float lanes isn't intrinsified everywhere
+        // either, the scalar loop is the faster one here
+        return Kernels.scalar().fillSpan(color, depth, index, x, count,
+                w1, w2, w3, step1, step2, step3, zRow, dzdx, rgb);
+    }
+}
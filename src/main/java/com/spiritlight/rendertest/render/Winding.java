@@ -0,0 +1,12 @@
+package com.spiritlight.rendertest.render;
+
+/**
+ * The order in which the vertices of a triangle appear on screen, used
+ * to tell front faces from back faces. Screen space has y pointing down,
+ * as in the render target.
+ * @see Renderer#setFrontFace(Winding)
+ */
+public enum Winding {
+    CLOCKWISE,
+    COUNTER_CLOCKWISE
+}
@@ -0,0 +1,541 @@
+package com.spiritlight.rendertest.scene;
+
+import com.spiritlight.rendertest.math.Mat3;
+import com.spiritlight.rendertest.math.Vec3;
+import com.spiritlight.rendertest.objects.Mesh;
+import com.spiritlight.rendertest.objects.Triangle;
+import com.spiritlight.rendertest.render.Camera;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A bounding volume hierarchy over the triangles of a {@link Mesh}, for
+ * ray picking and frustum queries in logarithmic rather than linear time.
+ * <p>
+ *     The tree is built top-down, splitting every node where the surface
+ *     area heuristic estimates the cheapest traversal, evaluated over a fixed
+ *     number of bins per node. It is stored flattened in depth-first order:
+ *     the left child of a node directly follows it, and only the index of
+ *     the right child is kept. Leaves refer to a range of a permutation of
+ *     the triangle indices.
+ * </p>
+ * <p>
+ *     The hierarchy reads positions from the mesh it was built over. When
+ *     vertices move, {@link #refit()} updates the bounds without changing
+ *     the tree, which stays correct, but only stays efficient as long as
+ *     the movement is moderate; rebuild when it no longer is.
+ * </p>
+ * Queries don't modify the hierarchy and may run concurrently, but not
+ * concurrently with {@link #refit()}.
+ */
+public final class Bvh {
+    private static final int BINS = 16;
+    private static final int MAX_LEAF_SIZE = 8;
+    // cost of visiting a node, relative to intersecting a triangle
+    private static final double TRAVERSAL_COST = 1;
+
+    private final Mesh mesh;
+
+    // triangle indices, reordered so every leaf covers a contiguous range
+    private final int[] order;
+    // min x, y, z and max x, y, z per node
+    private double[] bounds;
+    // leaves: the first index into order; inner nodes: the right child
+    private int[] offsets;
+    // leaves: the triangle count; inner nodes: 0
+    private int[] counts;
+    private int nodeCount;
+    private int depth;
+
+    private Bvh(Mesh mesh) {
+        this.mesh = mesh;
+        int n = mesh.getTriangleCount();
+        this.order = new int[n];
+        for(int i = 0; i < n; i++) order[i] = i;
+        int capacity = Math.max(1, 2 * n - 1);
+        this.bounds = new double[capacity * 6];
+        this.offsets = new int[capacity];
+        this.counts = new int[capacity];
+    }
+
+    /**
+     * Builds a hierarchy over a mesh. Triangle indices reported by
+     * queries are indices into the mesh.
+     */
+    public static Bvh build(Mesh mesh) {
+        Bvh bvh = new Bvh(mesh);
+        new Builder(bvh).build();
+        return bvh;
+    }
+
+    /**
+     * Builds a hierarchy over a list of triangles. Triangle indices
+     * reported by queries are indices into the list.
+     */
+    public static Bvh build(List<Triangle> triangles) {
+        return build(Mesh.fromTriangles(triangles));
+    }
+
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the number of nodes on the longest path from the root to a leaf
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Recomputes all bounds from the current vertex positions of the mesh,
+     * keeping the tree itself.
+     */
+    public void refit() {
+        // children always come after their parent, so going backwards
+        // every child is done before its parent
+        for(int node = nodeCount - 1; node >= 0; node--) {
+            int b = node * 6;
+            if(counts[node] > 0) {
+                Arrays.fill(bounds, b, b + 3, Double.POSITIVE_INFINITY);
+                Arrays.fill(bounds, b + 3, b + 6, Double.NEGATIVE_INFINITY);
+                for(int i = offsets[node], end = i + counts[node]; i < end; i++) {
+                    includeTriangle(bounds, b, order[i]);
+                }
+            } else {
+                int left = (node + 1) * 6, right = offsets[node] * 6;
+                for(int k = 0; k < 3; k++) {
+                    bounds[b + k] = Math.min(bounds[left + k], bounds[right + k]);
+                    bounds[b + 3 + k] = Math.max(bounds[left + 3 + k], bounds[right + 3 + k]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the closest triangle along a ray. Both sides of a triangle are hit.
+     * @param origin The origin of the ray
+     * @param direction The direction of the ray, distances are measured in multiples of it
+     * @param hit Receives the closest hit, left as is if there is none
+     * @return true if a triangle was hit
+     */
+    public boolean raycast(Vec3 origin, Vec3 direction, Hit hit) {
+        return raycast(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z,
+                0, Double.POSITIVE_INFINITY, hit);
+    }
+
+    /**
+     * Finds the triangle along a ray with the smallest distance within a range.
+     * Both sides of a triangle are hit.
+     * @param minDistance The smallest distance considered, may be negative
+     * @param maxDistance The largest distance considered
+     * @param hit Receives the closest hit, left as is if there is none
+     * @return true if a triangle was hit
+     */
+    public boolean raycast(double ox, double oy, double oz, double dx, double dy, double dz,
+                           double minDistance, double maxDistance, Hit hit) {
+        if(nodeCount == 0) return false;
+        double invX = 1 / dx, invY = 1 / dy, invZ = 1 / dz;
+        double best = maxDistance;
+        int found = -1;
+        double foundU = 0, foundV = 0;
+        double[] vx = mesh.getPositionsX(), vy = mesh.getPositionsY(), vz = mesh.getPositionsZ();
+        int[] indices = mesh.getIndices();
+
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while(top > 0) {
+            int node = stack[--top];
+            // checked again, the closest hit may have moved since it was pushed
+            if(!(entry(node, ox, oy, oz, invX, invY, invZ, minDistance, best) <= best)) continue;
+            int count = counts[node];
+            if(count == 0) {
+                // visit the closer child first, so the farther one
+                // is more likely to be skipped
+                int left = node + 1, right = offsets[node];
+                double leftEntry = entry(left, ox, oy, oz, invX, invY, invZ, minDistance, best);
+                double rightEntry = entry(right, ox, oy, oz, invX, invY, invZ, minDistance, best);
+                // a missed box has no entry, and fails every comparison
+                if(leftEntry <= rightEntry) {
+                    stack[top++] = right;
+                    stack[top++] = left;
+                } else {
+                    if(leftEntry <= best) stack[top++] = left;
+                    if(rightEntry <= best) stack[top++] = right;
+                }
+                continue;
+            }
+            for(int i = offsets[node], end = i + count; i < end; i++) {
+                int t = order[i];
+                int i1 = indices[t * 3], i2 = indices[t * 3 + 1], i3 = indices[t * 3 + 2];
+                // Möller-Trumbore
+                double e1x = vx[i2] - vx[i1], e1y = vy[i2] - vy[i1], e1z = vz[i2] - vz[i1];
+                double e2x = vx[i3] - vx[i1], e2y = vy[i3] - vy[i1], e2z = vz[i3] - vz[i1];
+                double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+                double det = e1x * px + e1y * py + e1z * pz;
+                if(det == 0) continue;
+                double inv = 1 / det;
+                double sx = ox - vx[i1], sy = oy - vy[i1], sz = oz - vz[i1];
+                double u = (sx * px + sy * py + sz * pz) * inv;
+                if(u < 0 || u > 1) continue;
+                double qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+                double v = (dx * qx + dy * qy + dz * qz) * inv;
+                if(v < 0 || u + v > 1) continue;
+                double distance = (e2x * qx + e2y * qy + e2z * qz) * inv;
+                if(distance < minDistance || distance >= best) continue;
+                best = distance;
+                found = t;
+                foundU = u;
+                foundV = v;
+            }
+        }
+        if(found < 0) return false;
+        hit.triangle = found;
+        hit.distance = best;
+        hit.u = foundU;
+        hit.v = foundV;
+        return true;
+    }
+
+    /**
+     * Finds the closest triangle drawn at a pixel, as a
+     * {@link com.spiritlight.rendertest.render.Renderer} would draw the mesh
+     * into a target of the given size. The distance of the hit is the
+     * negated screen depth.
+     * @return true if a triangle was hit
+     */
+    public boolean pick(Camera camera, int width, int height, double screenX, double screenY, Hit hit) {
+        // screen space is the camera transform plus half the target size, and
+        // the transform is a rotation, so its transpose takes points back
+        Mat3 inverse = camera.getTransform(new Mat3()).transpose();
+        Vec3 origin = inverse.transform(screenX - width / 2d, screenY - height / 2d, 0, new Vec3());
+        // larger depth is closer, so walk towards smaller depth
+        Vec3 direction = inverse.transform(0, 0, -1, new Vec3());
+        return raycast(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, hit);
+    }
+
+    /**
+     * Reports every triangle whose bounding box is at least partly inside the frustum.
+     * Triangles near the edges may be reported while lying just outside.
+     * @param frustum The volume to query
+     * @param action Receives the index of each triangle, in no particular order
+     * @return the number of triangles reported
+     */
+    public int query(Frustum frustum, IntConsumer action) {
+        if(nodeCount == 0) return 0;
+        int reported = 0;
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while(top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            int result = frustum.classify(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+            if(result == Frustum.OUTSIDE) continue;
+            if(result == Frustum.INSIDE) {
+                reported += reportAll(node, action);
+                continue;
+            }
+            int count = counts[node];
+            if(count == 0) {
+                stack[top++] = offsets[node];
+                stack[top++] = node + 1;
+                continue;
+            }
+            for(int i = offsets[node], end = i + count; i < end; i++) {
+                int t = order[i];
+                if(frustum.classify(minOf(t, mesh.getPositionsX()), minOf(t, mesh.getPositionsY()), minOf(t, mesh.getPositionsZ()),
+                        maxOf(t, mesh.getPositionsX()), maxOf(t, mesh.getPositionsY()), maxOf(t, mesh.getPositionsZ())) != Frustum.OUTSIDE) {
+                    action.accept(t);
+                    reported++;
+                }
+            }
+        }
+        return reported;
+    }
+
+    // the subtree of a node covers a contiguous range of the order: from its
+    // leftmost leaf to its rightmost one
+    private int reportAll(int node, IntConsumer action) {
+        int first = node;
+        while(counts[first] == 0) first = first + 1;
+        int last = node;
+        while(counts[last] == 0) last = offsets[last];
+        int from = offsets[first], to = offsets[last] + counts[last];
+        for(int i = from; i < to; i++) {
+            action.accept(order[i]);
+        }
+        return to - from;
+    }
+
+    /**
+     * Gets the distance at which a ray enters the box of a node, within the given range.
+     * @return the entry distance, or NaN if the box is missed
+     */
+    private double entry(int node, double ox, double oy, double oz,
+                         double invX, double invY, double invZ, double near, double far) {
+        int b = node * 6;
+        // NaN from a ray starting on a slab plane fails every comparison,
+        // which leaves that slab unbounded as it should be
+        double t0 = (bounds[b] - ox) * invX, t1 = (bounds[b + 3] - ox) * invX;
+        if(t0 > t1) { double t = t0; t0 = t1; t1 = t; }
+        if(t0 > near) near = t0;
+        if(t1 < far) far = t1;
+        t0 = (bounds[b + 1] - oy) * invY;
+        t1 = (bounds[b + 4] - oy) * invY;
+        if(t0 > t1) { double t = t0; t0 = t1; t1 = t; }
+        if(t0 > near) near = t0;
+        if(t1 < far) far = t1;
+        t0 = (bounds[b + 2] - oz) * invZ;
+        t1 = (bounds[b + 5] - oz) * invZ;
+        if(t0 > t1) { double t = t0; t0 = t1; t1 = t; }
+        if(t0 > near) near = t0;
+        if(t1 < far) far = t1;
+        return near <= far ? near : Double.NaN;
+    }
+
+    private double minOf(int triangle, double[] axis) {
+        int[] indices = mesh.getIndices();
+        return Math.min(axis[indices[triangle * 3]], Math.min(axis[indices[triangle * 3 + 1]], axis[indices[triangle * 3 + 2]]));
+    }
+
+    private double maxOf(int triangle, double[] axis) {
+        int[] indices = mesh.getIndices();
+        return Math.max(axis[indices[triangle * 3]], Math.max(axis[indices[triangle * 3 + 1]], axis[indices[triangle * 3 + 2]]));
+    }
+
+    private void includeTriangle(double[] box, int b, int triangle) {
+        double[] x = mesh.getPositionsX(), y = mesh.getPositionsY(), z = mesh.getPositionsZ();
+        int[] indices = mesh.getIndices();
+        for(int k = 0; k < 3; k++) {
+            int v = indices[triangle * 3 + k];
+            box[b] = Math.min(box[b], x[v]);
+            box[b + 1] = Math.min(box[b + 1], y[v]);
+            box[b + 2] = Math.min(box[b + 2], z[v]);
+            box[b + 3] = Math.max(box[b + 3], x[v]);
+            box[b + 4] = Math.max(box[b + 4], y[v]);
+            box[b + 5] = Math.max(box[b + 5], z[v]);
+        }
+    }
+
+    /**
+     * A ray hit, reused across queries.
+     */
+    public static final class Hit {
+        /**
+         * The index of the triangle hit, or -1 before anything was hit
+         */
+        public int triangle = -1;
+        /**
+         * The distance along the ray, in multiples of its direction
+         */
+        public double distance;
+        /**
+         * The barycentric coordinates of the hit, relative to the second and third vertex
+         */
+        public double u, v;
+
+        @Override
+        public String toString() {
+            return "Hit{triangle=" + triangle + ", distance=" + distance + ", u=" + u + ", v=" + v + "}";
+        }
+    }
+
+    /**
+     * Binned SAH construction, with scratch space that is only needed while building.
+     */
+    private static final class Builder {
+        private final Bvh bvh;
+        // bounds and centroid of the triangle at each position of the order,
+        // moved along with it so partitioning walks memory in sequence
+        private final double[] boxes;
+        private final double[] centroids;
+
+        // per bin bounds and counts, and the cost sweep from the right
+        private final double[] binBoxes = new double[BINS * 6];
+        private final int[] binCounts = new int[BINS];
+        private final double[] rightAreas = new double[BINS];
+        private final int[] rightCounts = new int[BINS];
+        private final double[] sweep = new double[6];
+
+        private Builder(Bvh bvh) {
+            this.bvh = bvh;
+            int n = bvh.order.length;
+            this.boxes = new double[n * 6];
+            this.centroids = new double[n * 3];
+            for(int t = 0; t < n; t++) {
+                empty(boxes, t * 6);
+                bvh.includeTriangle(boxes, t * 6, t);
+                for(int k = 0; k < 3; k++) {
+                    centroids[t * 3 + k] = (boxes[t * 6 + k] + boxes[t * 6 + 3 + k]) / 2;
+                }
+            }
+        }
+
+        void build() {
+            if(bvh.order.length == 0) return;
+            bvh.nodeCount = 0;
+            bvh.depth = build(0, bvh.order.length);
+        }
+
+        /**
+         * Builds the node for a range of the order.
+         * @return the depth of the subtree
+         */
+        private int build(int start, int end) {
+            int node = bvh.nodeCount++;
+            int b = node * 6;
+            double[] bounds = bvh.bounds;
+            empty(bounds, b);
+            double cMinX = Double.POSITIVE_INFINITY, cMinY = Double.POSITIVE_INFINITY, cMinZ = Double.POSITIVE_INFINITY;
+            double cMaxX = Double.NEGATIVE_INFINITY, cMaxY = Double.NEGATIVE_INFINITY, cMaxZ = Double.NEGATIVE_INFINITY;
+            for(int i = start; i < end; i++) {
+                include(bounds, b, boxes, i * 6);
+                double cx = centroids[i * 3], cy = centroids[i * 3 + 1], cz = centroids[i * 3 + 2];
+                if(cx < cMinX) cMinX = cx;
+                if(cx > cMaxX) cMaxX = cx;
+                if(cy < cMinY) cMinY = cy;
+                if(cy > cMaxY) cMaxY = cy;
+                if(cz < cMinZ) cMinZ = cz;
+                if(cz > cMaxZ) cMaxZ = cz;
+            }
+
+            int count = end - start;
+            // split along the axis the centroids spread the most on
+            int axis = 0;
+            double min = cMinX, extent = cMaxX - cMinX;
+            if(cMaxY - cMinY > extent) { axis = 1; min = cMinY; extent = cMaxY - cMinY; }
+            if(cMaxZ - cMinZ > extent) { axis = 2; min = cMinZ; extent = cMaxZ - cMinZ; }
+
+            int mid;
+            if(count <= 1 || !(extent > 0)) {
+                if(count <= MAX_LEAF_SIZE) return leaf(node, start, count);
+                // all centroids in one spot, no heuristic can separate them
+                mid = (start + end) >>> 1;
+            } else {
+                mid = split(start, end, axis, min, extent, area(bounds, b));
+                if(mid < 0) return leaf(node, start, count);
+            }
+
+            bvh.counts[node] = 0;
+            int left = build(start, mid);
+            bvh.offsets[node] = bvh.nodeCount;
+            int right = build(mid, end);
+            return 1 + Math.max(left, right);
+        }
+
+        /**
+         * Finds the cheapest binned split and partitions the range around it.
+         * @return the start of the right half, or -1 if a leaf is cheaper
+         */
+        private int split(int start, int end, int axis, double min, double extent, double nodeArea) {
+            Arrays.fill(binCounts, 0);
+            for(int k = 0; k < BINS; k++) empty(binBoxes, k * 6);
+            double scale = BINS / extent;
+            for(int i = start; i < end; i++) {
+                int bin = bin(i, axis, min, scale);
+                binCounts[bin]++;
+                include(binBoxes, bin * 6, boxes, i * 6);
+            }
+
+            // sweep from the right, then from the left evaluating every split
+            double[] box = sweep;
+            empty(box, 0);
+            int count = 0;
+            for(int k = BINS - 1; k > 0; k--) {
+                include(box, 0, binBoxes, k * 6);
+                count += binCounts[k];
+                rightAreas[k] = area(box, 0);
+                rightCounts[k] = count;
+            }
+            empty(box, 0);
+            count = 0;
+            double bestCost = Double.POSITIVE_INFINITY;
+            int bestSplit = -1;
+            for(int k = 1; k < BINS; k++) {
+                include(box, 0, binBoxes, (k - 1) * 6);
+                count += binCounts[k - 1];
+                if(count == 0 || rightCounts[k] == 0) continue;
+                double cost = area(box, 0) * count + rightAreas[k] * rightCounts[k];
+                if(cost < bestCost) {
+                    bestCost = cost;
+                    bestSplit = k;
+                }
+            }
+
+            int n = end - start;
+            double leafCost = nodeArea * n;
+            if(bestSplit < 0 || (n <= MAX_LEAF_SIZE && TRAVERSAL_COST * nodeArea + bestCost >= leafCost)) {
+                // a leaf is cheaper, or every centroid fell into the same bin
+                return n <= MAX_LEAF_SIZE ? -1 : (start + end) >>> 1;
+            }
+
+            // partition the order around the split
+            int i = start, j = end - 1;
+            while(i <= j) {
+                if(bin(i, axis, min, scale) < bestSplit) {
+                    i++;
+                } else {
+                    swap(i, j--);
+                }
+            }
+            return i;
+        }
+
+        private void swap(int i, int j) {
+            int[] order = bvh.order;
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+            for(int k = 0; k < 6; k++) {
+                double box = boxes[i * 6 + k];
+                boxes[i * 6 + k] = boxes[j * 6 + k];
+                boxes[j * 6 + k] = box;
+            }
+            for(int k = 0; k < 3; k++) {
+                double centroid = centroids[i * 3 + k];
+                centroids[i * 3 + k] = centroids[j * 3 + k];
+                centroids[j * 3 + k] = centroid;
+            }
+        }
+
+        private int bin(int position, int axis, double min, double scale) {
+            int bin = (int) ((centroids[position * 3 + axis] - min) * scale);
+            return Math.min(BINS - 1, Math.max(0, bin));
+        }
+
+        private int leaf(int node, int start, int count) {
+            bvh.offsets[node] = start;
+            bvh.counts[node] = count;
+            return 1;
+        }
+
+        private static void empty(double[] box, int b) {
+            Arrays.fill(box, b, b + 3, Double.POSITIVE_INFINITY);
+            Arrays.fill(box, b + 3, b + 6, Double.NEGATIVE_INFINITY);
+        }
+
+        // plain comparisons rather than Math.min and max, which take care
+        // of NaN and negative zero and are noticeably slower for it
+        private static void include(double[] box, int b, double[] other, int o) {
+            for(int k = 0; k < 3; k++) {
+                double min = other[o + k], max = other[o + 3 + k];
+                if(min < box[b + k]) box[b + k] = min;
+                if(max > box[b + 3 + k]) box[b + 3 + k] = max;
+            }
+        }
+
+        private static double area(double[] box, int b) {
+            double dx = box[b + 3] - box[b], dy = box[b + 4] - box[b + 1], dz = box[b + 5] - box[b + 2];
+            return dx * dy + dy * dz + dz * dx;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.spiritlight.rendertest.scene;
+
+import com.spiritlight.rendertest.math.Mat3;
+import com.spiritlight.rendertest.render.Camera;
+
+/**
+ * A convex volume bounded by planes, used to query a {@link Bvh} for
+ * what is visible. A point is inside when it lies on the positive side
+ * of every plane, that is, {@code a * x + b * y + c * z + d >= 0} holds
+ * for all of them.
+ */
+public final class Frustum {
+    public static final int OUTSIDE = 0;
+    public static final int INTERSECTS = 1;
+    public static final int INSIDE = 2;
+
+    // a, b, c, d per plane
+    private final double[] planes;
+    private final int count;
+
+    /**
+     * Creates a frustum from its planes.
+     * @param planes Four coefficients per plane, {@code a, b, c, d}
+     */
+    public Frustum(double... planes) {
+        if(planes.length % 4 != 0) throw new IllegalArgumentException("plane coefficient count " + planes.length + " is not a multiple of 4");
+        this.planes = planes.clone();
+        this.count = planes.length / 4;
+    }
+
+    /**
+     * Creates the volume a {@link com.spiritlight.rendertest.render.Renderer}
+     * would draw into a target of the given size, with no limit in depth.
+     * @param camera The camera viewing the scene
+     * @param width The width of the target
+     * @param height The height of the target
+     */
+    public static Frustum of(Camera camera, int width, int height) {
+        return of(camera, width, height, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Creates the volume a {@link com.spiritlight.rendertest.render.Renderer}
+     * would draw into a target of the given size, limited to a depth range.
+     * @param camera The camera viewing the scene
+     * @param width The width of the target
+     * @param height The height of the target
+     * @param minDepth The farthest depth, may be negative infinity
+     * @param maxDepth The closest depth, may be positive infinity
+     */
+    public static Frustum of(Camera camera, int width, int height, double minDepth, double maxDepth) {
+        // the projection is orthographic: screen x is the first row of the
+        // camera transform dotted with the point, plus half the width
+        Mat3 m = camera.getTransform(new Mat3());
+        double hw = width / 2d, hh = height / 2d;
+        boolean near = maxDepth != Double.POSITIVE_INFINITY, far = minDepth != Double.NEGATIVE_INFINITY;
+        double[] planes = new double[4 * (4 + (near ? 1 : 0) + (far ? 1 : 0))];
+        int p = 0;
+        p = plane(planes, p, m.m00, m.m01, m.m02, hw);
+        p = plane(planes, p, -m.m00, -m.m01, -m.m02, hw);
+        p = plane(planes, p, m.m10, m.m11, m.m12, hh);
+        p = plane(planes, p, -m.m10, -m.m11, -m.m12, hh);
+        if(far) p = plane(planes, p, m.m20, m.m21, m.m22, -minDepth);
+        if(near) plane(planes, p, -m.m20, -m.m21, -m.m22, maxDepth);
+        return new Frustum(planes);
+    }
+
+    private static int plane(double[] planes, int p, double a, double b, double c, double d) {
+        planes[p] = a;
+        planes[p + 1] = b;
+        planes[p + 2] = c;
+        planes[p + 3] = d;
+        return p + 4;
+    }
+
+    public int getPlaneCount() {
+        return count;
+    }
+
+    public boolean contains(double x, double y, double z) {
+        for(int p = 0; p < planes.length; p += 4) {
+            if(planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Classifies an axis aligned box against this frustum. The test is
+     * conservative: a box near a corner of the frustum may be reported as
+     * intersecting while lying just outside.
+     * @return {@link #OUTSIDE}, {@link #INTERSECTS} or {@link #INSIDE}
+     */
+    public int classify(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        int result = INSIDE;
+        for(int p = 0; p < planes.length; p += 4) {
+            double a = planes[p], b = planes[p + 1], c = planes[p + 2], d = planes[p + 3];
+            // the corners farthest along and against the plane normal
+            double far = a * (a >= 0 ? maxX : minX) + b * (b >= 0 ? maxY : minY) + c * (c >= 0 ? maxZ : minZ) + d;
+            if(far < 0) return OUTSIDE;
+            double near = a * (a >= 0 ? minX : maxX) + b * (b >= 0 ? minY : maxY) + c * (c >= 0 ? minZ : maxZ) + d;
+            if(near < 0) result = INTERSECTS;
+        }
+        return result;
+    }
+}
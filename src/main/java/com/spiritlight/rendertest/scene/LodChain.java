@@ -0,0 +1,186 @@
+package com.spiritlight.rendertest.scene;
+
+import com.spiritlight.rendertest.objects.Mesh;
+import com.spiritlight.rendertest.objects.Triangle;
+import com.spiritlight.rendertest.render.Camera;
+import com.spiritlight.rendertest.render.RenderTarget;
+import com.spiritlight.rendertest.render.Renderer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Levels of detail of one model, from the full mesh down to coarser
+ * ones, with the level to draw picked by how big the model is on screen.
+ * <p>
+ *     The level drawn is the most detailed one that still gives every
+ *     triangle about {@link #setPixelsPerTriangle(double) a few pixels} of
+ *     the area the model covers. Triangles smaller than that mostly cost
+ *     setup without adding anything to the image, so the cost of a frame
+ *     stays about the same however detailed the model is.
+ * </p>
+ * The projection of the {@link Renderer} is orthographic at a fixed number
+ * of pixels per unit, so the area covered is estimated from the bounding
+ * sphere of the model and that scale alone, at most the whole target.
+ */
+public class LodChain {
+    public static final double DEFAULT_RATIO = 0.25;
+    public static final int DEFAULT_MIN_TRIANGLES = 256;
+    public static final double DEFAULT_PIXELS_PER_TRIANGLE = 2;
+
+    private final Mesh[] levels;
+    private final double radius;
+    private volatile double pixelsPerTriangle = DEFAULT_PIXELS_PER_TRIANGLE;
+
+    /**
+     * Creates a chain over existing levels.
+     * @param levels The levels, most detailed first
+     */
+    public LodChain(Mesh... levels) {
+        if(levels.length == 0) throw new IllegalArgumentException("No levels given");
+        for(int i = 1; i < levels.length; i++) {
+            if(levels[i].getTriangleCount() > levels[i - 1].getTriangleCount()) {
+                throw new IllegalArgumentException("Level " + i + " has more triangles than the one before");
+            }
+        }
+        this.levels = levels.clone();
+        this.radius = radius(levels[0]);
+    }
+
+    /**
+     * Builds a chain with a quarter of the triangles per level, down to about 256.
+     * @see #build(Mesh, double, int, MeshSimplifier)
+     */
+    public static LodChain build(Mesh mesh) {
+        return build(mesh, DEFAULT_RATIO, DEFAULT_MIN_TRIANGLES, new MeshSimplifier());
+    }
+
+    /**
+     * Builds a chain from a list of triangles.
+     * @see #build(Mesh)
+     */
+    public static LodChain build(List<Triangle> triangles) {
+        return build(Mesh.fromTriangles(triangles));
+    }
+
+    /**
+     * Builds a chain by simplifying a mesh over and over, each level from the one before.
+     * @param mesh The most detailed level
+     * @param ratio The share of triangles each level keeps of the one before
+     * @param minTriangles The count below which no more levels are made
+     * @param simplifier The simplifier making the levels
+     * @return the chain
+     */
+    public static LodChain build(Mesh mesh, double ratio, int minTriangles, MeshSimplifier simplifier) {
+        if(!(ratio > 0 && ratio < 1)) throw new IllegalArgumentException("Invalid ratio of " + ratio);
+        List<Mesh> levels = new ArrayList<>();
+        levels.add(mesh);
+        Mesh level = mesh;
+        while(level.getTriangleCount() * ratio >= minTriangles) {
+            Mesh next = simplifier.simplify(level, (int) (level.getTriangleCount() * ratio));
+            // simplifying stalled, the mesh can't get any coarser
+            if(next.getTriangleCount() >= level.getTriangleCount() * (1 + ratio) / 2) break;
+            levels.add(next);
+            level = next;
+        }
+        return new LodChain(levels.toArray(new Mesh[0]));
+    }
+
+    // the distance of the farthest vertex from the center of the bounds
+    private static double radius(Mesh mesh) {
+        double[] x = mesh.getPositionsX(), y = mesh.getPositionsY(), z = mesh.getPositionsZ();
+        int count = mesh.getVertexCount();
+        if(count == 0) return 0;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < count; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+        double cx = (minX + maxX) / 2, cy = (minY + maxY) / 2, cz = (minZ + maxZ) / 2;
+        double max = 0;
+        for(int i = 0; i < count; i++) {
+            double dx = x[i] - cx, dy = y[i] - cy, dz = z[i] - cz;
+            max = Math.max(max, dx * dx + dy * dy + dz * dz);
+        }
+        return Math.sqrt(max);
+    }
+
+    /**
+     * Sets how many pixels of covered area each drawn triangle should get at least.
+     * @return the chain itself
+     */
+    public LodChain setPixelsPerTriangle(double pixelsPerTriangle) {
+        if(!(pixelsPerTriangle > 0)) throw new IllegalArgumentException("Invalid pixels per triangle of " + pixelsPerTriangle);
+        this.pixelsPerTriangle = pixelsPerTriangle;
+        return this;
+    }
+
+    public double getPixelsPerTriangle() {
+        return pixelsPerTriangle;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public Mesh getLevel(int level) {
+        if(level < 0 || level >= levels.length) throw new IndexOutOfBoundsException("Level " + level + " out of " + levels.length);
+        return levels[level];
+    }
+
+    /**
+     * @return the radius of the bounding sphere of the most detailed level
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Picks the level to draw into a target of the given size, at one pixel per unit.
+     * @see #select(int, int, double)
+     */
+    public int select(int width, int height) {
+        return select(width, height, 1);
+    }
+
+    /**
+     * Picks the level to draw into a target of the given size.
+     * @param scale The {@linkplain Renderer#setScale(double) pixels per unit} drawn at
+     * @return the most detailed level within the triangle budget of the
+     * covered area, or the coarsest level if none is
+     */
+    public int select(int width, int height, double scale) {
+        double r = radius * scale;
+        double area = Math.min(Math.PI * r * r, (double) width * height);
+        double budget = area / pixelsPerTriangle;
+        for(int i = 0; i < levels.length; i++) {
+            if(levels[i].getTriangleCount() <= budget) return i;
+        }
+        return levels.length - 1;
+    }
+
+    /**
+     * Clears the target and renders the level picked for its size into it.
+     * @return the level rendered
+     */
+    public int render(Renderer renderer, Camera camera, RenderTarget target) {
+        int level = select(target.getWidth(), target.getHeight(), renderer.getScale());
+        renderer.render(levels[level], camera, target);
+        return level;
+    }
+
+    /**
+     * Renders the level picked for the size of the target into it, without clearing it first.
+     * @return the level rendered
+     */
+    public int draw(Renderer renderer, Camera camera, RenderTarget target) {
+        int level = select(target.getWidth(), target.getHeight(), renderer.getScale());
+        renderer.draw(levels[level], camera, target);
+        return level;
+    }
+}
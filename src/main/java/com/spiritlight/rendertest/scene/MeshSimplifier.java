@@ -0,0 +1,572 @@
+package com.spiritlight.rendertest.scene;
+
+import com.spiritlight.rendertest.objects.Mesh;
+
+import java.util.Arrays;
+
+/**
+ * Reduces the triangle count of a mesh by quadric error edge collapse
+ * (Garland and Heckbert).
+ * <p>
+ *     Every vertex accumulates the planes of the triangles around it as a
+ *     quadric, which measures the squared distance of a point to all of
+ *     them. Edges are collapsed cheapest first, each into the point that
+ *     minimizes the sum of the quadrics of its two vertices, until the
+ *     target triangle count is reached. Open borders are kept in place by
+ *     extra planes through them, and collapses that would flip a triangle
+ *     or pinch the surface are skipped.
+ * </p>
+ * Vertices at the same position are merged first, so meshes that don't
+ * share vertices between triangles, such as those loaded from STL, can be
+ * simplified too. Triangle colors and two-sided flags are kept.
+ */
+public class MeshSimplifier {
+    private double boundaryWeight = 100;
+    private double maxError = Double.POSITIVE_INFINITY;
+
+    /**
+     * Sets how strongly open borders hold their place, relative to the surface.
+     * @return the simplifier itself
+     */
+    public MeshSimplifier setBoundaryWeight(double boundaryWeight) {
+        if(!(boundaryWeight >= 0)) throw new IllegalArgumentException("Invalid boundary weight of " + boundaryWeight);
+        this.boundaryWeight = boundaryWeight;
+        return this;
+    }
+
+    public double getBoundaryWeight() {
+        return boundaryWeight;
+    }
+
+    /**
+     * Sets the error past which no edge is collapsed, even if the target
+     * count isn't reached. The error is a squared distance, weighted by
+     * the area of the triangles around.
+     * @return the simplifier itself
+     */
+    public MeshSimplifier setMaxError(double maxError) {
+        if(!(maxError >= 0)) throw new IllegalArgumentException("Invalid max error of " + maxError);
+        this.maxError = maxError;
+        return this;
+    }
+
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Simplifies a mesh, leaving it as is.
+     * @param mesh The mesh to simplify
+     * @param targetTriangles The number of triangles to get down to
+     * @return a new mesh with at most as many triangles as the original, and
+     * as close to the target as the mesh and the max error allow
+     */
+    public Mesh simplify(Mesh mesh, int targetTriangles) {
+        if(targetTriangles < 0) throw new IllegalArgumentException("Invalid target of " + targetTriangles + " triangles");
+        Collapse collapse = new Collapse(mesh);
+        collapse.run(targetTriangles);
+        return collapse.toMesh();
+    }
+
+    /**
+     * The state of one simplification.
+     */
+    private final class Collapse {
+        private final Mesh source;
+        // welded vertices
+        private int vertexCount;
+        private double[] x, y, z;
+        private double[] quadrics;
+        private int[] versions;
+        private boolean[] removedVertices;
+        private int[][] adjacent;
+        private int[] adjacentCount;
+
+        private final int[] triangles;
+        private final boolean[] removed;
+        private int live;
+
+        private final EdgeHeap heap = new EdgeHeap();
+        // marks for neighbour sets, a vertex is marked if its mark equals the stamp
+        private int[] marks;
+        private int stamp;
+        // where the last edge evaluated would collapse to
+        private double bestX, bestY, bestZ;
+
+        Collapse(Mesh mesh) {
+            this.source = mesh;
+            int[] remap = weld(mesh);
+            int[] indices = mesh.getIndices();
+            int count = mesh.getTriangleCount();
+            this.triangles = new int[count * 3];
+            this.removed = new boolean[count];
+            for(int t = 0; t < count; t++) {
+                int a = remap[indices[t * 3]], b = remap[indices[t * 3 + 1]], c = remap[indices[t * 3 + 2]];
+                triangles[t * 3] = a;
+                triangles[t * 3 + 1] = b;
+                triangles[t * 3 + 2] = c;
+                if(a == b || b == c || a == c) {
+                    removed[t] = true;
+                } else {
+                    live++;
+                }
+            }
+            buildAdjacency();
+            buildQuadrics();
+            this.marks = new int[vertexCount];
+            for(int t = 0; t < count; t++) {
+                if(removed[t]) continue;
+                for(int k = 0; k < 3; k++) {
+                    int a = triangles[t * 3 + k], b = triangles[t * 3 + (k + 1) % 3];
+                    // each edge is seen from both of its triangles, once is enough
+                    if(a < b || isBoundary(a, b)) push(a, b);
+                }
+            }
+        }
+
+        /**
+         * Merges vertices at the same position, with an open addressing table.
+         * @return the welded index of every original vertex
+         */
+        private int[] weld(Mesh mesh) {
+            double[] sx = mesh.getPositionsX(), sy = mesh.getPositionsY(), sz = mesh.getPositionsZ();
+            int n = mesh.getVertexCount();
+            int[] remap = new int[n];
+            int[] table = new int[Integer.highestOneBit(Math.max(n, 8)) * 4];
+            int mask = table.length - 1;
+            x = new double[n];
+            y = new double[n];
+            z = new double[n];
+            for(int i = 0; i < n; i++) {
+                long h = Double.hashCode(sx[i]) * 31L * 31L + Double.hashCode(sy[i]) * 31L + Double.hashCode(sz[i]);
+                int slot = (int) (h ^ (h >>> 29)) * 0x9E3779B9 & mask;
+                while(true) {
+                    int entry = table[slot] - 1;
+                    if(entry < 0) {
+                        table[slot] = vertexCount + 1;
+                        x[vertexCount] = sx[i];
+                        y[vertexCount] = sy[i];
+                        z[vertexCount] = sz[i];
+                        remap[i] = vertexCount++;
+                        break;
+                    }
+                    if(x[entry] == sx[i] && y[entry] == sy[i] && z[entry] == sz[i]) {
+                        remap[i] = entry;
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+            }
+            versions = new int[vertexCount];
+            removedVertices = new boolean[vertexCount];
+            return remap;
+        }
+
+        private void buildAdjacency() {
+            adjacentCount = new int[vertexCount];
+            for(int t = 0; t < removed.length; t++) {
+                if(removed[t]) continue;
+                for(int k = 0; k < 3; k++) adjacentCount[triangles[t * 3 + k]]++;
+            }
+            adjacent = new int[vertexCount][];
+            for(int v = 0; v < vertexCount; v++) {
+                adjacent[v] = new int[adjacentCount[v]];
+                adjacentCount[v] = 0;
+            }
+            for(int t = 0; t < removed.length; t++) {
+                if(removed[t]) continue;
+                for(int k = 0; k < 3; k++) {
+                    int v = triangles[t * 3 + k];
+                    adjacent[v][adjacentCount[v]++] = t;
+                }
+            }
+        }
+
+        private void buildQuadrics() {
+            quadrics = new double[vertexCount * 10];
+            for(int t = 0; t < removed.length; t++) {
+                if(removed[t]) continue;
+                int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+                double abX = x[b] - x[a], abY = y[b] - y[a], abZ = z[b] - z[a];
+                double acX = x[c] - x[a], acY = y[c] - y[a], acZ = z[c] - z[a];
+                double nx = abY * acZ - abZ * acY, ny = abZ * acX - abX * acZ, nz = abX * acY - abY * acX;
+                double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if(length == 0) continue;
+                // weighted by area, so big triangles weigh more than slivers
+                double area = length / 2;
+                nx /= length;
+                ny /= length;
+                nz /= length;
+                double d = -(nx * x[a] + ny * y[a] + nz * z[a]);
+                for(int k = 0; k < 3; k++) {
+                    addPlane(triangles[t * 3 + k], nx, ny, nz, d, area);
+                }
+                if(boundaryWeight == 0) continue;
+                for(int k = 0; k < 3; k++) {
+                    int p = triangles[t * 3 + k], q = triangles[t * 3 + (k + 1) % 3];
+                    if(isBoundary(p, q)) addBoundary(p, q, nx, ny, nz);
+                }
+            }
+        }
+
+        // a plane through the edge, at a right angle to its triangle
+        private void addBoundary(int p, int q, double nx, double ny, double nz) {
+            double ex = x[q] - x[p], ey = y[q] - y[p], ez = z[q] - z[p];
+            double mx = ey * nz - ez * ny, my = ez * nx - ex * nz, mz = ex * ny - ey * nx;
+            double length = Math.sqrt(mx * mx + my * my + mz * mz);
+            if(length == 0) return;
+            mx /= length;
+            my /= length;
+            mz /= length;
+            double d = -(mx * x[p] + my * y[p] + mz * z[p]);
+            double weight = boundaryWeight * (ex * ex + ey * ey + ez * ez);
+            addPlane(p, mx, my, mz, d, weight);
+            addPlane(q, mx, my, mz, d, weight);
+        }
+
+        private void addPlane(int v, double a, double b, double c, double d, double weight) {
+            int o = v * 10;
+            quadrics[o] += weight * a * a;
+            quadrics[o + 1] += weight * a * b;
+            quadrics[o + 2] += weight * a * c;
+            quadrics[o + 3] += weight * a * d;
+            quadrics[o + 4] += weight * b * b;
+            quadrics[o + 5] += weight * b * c;
+            quadrics[o + 6] += weight * b * d;
+            quadrics[o + 7] += weight * c * c;
+            quadrics[o + 8] += weight * c * d;
+            quadrics[o + 9] += weight * d * d;
+        }
+
+        /**
+         * Checks whether only one live triangle has both vertices.
+         */
+        private boolean isBoundary(int a, int b) {
+            int shared = 0;
+            int[] list = adjacent[a];
+            for(int i = 0; i < adjacentCount[a]; i++) {
+                int t = list[i];
+                if(!removed[t] && contains(t, b) && ++shared > 1) return false;
+            }
+            return shared == 1;
+        }
+
+        private boolean contains(int t, int v) {
+            return triangles[t * 3] == v || triangles[t * 3 + 1] == v || triangles[t * 3 + 2] == v;
+        }
+
+        private void push(int a, int b) {
+            double cost = evaluate(a, b);
+            heap.push(cost, a, b, versions[a], versions[b]);
+        }
+
+        /**
+         * Finds where an edge would best collapse to, into the best fields.
+         * @return the error of collapsing it there
+         */
+        private double evaluate(int a, int b) {
+            int oa = a * 10, ob = b * 10;
+            double q0 = quadrics[oa] + quadrics[ob], q1 = quadrics[oa + 1] + quadrics[ob + 1];
+            double q2 = quadrics[oa + 2] + quadrics[ob + 2], q3 = quadrics[oa + 3] + quadrics[ob + 3];
+            double q4 = quadrics[oa + 4] + quadrics[ob + 4], q5 = quadrics[oa + 5] + quadrics[ob + 5];
+            double q6 = quadrics[oa + 6] + quadrics[ob + 6], q7 = quadrics[oa + 7] + quadrics[ob + 7];
+            double q8 = quadrics[oa + 8] + quadrics[ob + 8], q9 = quadrics[oa + 9] + quadrics[ob + 9];
+
+            // the minimum of the quadric, where its gradient is zero
+            double c00 = q4 * q7 - q5 * q5, c01 = q2 * q5 - q1 * q7, c02 = q1 * q5 - q2 * q4;
+            double det = q0 * c00 + q1 * c01 + q2 * c02;
+            double scale = Math.max(Math.abs(q0), Math.max(Math.abs(q4), Math.abs(q7)));
+            double mx = (x[a] + x[b]) / 2, my = (y[a] + y[b]) / 2, mz = (z[a] + z[b]) / 2;
+            if(Math.abs(det) > 1e-9 * scale * scale * scale) {
+                double c11 = q0 * q7 - q2 * q2, c12 = q1 * q2 - q0 * q5, c22 = q0 * q4 - q1 * q1;
+                double px = -(c00 * q3 + c01 * q6 + c02 * q8) / det;
+                double py = -(c01 * q3 + c11 * q6 + c12 * q8) / det;
+                double pz = -(c02 * q3 + c12 * q6 + c22 * q8) / det;
+                double ex = x[b] - x[a], ey = y[b] - y[a], ez = z[b] - z[a];
+                double dx = px - mx, dy = py - my, dz = pz - mz;
+                // nearly flat quadrics put the minimum anywhere, keep it near the edge
+                if(dx * dx + dy * dy + dz * dz <= ex * ex + ey * ey + ez * ez) {
+                    bestX = px;
+                    bestY = py;
+                    bestZ = pz;
+                    return Math.max(0, error(q0, q1, q2, q3, q4, q5, q6, q7, q8, q9, px, py, pz));
+                }
+            }
+            // otherwise the best of both ends and the middle
+            double best = error(q0, q1, q2, q3, q4, q5, q6, q7, q8, q9, mx, my, mz);
+            bestX = mx;
+            bestY = my;
+            bestZ = mz;
+            double ea = error(q0, q1, q2, q3, q4, q5, q6, q7, q8, q9, x[a], y[a], z[a]);
+            if(ea < best) {
+                best = ea;
+                bestX = x[a];
+                bestY = y[a];
+                bestZ = z[a];
+            }
+            double eb = error(q0, q1, q2, q3, q4, q5, q6, q7, q8, q9, x[b], y[b], z[b]);
+            if(eb < best) {
+                best = eb;
+                bestX = x[b];
+                bestY = y[b];
+                bestZ = z[b];
+            }
+            return Math.max(0, best);
+        }
+
+        private static double error(double q0, double q1, double q2, double q3, double q4, double q5,
+                                    double q6, double q7, double q8, double q9, double px, double py, double pz) {
+            return q0 * px * px + 2 * q1 * px * py + 2 * q2 * px * pz + 2 * q3 * px
+                    + q4 * py * py + 2 * q5 * py * pz + 2 * q6 * py
+                    + q7 * pz * pz + 2 * q8 * pz + q9;
+        }
+
+        void run(int target) {
+            while(live > target && heap.size() > 0) {
+                double cost = heap.cost();
+                int a = heap.a(), b = heap.b();
+                boolean current = !removedVertices[a] && !removedVertices[b]
+                        && heap.versionA() == versions[a] && heap.versionB() == versions[b];
+                heap.pop();
+                if(!current) continue;
+                if(cost > maxError) break;
+                evaluate(a, b);
+                collapse(a, b, bestX, bestY, bestZ);
+            }
+        }
+
+        /**
+         * Moves a to the given point and merges b into it, unless that would damage the surface.
+         */
+        private void collapse(int a, int b, double px, double py, double pz) {
+            // the link condition: the vertices next to both ends must be
+            // exactly the far corners of the triangles on the edge, or
+            // collapsing it would pinch the surface
+            stamp++;
+            int shared = 0;
+            for(int i = 0; i < adjacentCount[a]; i++) {
+                int t = adjacent[a][i];
+                if(removed[t]) continue;
+                if(contains(t, b)) shared++;
+                for(int k = 0; k < 3; k++) marks[triangles[t * 3 + k]] = stamp;
+            }
+            if(shared == 0) return;
+            int common = 0;
+            stamp++;
+            for(int i = 0; i < adjacentCount[b]; i++) {
+                int t = adjacent[b][i];
+                if(removed[t]) continue;
+                for(int k = 0; k < 3; k++) {
+                    int v = triangles[t * 3 + k];
+                    if(v != a && v != b && marks[v] == stamp - 1) {
+                        common++;
+                        // counted once
+                        marks[v] = stamp;
+                    }
+                }
+            }
+            if(common != shared) return;
+            if(flips(a, b, px, py, pz) || flips(b, a, px, py, pz)) return;
+
+            for(int i = 0; i < adjacentCount[b]; i++) {
+                int t = adjacent[b][i];
+                if(removed[t]) continue;
+                if(contains(t, a)) {
+                    removed[t] = true;
+                    live--;
+                } else {
+                    for(int k = 0; k < 3; k++) {
+                        if(triangles[t * 3 + k] == b) triangles[t * 3 + k] = a;
+                    }
+                    append(a, t);
+                }
+            }
+            compact(a);
+            x[a] = px;
+            y[a] = py;
+            z[a] = pz;
+            for(int k = 0; k < 10; k++) {
+                quadrics[a * 10 + k] += quadrics[b * 10 + k];
+            }
+            removedVertices[b] = true;
+            adjacent[b] = null;
+            adjacentCount[b] = 0;
+            versions[a]++;
+            versions[b]++;
+
+            // every edge of a changed cost
+            stamp++;
+            for(int i = 0; i < adjacentCount[a]; i++) {
+                int t = adjacent[a][i];
+                for(int k = 0; k < 3; k++) {
+                    int v = triangles[t * 3 + k];
+                    if(v != a && marks[v] != stamp) {
+                        marks[v] = stamp;
+                        push(a, v);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks whether moving v to the point turns any of its triangles
+         * not shared with the other end upside down, or flat.
+         */
+        private boolean flips(int v, int other, double px, double py, double pz) {
+            for(int i = 0; i < adjacentCount[v]; i++) {
+                int t = adjacent[v][i];
+                if(removed[t] || contains(t, other)) continue;
+                int o = t * 3;
+                // the corners after v, in winding order
+                int k = triangles[o] == v ? 0 : triangles[o + 1] == v ? 1 : 2;
+                int p = triangles[o + (k + 1) % 3], q = triangles[o + (k + 2) % 3];
+                double e1x = x[p] - x[v], e1y = y[p] - y[v], e1z = z[p] - z[v];
+                double e2x = x[q] - x[v], e2y = y[q] - y[v], e2z = z[q] - z[v];
+                double nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+                double f1x = x[p] - px, f1y = y[p] - py, f1z = z[p] - pz;
+                double f2x = x[q] - px, f2y = y[q] - py, f2z = z[q] - pz;
+                double mx = f1y * f2z - f1z * f2y, my = f1z * f2x - f1x * f2z, mz = f1x * f2y - f1y * f2x;
+                double dot = nx * mx + ny * my + nz * mz;
+                double lengths = Math.sqrt((nx * nx + ny * ny + nz * nz) * (mx * mx + my * my + mz * mz));
+                // more than about 78 degrees of turn is treated as a flip
+                if(!(dot > 0.2 * lengths)) return true;
+            }
+            return false;
+        }
+
+        private void append(int v, int t) {
+            if(adjacentCount[v] == adjacent[v].length) {
+                adjacent[v] = Arrays.copyOf(adjacent[v], Math.max(4, adjacentCount[v] * 2));
+            }
+            adjacent[v][adjacentCount[v]++] = t;
+        }
+
+        // drops removed triangles from the list of a vertex
+        private void compact(int v) {
+            int[] list = adjacent[v];
+            int count = 0;
+            for(int i = 0; i < adjacentCount[v]; i++) {
+                if(!removed[list[i]]) list[count++] = list[i];
+            }
+            adjacentCount[v] = count;
+        }
+
+        Mesh toMesh() {
+            int[] index = new int[vertexCount];
+            Arrays.fill(index, -1);
+            int vertices = 0;
+            for(int t = 0; t < removed.length; t++) {
+                if(removed[t]) continue;
+                for(int k = 0; k < 3; k++) {
+                    int v = triangles[t * 3 + k];
+                    if(index[v] < 0) index[v] = vertices++;
+                }
+            }
+            double[] ox = new double[vertices], oy = new double[vertices], oz = new double[vertices];
+            for(int v = 0; v < vertexCount; v++) {
+                if(index[v] < 0) continue;
+                ox[index[v]] = x[v];
+                oy[index[v]] = y[v];
+                oz[index[v]] = z[v];
+            }
+            int[] indices = new int[live * 3];
+            int[] colors = new int[live];
+            int[] sourceColors = source.getColors();
+            int[] kept = new int[live];
+            int count = 0;
+            for(int t = 0; t < removed.length; t++) {
+                if(removed[t]) continue;
+                for(int k = 0; k < 3; k++) {
+                    indices[count * 3 + k] = index[triangles[t * 3 + k]];
+                }
+                colors[count] = sourceColors[t];
+                kept[count++] = t;
+            }
+            Mesh mesh = new Mesh(ox, oy, oz, indices, colors);
+            for(int t = 0; t < count; t++) {
+                if(source.isTwoSided(kept[t])) mesh.setTwoSided(t, true);
+            }
+            return mesh;
+        }
+    }
+
+    /**
+     * A binary min-heap of candidate edges, in parallel arrays.
+     */
+    private static final class EdgeHeap {
+        private double[] costs = new double[1024];
+        // a, b and their versions per entry
+        private int[] edges = new int[4096];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        double cost() {
+            return costs[0];
+        }
+
+        int a() {
+            return edges[0];
+        }
+
+        int b() {
+            return edges[1];
+        }
+
+        int versionA() {
+            return edges[2];
+        }
+
+        int versionB() {
+            return edges[3];
+        }
+
+        void push(double cost, int a, int b, int versionA, int versionB) {
+            if(size == costs.length) {
+                costs = Arrays.copyOf(costs, size * 2);
+                edges = Arrays.copyOf(edges, size * 8);
+            }
+            int i = size++;
+            while(i > 0) {
+                int parent = (i - 1) >>> 1;
+                if(costs[parent] <= cost) break;
+                move(parent, i);
+                i = parent;
+            }
+            set(i, cost, a, b, versionA, versionB);
+        }
+
+        void pop() {
+            size--;
+            if(size == 0) return;
+            double cost = costs[size];
+            int e = size * 4;
+            int a = edges[e], b = edges[e + 1], versionA = edges[e + 2], versionB = edges[e + 3];
+            int i = 0;
+            while(true) {
+                int child = i * 2 + 1;
+                if(child >= size) break;
+                if(child + 1 < size && costs[child + 1] < costs[child]) child++;
+                if(cost <= costs[child]) break;
+                move(child, i);
+                i = child;
+            }
+            set(i, cost, a, b, versionA, versionB);
+        }
+
+        private void move(int from, int to) {
+            costs[to] = costs[from];
+            System.arraycopy(edges, from * 4, edges, to * 4, 4);
+        }
+
+        private void set(int i, double cost, int a, int b, int versionA, int versionB) {
+            costs[i] = cost;
+            edges[i * 4] = a;
+            edges[i * 4 + 1] = b;
+            edges[i * 4 + 2] = versionA;
+            edges[i * 4 + 3] = versionB;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.spiritlight.rendertest.utils;
+
+/**
+ * A value advanced over time by a {@link FrameScheduler}.
+ */
+@FunctionalInterface
+public interface Animation {
+
+    /**
+     * Advances the animation by one time step. Always called on the
+     * scheduler thread, with the same step every time.
+     * @param seconds The length of the step
+     * @return true if the step changed anything visible, so a frame is needed
+     */
+    boolean step(double seconds);
+}
@@ -5,6 +5,12 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Moves a value back and forth on its own executor.
+ * @deprecated Every scaler ticks and repaints on its own thread, use
+ * a {@link PingPong} on a shared {@link FrameScheduler} instead.
+ */
+@Deprecated
 public class AutoScaler {
     private final int interval;
     private final TimeUnit unit;
@@ -31,8 +37,18 @@ public class AutoScaler {
         }
     }
 
+    /**
+     * Stops the scaler and waits for a tick in progress to finish.
+     * Does nothing if it isn't running.
+     */
     public void stop() {
+        if(executor == null) return;
         executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     private static class IncrementManager implements Runnable {
@@ -0,0 +1,236 @@
+package com.spiritlight.rendertest.utils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drives every animated value of a view from one thread, and asks for
+ * at most one frame at a time.
+ * <p>
+ *     Animations advance on a fixed time step, however often the scheduler
+ *     ticks, so they move at the same speed whatever the frame rate. A tick
+ *     only asks for a frame when an animation changed something or
+ *     {@link #requestFrame()} was called, and never while the previous frame
+ *     hasn't been reported done through {@link #frameRendered()}: changes
+ *     made meanwhile are folded into the next frame.
+ * </p>
+ * <p>
+ *     The scheduler ticks at the target frame rate, and slows down to the
+ *     rate frames are actually finished at when rendering can't keep up,
+ *     instead of piling up requests.
+ * </p>
+ */
+public class FrameScheduler implements AutoCloseable {
+    // most steps taken in one tick, past that the animations fall behind
+    // rather than stalling the scheduler to catch up
+    private static final int MAX_STEPS = 8;
+    // a frame not reported done by then is assumed lost, and asked for again
+    private static final long FRAME_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+    // weight of the latest frame in the frame time average
+    private static final double SMOOTHING = 0.1;
+
+    private final Runnable render;
+    private final List<Animation> animations = new CopyOnWriteArrayList<>();
+    private final long step;
+    private volatile long targetPeriod;
+
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private volatile long requested;
+    private volatile double frameTime;
+    private volatile long frames, skipped;
+
+    private ScheduledExecutorService executor;
+    private volatile Thread thread;
+    // only touched on the scheduler thread
+    private long lastTick, accumulated;
+
+    /**
+     * Creates a scheduler stepping animations 60 times per second.
+     * @param fps The target frame rate
+     * @param render Asks for a frame, for example {@link java.awt.Component#repaint()}
+     */
+    public FrameScheduler(double fps, Runnable render) {
+        this(fps, 1d / 60, render);
+    }
+
+    /**
+     * @param fps The target frame rate
+     * @param step The time step animations advance by, in seconds
+     * @param render Asks for a frame, for example {@link java.awt.Component#repaint()}
+     */
+    public FrameScheduler(double fps, double step, Runnable render) {
+        if(!(step > 0)) throw new IllegalArgumentException("Invalid step of " + step);
+        this.step = (long) (step * 1e9);
+        this.render = render;
+        setTargetFps(fps);
+    }
+
+    /**
+     * Adds an animation. Animations may be added while the scheduler runs.
+     * @return the scheduler itself
+     */
+    public FrameScheduler animate(Animation animation) {
+        animations.add(animation);
+        return this;
+    }
+
+    public FrameScheduler remove(Animation animation) {
+        animations.remove(animation);
+        return this;
+    }
+
+    public FrameScheduler setTargetFps(double fps) {
+        if(!(fps > 0)) throw new IllegalArgumentException("Invalid frame rate of " + fps);
+        this.targetPeriod = (long) (1e9 / fps);
+        return this;
+    }
+
+    public double getTargetFps() {
+        return 1e9 / targetPeriod;
+    }
+
+    /**
+     * @return the rate the scheduler currently ticks at, below the
+     * target when frames take longer than the target allows
+     */
+    public double getTickRate() {
+        return 1e9 / period();
+    }
+
+    /**
+     * @return the average time from asking for a frame to it being done, in nanoseconds
+     */
+    public double getFrameTime() {
+        return frameTime;
+    }
+
+    /**
+     * @return the number of frames asked for
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * @return the number of ticks that asked for no frame, because nothing
+     * changed or the previous frame wasn't done yet
+     */
+    public long getSkippedTicks() {
+        return skipped;
+    }
+
+    /**
+     * Asks for a frame on the next tick, even if no animation changed.
+     */
+    public void requestFrame() {
+        dirty.set(true);
+    }
+
+    /**
+     * Reports the frame asked for as done. Must be called by whatever
+     * renders the frames, on any thread, for the next one to be asked for.
+     */
+    public void frameRendered() {
+        if(!pending.compareAndSet(true, false)) return;
+        long time = System.nanoTime() - requested;
+        double average = frameTime;
+        frameTime = average == 0 ? time : average + (time - average) * SMOOTHING;
+    }
+
+    /**
+     * Starts ticking on a daemon thread. Does nothing if already started.
+     */
+    public synchronized void start() {
+        if(executor != null) return;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "FrameScheduler");
+            thread.setDaemon(true);
+            this.thread = thread;
+            return thread;
+        });
+        // the first tick starts the clock rather than stepping from some old time
+        executor.execute(() -> lastTick = System.nanoTime());
+        schedule(executor, 0);
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    /**
+     * Stops ticking and waits for a tick in progress to finish, so no frame
+     * is asked for after this returns, unless called from an animation or
+     * the render request itself. May be started again afterwards.
+     */
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if(executor == null) return;
+        executor.shutdownNow();
+        // the tick calling this can't wait for itself
+        if(Thread.currentThread() == thread) return;
+        try {
+            if(!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Frame scheduler did not stop, an animation or render request is stuck");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    private long period() {
+        // never ask for frames faster than they are finished
+        return Math.max(targetPeriod, (long) frameTime);
+    }
+
+    private void tick(ScheduledExecutorService executor) {
+        long start = System.nanoTime();
+        accumulated += start - lastTick;
+        lastTick = start;
+
+        boolean changed = false;
+        int steps = 0;
+        while(accumulated >= step && steps < MAX_STEPS) {
+            for(Animation animation : animations) {
+                changed |= animation.step(step / 1e9);
+            }
+            accumulated -= step;
+            steps++;
+        }
+        if(steps == MAX_STEPS) accumulated %= step;
+        if(changed) dirty.set(true);
+
+        if(pending.get() && start - requested > FRAME_TIMEOUT) pending.set(false);
+        if(!pending.get() && dirty.getAndSet(false)) {
+            pending.set(true);
+            requested = System.nanoTime();
+            frames++;
+            render.run();
+        } else {
+            skipped++;
+        }
+        schedule(executor, period() - (System.nanoTime() - start));
+    }
+
+    private void schedule(ScheduledExecutorService executor, long delay) {
+        try {
+            executor.schedule(() -> tick(executor), Math.max(0, delay), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // stopped in the meantime
+        }
+    }
+}
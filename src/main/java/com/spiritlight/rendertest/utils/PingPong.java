@@ -0,0 +1,63 @@
+package com.spiritlight.rendertest.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves a value back and forth between two bounds at a constant speed,
+ * publishing it rounded to an {@link AtomicInteger}. This is what an
+ * {@link AutoScaler} does, but measured in time rather than in ticks.
+ */
+public class PingPong implements Animation {
+    private final AtomicInteger field;
+    private final double min, max;
+    private final double speed;
+
+    private double value;
+    private boolean reverse;
+
+    /**
+     * @param field The field to publish the value to, the value starts from it
+     * @param min The lower bound
+     * @param max The upper bound
+     * @param speed The change per second
+     */
+    public PingPong(AtomicInteger field, int min, int max, double speed) {
+        if(min > max) throw new IllegalArgumentException("min " + min + " is above max " + max);
+        if(!(speed >= 0)) throw new IllegalArgumentException("Invalid speed of " + speed);
+        this.field = field;
+        this.min = min;
+        this.max = max;
+        this.speed = speed;
+        this.value = Math.max(min, Math.min(max, field.get()));
+    }
+
+    /**
+     * Computes where a ping-pong starting from a value, moving up, is after
+     * some time, without stepping through it. Used to render any frame of
+     * an animation on its own.
+     * @return the value after the given number of seconds
+     */
+    public static double valueAt(double start, double min, double max, double speed, double seconds) {
+        double range = max - min;
+        if(range <= 0) return min;
+        // one period is the way up and back down
+        double distance = (Math.max(min, Math.min(max, start)) - min + speed * seconds) % (2 * range);
+        return distance <= range ? min + distance : max - (distance - range);
+    }
+
+    @Override
+    public boolean step(double seconds) {
+        double next = value + (reverse ? -speed : speed) * seconds;
+        // bounce off the bounds rather than overshooting them
+        if(next > max) {
+            next = Math.max(min, 2 * max - next);
+            reverse = true;
+        } else if(next < min) {
+            next = Math.min(max, 2 * min - next);
+            reverse = false;
+        }
+        value = next;
+        int rounded = (int) Math.round(next);
+        return field.getAndSet(rounded) != rounded;
+    }
+}
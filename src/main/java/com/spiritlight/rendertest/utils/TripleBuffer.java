@@ -0,0 +1,86 @@
+package com.spiritlight.rendertest.utils;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hands values over from one producer thread to one consumer thread
+ * without locks, where only the latest value matters.
+ * <p>
+ *     Three values are allocated up front: the producer fills the back one,
+ *     the consumer reads the front one, and the last published one waits in
+ *     between. Publishing swaps the back value with the waiting one, so a
+ *     value the consumer hasn't picked up yet is simply overwritten by the
+ *     next: the consumer always gets the newest value, and never lags more
+ *     than one value behind however slow it is.
+ * </p>
+ * @param <T> The type of the values, typically a reusable frame buffer
+ */
+public final class TripleBuffer<T> {
+    private final AtomicReference<Slot<T>> middle;
+    // only touched by the producer
+    private Slot<T> back;
+    private long dropped;
+    // only touched by the consumer
+    private Slot<T> front;
+
+    /**
+     * @param factory Creates the three values
+     */
+    public TripleBuffer(Supplier<T> factory) {
+        this.back = new Slot<>(factory.get());
+        this.middle = new AtomicReference<>(new Slot<>(factory.get()));
+        this.front = new Slot<>(factory.get());
+    }
+
+    /**
+     * @return the value for the producer to fill, which no one else is using
+     */
+    public T back() {
+        return back.value;
+    }
+
+    /**
+     * Publishes the back value, and gives the producer another one to fill.
+     */
+    public void publish() {
+        back.fresh = true;
+        back = middle.getAndSet(back);
+        // the consumer never got to see it
+        if(back.fresh) dropped++;
+    }
+
+    /**
+     * Returns the latest published value to the consumer. It stays the
+     * consumer's, unchanged, until the next call.
+     * @return the latest value, or null if none was ever published
+     */
+    public T latest() {
+        if(middle.get().fresh) {
+            front = middle.getAndSet(front);
+            front.fresh = false;
+            front.seen = true;
+        }
+        return front.seen ? front.value : null;
+    }
+
+    /**
+     * @return the number of values published but overwritten before
+     * the consumer took them, as seen by the producer
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    private static final class Slot<T> {
+        private final T value;
+        // published and not taken yet, handed between threads by the atomic swaps
+        private boolean fresh;
+        // holds something published at some point
+        private boolean seen;
+
+        private Slot(T value) {
+            this.value = value;
+        }
+    }
+}